@@ -2,6 +2,7 @@ package org.obo.annotation.base;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -20,23 +21,46 @@ import org.obo.datamodel.impl.OBORestrictionImpl;
 
 public class OBOUtil {
 
+	private static final Comparator<Differentium> DIFFERENTIUM_ORDER = new Comparator<Differentium>() {
+		@Override
+		public int compare(Differentium a, Differentium b) {
+			return createDifferentiumID(a).compareTo(createDifferentiumID(b));
+		}
+	};
+
+	/**
+	 * Returns the post-composed term with the given genus and differentia.  The differentia are ordered by ID, so
+	 * the same composition always has the same ID whatever order they are given in, and an existing instance of the
+	 * composition is returned if there is one in the shared PostCompositionRegistry.
+	 */
 	public static OBOClass createPostComposition(OBOClass genus,
-			List<Differentium> differentia) {
+			List<Differentium> unorderedDifferentia) {
+		final List<Differentium> differentia = new ArrayList<Differentium>(unorderedDifferentia);
+		java.util.Collections.sort(differentia, DIFFERENTIUM_ORDER);
 		final String id = createPostcompositionID(genus, differentia);
-		final String name = createPostcompositionName(genus, differentia);
-		final OBOClass postComposition = new OBOClassImpl(name, id);
-		final OBORestrictionImpl genusRelation = new OBORestrictionImpl(
-				postComposition, OBOProperty.IS_A, genus);
-		genusRelation.setCompletes(true);
-		postComposition.addParent(genusRelation);
-		for (Differentium differentium : differentia) {
-			final OBORestrictionImpl differentiumRelation = new OBORestrictionImpl(
-					postComposition, differentium.getRelation(),
-					differentium.getTerm());
-			differentiumRelation.setCompletes(true);
-			postComposition.addParent(differentiumRelation);
+		final PostCompositionRegistry registry = PostCompositionRegistry.getShared();
+		synchronized (registry) {
+			final OBOClass existing = registry.get(id, genus, differentia);
+			if (existing != null) {
+				return existing;
+			}
+			final String name = createPostcompositionName(genus, differentia);
+			final OBOClass postComposition = new OBOClassImpl(name, id);
+			final OBORestrictionImpl genusRelation = new OBORestrictionImpl(
+					postComposition, OBOProperty.IS_A, genus);
+			genusRelation.setCompletes(true);
+			// links are not added to the genus and differentia as children, so that they do not keep the composition alive
+			postComposition.atomicAddParent(genusRelation);
+			for (Differentium differentium : differentia) {
+				final OBORestrictionImpl differentiumRelation = new OBORestrictionImpl(
+						postComposition, differentium.getRelation(),
+						differentium.getTerm());
+				differentiumRelation.setCompletes(true);
+				postComposition.atomicAddParent(differentiumRelation);
+			}
+			registry.put(postComposition);
+			return postComposition;
 		}
-		return postComposition;
 	}
 
 	private static String createPostcompositionID(OBOClass genus,
@@ -0,0 +1,232 @@
+package org.obo.annotation.base;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.bbop.dataadapter.DataAdapterException;
+import org.obo.dataadapter.OBOAdapter;
+import org.obo.dataadapter.OBOFileAdapter;
+import org.obo.datamodel.DanglingObject;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.Link;
+import org.obo.datamodel.LinkedObject;
+import org.obo.datamodel.Namespace;
+import org.obo.datamodel.OBOProperty;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.ObsoletableObject;
+import org.obo.datamodel.PropertyValue;
+import org.obo.datamodel.SynonymType;
+import org.obo.datamodel.TermSubset;
+import org.obo.datamodel.Type;
+
+/**
+ * Reads a set of OBO files into one OBOSession, parsing each file on its own thread.  Each file is parsed into a
+ * separate session, in which references to terms defined in other files are left dangling.  The sessions are then
+ * merged in the order of the files, and each dangling reference is pointed at the term which the other file defines,
+ * so that the result is the same as reading all the files in one pass.  A file which cannot be parsed on its own,
+ * for instance because it uses a subset declared in another file, causes all the files to be read in one pass instead.
+ */
+public class OntologyLoader {
+
+	// the parser's name for a relation used in a file but not declared in it
+	private static final String UNDECLARED_SUFFIX = " (UNDECLARED)";
+	private final int threads;
+
+	public OntologyLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads The largest number of files to parse at once.
+	 */
+	public OntologyLoader(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public OBOSession load(List<File> sources) throws DataAdapterException {
+		final long start = System.nanoTime();
+		if (sources.size() < 2) {
+			return parse(sources);
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, sources.size()));
+		final List<Future<OBOSession>> parses = new ArrayList<Future<OBOSession>>();
+		for (final File source : sources) {
+			parses.add(executor.submit(new Callable<OBOSession>() {
+				@Override
+				public OBOSession call() throws DataAdapterException {
+					return parse(Collections.singletonList(source));
+				}
+			}));
+		}
+		executor.shutdown();
+		final List<OBOSession> fragments = new ArrayList<OBOSession>();
+		try {
+			for (Future<OBOSession> parse : parses) {
+				fragments.add(parse.get());
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new DataAdapterException("Interrupted while loading ontologies", e);
+		} catch (ExecutionException e) {
+			executor.shutdownNow();
+			log().warn("Unable to parse ontologies separately; reading them in one pass instead", e.getCause());
+			return parse(sources);
+		}
+		final long parsed = System.nanoTime();
+		final OBOSession session = fragments.get(0);
+		for (OBOSession fragment : fragments.subList(1, fragments.size())) {
+			merge(fragment, session);
+		}
+		relink(session);
+		session.setCurrentFilenames(getPaths(sources));
+		log().info(String.format("Parsed %d ontologies in %.1f ms and merged them in %.1f ms", sources.size(), (parsed - start) / 1000000.0, (System.nanoTime() - parsed) / 1000000.0));
+		return session;
+	}
+
+	private static OBOSession parse(List<File> sources) throws DataAdapterException {
+		final OBOFileAdapter fileAdapter = new OBOFileAdapter();
+		final OBOFileAdapter.OBOAdapterConfiguration config = new OBOFileAdapter.OBOAdapterConfiguration();
+		config.setReadPaths(getPaths(sources));
+		config.setBasicSave(false);
+		config.setAllowDangling(true);
+		config.setFollowImports(false); // this is required because OBO currently fails if it tries to follow an import and there is no network connection
+		return fileAdapter.doOperation(OBOAdapter.READ_ONTOLOGY, config, null);
+	}
+
+	private static List<String> getPaths(List<File> files) {
+		final List<String> urls = new ArrayList<String>();
+		for (File file : files) {
+			urls.add(file.toURI().toString());
+		}
+		return urls;
+	}
+
+	/**
+	 * Add the objects and session-level definitions of the fragment to the session.  An object already in the
+	 * session is kept, unless it is only a placeholder and the fragment defines it.  Links are not yet corrected to
+	 * point at the objects kept.
+	 */
+	private static void merge(OBOSession fragment, OBOSession session) {
+		for (Namespace namespace : fragment.getNamespaces()) {
+			if (session.getNamespace(namespace.getID()) == null) {
+				session.addNamespace(namespace);
+			}
+		}
+		for (TermSubset subset : fragment.getSubsets()) {
+			if (session.getCategory(subset.getName()) == null) {
+				session.addSubset(subset);
+			}
+		}
+		for (SynonymType synonymType : fragment.getSynonymTypes()) {
+			if (session.getSynonymType(synonymType.getID()) == null) {
+				session.addSynonymType(synonymType);
+			}
+		}
+		for (String idSpace : fragment.getIDSpaces()) {
+			if (!session.getIDSpaces().contains(idSpace)) {
+				session.addIDSpace(idSpace, fragment.expandIDSpace(idSpace));
+			}
+		}
+		for (PropertyValue value : fragment.getPropertyValues()) {
+			session.addPropertyValue(value);
+		}
+		for (IdentifiedObject object : fragment.getObjects()) {
+			final IdentifiedObject existing = session.getObject(object.getID());
+			if (existing == null) {
+				session.addObject(object);
+			} else if (isPlaceholder(existing) && !isPlaceholder(object)) {
+				session.removeObject(existing);
+				session.addObject(object);
+			} else if (!isPlaceholder(object) && !isPlaceholder(existing) && !object.isBuiltIn()) {
+				log().warn("Ignoring second definition of " + object.getID());
+			}
+		}
+	}
+
+	/**
+	 * Point every reference between objects at the object the session holds for that ID, replacing references to
+	 * dangling objects and to objects from other fragments.
+	 */
+	private static void relink(OBOSession session) {
+		for (IdentifiedObject object : session.getObjects()) {
+			if (object instanceof LinkedObject) {
+				for (Link link : new ArrayList<Link>(((LinkedObject)object).getParents())) {
+					final LinkedObject parent = canonical(session, link.getParent(), LinkedObject.class);
+					if (parent != link.getParent()) {
+						link.getParent().removeChild(link);
+						link.setParent(parent);
+						parent.addChild(link);
+					}
+					final OBOProperty type = canonical(session, link.getType(), OBOProperty.class);
+					if (type != link.getType()) {
+						link.setType(type);
+					}
+				}
+			}
+			if (object instanceof ObsoletableObject) {
+				final ObsoletableObject obsoletable = (ObsoletableObject)object;
+				for (ObsoletableObject replacement : new ArrayList<ObsoletableObject>(obsoletable.getReplacedBy())) {
+					final ObsoletableObject canonical = canonical(session, replacement, ObsoletableObject.class);
+					if (canonical != replacement) {
+						obsoletable.removeReplacedBy(replacement);
+						obsoletable.addReplacedBy(canonical);
+					}
+				}
+				for (ObsoletableObject replacement : new ArrayList<ObsoletableObject>(obsoletable.getConsiderReplacements())) {
+					final ObsoletableObject canonical = canonical(session, replacement, ObsoletableObject.class);
+					if (canonical != replacement) {
+						obsoletable.removeConsiderReplacement(replacement);
+						obsoletable.addConsiderReplacement(canonical);
+					}
+				}
+			}
+			if (object instanceof OBOProperty) {
+				final OBOProperty property = (OBOProperty)object;
+				final IdentifiedObject domain = canonical(session, property.getDomain(), IdentifiedObject.class);
+				if (domain != property.getDomain()) {
+					property.setDomain(domain);
+				}
+				final Type<?> range = property.getRange();
+				final IdentifiedObject canonicalRange = canonical(session, range, IdentifiedObject.class);
+				if ((canonicalRange != range) && (canonicalRange instanceof Type)) {
+					property.setRange((Type<?>)canonicalRange);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether the object only stands in for a term or relation which the file referred to but did not define.
+	 */
+	private static boolean isPlaceholder(IdentifiedObject object) {
+		if (object instanceof DanglingObject) {
+			return true;
+		}
+		return (object instanceof OBOProperty) && (object.getName() != null) && object.getName().endsWith(UNDECLARED_SUFFIX);
+	}
+
+	/**
+	 * @return The session's object with the same ID, if it is of the required type, or else the given object.
+	 */
+	private static <T extends IdentifiedObject> T canonical(OBOSession session, T object, Class<T> type) {
+		if (object == null) {
+			return null;
+		}
+		final IdentifiedObject canonical = session.getObject(object.getID());
+		return type.isInstance(canonical) ? type.cast(canonical) : object;
+	}
+
+	private static Logger log() {
+		return Logger.getLogger(OntologyLoader.class);
+	}
+
+}
@@ -0,0 +1,661 @@
+package org.obo.annotation.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.obo.app.util.FileReplacement;
+import org.obo.datamodel.AnnotatedObject;
+import org.obo.datamodel.DanglingObject;
+import org.obo.datamodel.Dbxref;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.Link;
+import org.obo.datamodel.LinkedObject;
+import org.obo.datamodel.Namespace;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOProperty;
+import org.obo.datamodel.OBORestriction;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.ObjectFactory;
+import org.obo.datamodel.ObsoletableObject;
+import org.obo.datamodel.PropertyValue;
+import org.obo.datamodel.Synonym;
+import org.obo.datamodel.SynonymType;
+import org.obo.datamodel.TermSubset;
+import org.obo.datamodel.Type;
+import org.obo.datamodel.impl.OBOSessionImpl;
+
+/**
+ * Stores a parsed OBOSession in a compact binary form, so that ontologies which have not changed since the last
+ * launch can be restored without parsing the OBO files again.  A snapshot is only used if it was written from source
+ * files with exactly the same contents, in the same order, as those currently being loaded.
+ *
+ * The snapshot holds terms and relations with their names, namespaces, definitions, comments, synonyms, dbxrefs,
+ * subsets, secondary IDs, obsoletion and property values, plus all asserted links.  Qualifier extensions are not kept.
+ * Sessions containing anything else, such as instances, are not snapshotted, and are simply parsed on every launch.
+ * (OBOSession is nominally Serializable, but the OBO datamodel does not survive a round trip through Java serialization.)
+ */
+public class OntologySnapshot {
+
+	// bump this whenever the snapshot layout changes
+	private static final int FORMAT_VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final byte CLASS = 0;
+	private static final byte PROPERTY = 1;
+	private static final byte DANGLING_CLASS = 2;
+	private static final byte DANGLING_PROPERTY = 3;
+	private final File file;
+	// the path, length and modification time of each source the key was computed from
+	private List<String> keyStamps = null;
+	private String key = null;
+
+	public OntologySnapshot(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the session saved from the given source files, or null if there is no snapshot, the sources
+	 * have changed since it was saved, or it cannot be read.  In all of those cases the caller should parse the sources.
+	 */
+	public OBOSession load(List<File> sources) {
+		if (!this.file.exists()) {
+			return null;
+		}
+		try {
+			final String key = this.getSourceKey(sources);
+			final SnapshotInput input = new SnapshotInput(new DataInputStream(new BufferedInputStream(new FileInputStream(this.file), BUFFER_SIZE)));
+			try {
+				if ((input.data.readInt() != FORMAT_VERSION) || !key.equals(input.readString())) {
+					log().info("Ontology snapshot is out of date");
+					return null;
+				}
+				return input.readSession();
+			} finally {
+				input.data.close();
+			}
+		} catch (IOException e) {
+			log().error("Unable to read ontology snapshot", e);
+		} catch (RuntimeException e) {
+			// a snapshot which does not match the datamodel must not prevent the ontologies from being parsed
+			log().error("Unable to restore ontology snapshot", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Write a snapshot of the session parsed from the given source files, replacing any previous snapshot.
+	 * This must be called before the session is modified with anything not contained in the sources.
+	 */
+	public void save(OBOSession session, List<File> sources) {
+		final File temp = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+		try {
+			final SnapshotOutput output = new SnapshotOutput(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE)));
+			try {
+				output.data.writeInt(FORMAT_VERSION);
+				output.writeString(this.getSourceKey(sources));
+				output.writeSession(session);
+			} finally {
+				output.data.close();
+			}
+			FileReplacement.replace(temp, this.file);
+		} catch (UnsupportedContentException e) {
+			log().info("Not saving ontology snapshot: " + e.getMessage());
+			temp.delete();
+			this.delete();
+		} catch (IOException e) {
+			log().error("Unable to write ontology snapshot", e);
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Remove any saved snapshot, so that the next load parses the sources.
+	 */
+	public void delete() {
+		this.file.delete();
+	}
+
+	/**
+	 * Returns a key identifying the contents of the given source files, which changes whenever any of them changes.
+	 * The key for the most recent list of sources is remembered, so unchanged files are only read once.
+	 */
+	public synchronized String getSourceKey(List<File> sources) throws IOException {
+		final List<String> stamps = new ArrayList<String>();
+		for (File source : sources) {
+			stamps.add(source.getAbsolutePath() + ":" + source.length() + ":" + source.lastModified());
+		}
+		if (!stamps.equals(this.keyStamps)) {
+			final StringBuilder newKey = new StringBuilder();
+			for (File source : sources) {
+				newKey.append(source.getName()).append(":").append(digest(new FileInputStream(source))).append(";");
+			}
+			this.key = newKey.toString();
+			this.keyStamps = stamps;
+		}
+		return this.key;
+	}
+
+	/**
+	 * Returns the SHA-1 digest of the stream's contents in hexadecimal, and closes the stream.
+	 */
+	static String digest(InputStream input) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to provide SHA-1
+			throw new IllegalStateException(e);
+		}
+		try {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			input.close();
+		}
+		final StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Writes the session.  Every string is written in full only the first time it occurs, and by its index in the
+	 * string pool after that, since IDs in particular are repeated many times.
+	 */
+	private static class SnapshotOutput {
+
+		private final DataOutputStream data;
+		private final Map<String, Integer> pool = new HashMap<String, Integer>();
+
+		public SnapshotOutput(DataOutputStream data) {
+			this.data = data;
+		}
+
+		public void writeSession(OBOSession session) throws IOException {
+			final List<AnnotatedObject> objects = new ArrayList<AnnotatedObject>();
+			for (IdentifiedObject object : session.getObjects()) {
+				if (object.isBuiltIn()) {
+					// a new session already contains the built in objects
+					continue;
+				}
+				if (!((object instanceof AnnotatedObject) && ((object instanceof OBOClass) || (object instanceof OBOProperty)))) {
+					throw new UnsupportedContentException("unsupported object " + object.getID());
+				}
+				objects.add((AnnotatedObject)object);
+			}
+			this.writeStrings(session.getCurrentFilenames());
+			this.writeString(session.getLoadRemark());
+			this.data.writeInt(session.getNamespaces().size());
+			for (Namespace namespace : session.getNamespaces()) {
+				this.writeString(namespace.getID());
+				this.writeString(namespace.getPath());
+			}
+			this.writeNamespace(session.getDefaultNamespace());
+			this.data.writeInt(session.getSubsets().size());
+			for (TermSubset subset : session.getSubsets()) {
+				this.writeString(subset.getName());
+				this.writeString(subset.getDesc());
+			}
+			this.data.writeInt(session.getSynonymTypes().size());
+			for (SynonymType type : session.getSynonymTypes()) {
+				this.writeString(type.getID());
+				this.writeString(type.getName());
+				this.data.writeInt(type.getScope());
+			}
+			this.data.writeInt(session.getIDSpaces().size());
+			for (String idSpace : session.getIDSpaces()) {
+				this.writeString(idSpace);
+				this.writeString(session.expandIDSpace(idSpace));
+			}
+			this.writePropertyValues(session.getPropertyValues());
+			// all objects are created before their details are read, since details refer to other objects
+			this.data.writeInt(objects.size());
+			for (AnnotatedObject object : objects) {
+				final boolean dangling = object instanceof DanglingObject;
+				if (object instanceof OBOProperty) {
+					this.data.writeByte(dangling ? DANGLING_PROPERTY : PROPERTY);
+				} else {
+					this.data.writeByte(dangling ? DANGLING_CLASS : CLASS);
+				}
+				this.writeString(object.getID());
+				this.data.writeBoolean(object.isAnonymous());
+			}
+			for (AnnotatedObject object : objects) {
+				this.writeDetails(object);
+			}
+			for (AnnotatedObject object : objects) {
+				this.writeLinks((LinkedObject)object);
+			}
+		}
+
+		private void writeDetails(AnnotatedObject object) throws IOException {
+			this.writeString(object.getName());
+			this.writeNamespace(object.getNamespace());
+			this.writeString(object.getDefinition());
+			this.writeDbxrefs(object.getDefDbxrefs());
+			this.writeString(object.getComment());
+			this.writeStrings(object.getSecondaryIDs());
+			this.writeString(object.getCreatedBy());
+			this.writeDate(object.getCreationDate());
+			this.writeString(object.getModifiedBy());
+			this.writeDate(object.getModificationDate());
+			this.data.writeInt(object.getSynonyms().size());
+			for (Synonym synonym : object.getSynonyms()) {
+				this.writeString(synonym.getText());
+				this.data.writeInt(synonym.getScope());
+				this.writeString(synonym.getSynonymType() != null ? synonym.getSynonymType().getID() : null);
+				this.writeDbxrefs(synonym.getXrefs());
+			}
+			this.writeDbxrefs(object.getDbxrefs());
+			this.data.writeInt(object.getSubsets().size());
+			for (TermSubset subset : object.getSubsets()) {
+				this.writeString(subset.getName());
+			}
+			this.writePropertyValues(object.getPropertyValues());
+			this.data.writeBoolean(object.isObsolete());
+			this.writeIDs(object.getReplacedBy());
+			this.writeIDs(object.getConsiderReplacements());
+			if (object instanceof OBOProperty) {
+				final OBOProperty property = (OBOProperty)object;
+				this.data.writeBoolean(property.isCyclic());
+				this.data.writeBoolean(property.isSymmetric());
+				this.data.writeBoolean(property.isTransitive());
+				this.data.writeBoolean(property.isReflexive());
+				this.data.writeBoolean(property.isAlwaysImpliesInverse());
+				this.data.writeBoolean(property.isMetadataTag());
+				this.data.writeBoolean(property.isUniversallyQuantified());
+				this.writeID(property.getDomain());
+				this.writeID(property.getRange());
+				this.writeID(property.getTransitiveOver());
+				this.writeID(property.getDisjointOver());
+				final Collection<List<OBOProperty>> chains = property.getHoldsOverChains();
+				this.data.writeInt(chains != null ? chains.size() : 0);
+				if (chains != null) {
+					for (List<OBOProperty> chain : chains) {
+						this.writeIDs(chain);
+					}
+				}
+			}
+		}
+
+		private void writeLinks(LinkedObject object) throws IOException {
+			final List<OBORestriction> links = new ArrayList<OBORestriction>();
+			for (Link link : object.getParents()) {
+				if (link.isImplied()) {
+					continue;
+				}
+				if (!(link instanceof OBORestriction) || (((OBORestriction)link).getNumberOfAdditionalArguments() > 0)) {
+					throw new UnsupportedContentException("unsupported link from " + object.getID());
+				}
+				links.add((OBORestriction)link);
+			}
+			this.data.writeInt(links.size());
+			for (OBORestriction link : links) {
+				this.writeID(link.getType());
+				this.writeID(link.getParent());
+				this.writeNamespace(link.getNamespace());
+				this.data.writeBoolean(link.getCompletes());
+				this.data.writeBoolean(link.inverseCompletes());
+				this.data.writeBoolean(link.isNecessarilyTrue());
+				this.data.writeBoolean(link.isInverseNecessarilyTrue());
+				this.writeInteger(link.getCardinality());
+				this.writeInteger(link.getMinCardinality());
+				this.writeInteger(link.getMaxCardinality());
+			}
+		}
+
+		private void writeDbxrefs(Collection<Dbxref> dbxrefs) throws IOException {
+			this.data.writeInt(dbxrefs.size());
+			for (Dbxref dbxref : dbxrefs) {
+				this.writeString(dbxref.getDatabase());
+				this.writeString(dbxref.getDatabaseID());
+				this.writeString(dbxref.getDesc());
+				this.data.writeInt(dbxref.getType());
+			}
+		}
+
+		private void writePropertyValues(Collection<PropertyValue> values) throws IOException {
+			this.data.writeInt(values.size());
+			for (PropertyValue value : values) {
+				this.writeString(value.getProperty());
+				this.writeString(value.getValue());
+			}
+		}
+
+		private void writeIDs(Collection<? extends IdentifiedObject> objects) throws IOException {
+			this.data.writeInt(objects.size());
+			for (IdentifiedObject object : objects) {
+				this.writeID(object);
+			}
+		}
+
+		private void writeID(IdentifiedObject object) throws IOException {
+			this.writeString(object != null ? object.getID() : null);
+		}
+
+		private void writeNamespace(Namespace namespace) throws IOException {
+			this.writeString(namespace != null ? namespace.getID() : null);
+		}
+
+		private void writeStrings(Collection<String> strings) throws IOException {
+			this.data.writeInt(strings.size());
+			for (String string : strings) {
+				this.writeString(string);
+			}
+		}
+
+		private void writeDate(Date date) throws IOException {
+			this.data.writeBoolean(date != null);
+			if (date != null) {
+				this.data.writeLong(date.getTime());
+			}
+		}
+
+		private void writeInteger(Integer value) throws IOException {
+			this.data.writeBoolean(value != null);
+			if (value != null) {
+				this.data.writeInt(value);
+			}
+		}
+
+		public void writeString(String string) throws IOException {
+			if (string == null) {
+				this.data.writeInt(-1);
+				return;
+			}
+			final Integer index = this.pool.get(string);
+			if (index != null) {
+				this.data.writeInt(index);
+			} else {
+				// a new string is marked by the next unused index
+				this.data.writeInt(this.pool.size());
+				this.pool.put(string, this.pool.size());
+				final byte[] bytes = string.getBytes("UTF-8");
+				this.data.writeInt(bytes.length);
+				this.data.write(bytes);
+			}
+		}
+
+	}
+
+	/**
+	 * Reads a session in the order SnapshotOutput writes it.
+	 */
+	private static class SnapshotInput {
+
+		private final DataInputStream data;
+		private final List<String> pool = new ArrayList<String>();
+		private OBOSession session;
+		private ObjectFactory factory;
+
+		public SnapshotInput(DataInputStream data) {
+			this.data = data;
+		}
+
+		public OBOSession readSession() throws IOException {
+			this.session = new OBOSessionImpl();
+			this.factory = this.session.getObjectFactory();
+			this.session.setCurrentFilenames(this.readStrings());
+			this.session.setLoadRemark(this.readString());
+			final int namespaces = this.data.readInt();
+			for (int i = 0; i < namespaces; i++) {
+				this.session.addNamespace(this.factory.createNamespace(this.readString(), this.readString()));
+			}
+			this.session.setDefaultNamespace(this.readNamespace());
+			final int subsets = this.data.readInt();
+			for (int i = 0; i < subsets; i++) {
+				this.session.addSubset(this.factory.createSubset(this.readString(), this.readString()));
+			}
+			final int synonymTypes = this.data.readInt();
+			for (int i = 0; i < synonymTypes; i++) {
+				this.session.addSynonymType(this.factory.createSynonymType(this.readString(), this.readString(), this.data.readInt()));
+			}
+			final int idSpaces = this.data.readInt();
+			for (int i = 0; i < idSpaces; i++) {
+				this.session.addIDSpace(this.readString(), this.readString());
+			}
+			for (PropertyValue value : this.readPropertyValues()) {
+				this.session.addPropertyValue(value);
+			}
+			final List<AnnotatedObject> objects = new ArrayList<AnnotatedObject>();
+			final int objectCount = this.data.readInt();
+			for (int i = 0; i < objectCount; i++) {
+				final byte kind = this.data.readByte();
+				final String id = this.readString();
+				final boolean anonymous = this.data.readBoolean();
+				final IdentifiedObject object;
+				if ((kind == DANGLING_CLASS) || (kind == DANGLING_PROPERTY)) {
+					object = this.factory.createDanglingObject(id, kind == DANGLING_PROPERTY);
+					object.setIsAnonymous(anonymous);
+				} else {
+					object = this.factory.createObject(id, (kind == PROPERTY) ? OBOClass.OBO_PROPERTY : OBOClass.OBO_CLASS, anonymous);
+				}
+				this.session.addObject(object);
+				objects.add((AnnotatedObject)object);
+			}
+			for (AnnotatedObject object : objects) {
+				this.readDetails(object);
+			}
+			for (AnnotatedObject object : objects) {
+				this.readLinks((LinkedObject)object);
+			}
+			return this.session;
+		}
+
+		private void readDetails(AnnotatedObject object) throws IOException {
+			object.setName(this.readString());
+			object.setNamespace(this.readNamespace());
+			object.setDefinition(this.readString());
+			for (Dbxref dbxref : this.readDbxrefs()) {
+				object.addDefDbxref(dbxref);
+			}
+			object.setComment(this.readString());
+			for (String id : this.readStrings()) {
+				object.addSecondaryID(id);
+			}
+			object.setCreatedBy(this.readString());
+			object.setCreationDate(this.readDate());
+			object.setModifiedBy(this.readString());
+			object.setModificationDate(this.readDate());
+			final int synonyms = this.data.readInt();
+			for (int i = 0; i < synonyms; i++) {
+				final Synonym synonym = this.factory.createSynonym(this.readString(), this.data.readInt());
+				final String typeID = this.readString();
+				if (typeID != null) {
+					synonym.setSynonymType(this.session.getSynonymType(typeID));
+				}
+				for (Dbxref dbxref : this.readDbxrefs()) {
+					synonym.addXref(dbxref);
+				}
+				object.addSynonym(synonym);
+			}
+			for (Dbxref dbxref : this.readDbxrefs()) {
+				object.addDbxref(dbxref);
+			}
+			final int subsets = this.data.readInt();
+			for (int i = 0; i < subsets; i++) {
+				object.addCategory(this.session.getCategory(this.readString()));
+			}
+			for (PropertyValue value : this.readPropertyValues()) {
+				object.addPropertyValue(value);
+			}
+			object.setObsolete(this.data.readBoolean());
+			for (IdentifiedObject replacement : this.readObjects()) {
+				object.addReplacedBy((ObsoletableObject)replacement);
+			}
+			for (IdentifiedObject consider : this.readObjects()) {
+				object.addConsiderReplacement((ObsoletableObject)consider);
+			}
+			if (object instanceof OBOProperty) {
+				final OBOProperty property = (OBOProperty)object;
+				property.setCyclic(this.data.readBoolean());
+				property.setSymmetric(this.data.readBoolean());
+				property.setTransitive(this.data.readBoolean());
+				property.setReflexive(this.data.readBoolean());
+				property.setAlwaysImpliesInverse(this.data.readBoolean());
+				property.setMetadataTag(this.data.readBoolean());
+				property.setUniversallyQuantified(this.data.readBoolean());
+				// these setters record the value as a link, so they must not be called with null
+				final IdentifiedObject domain = this.readObject();
+				if (domain != null) {
+					property.setDomain(domain);
+				}
+				final IdentifiedObject range = this.readObject();
+				if (range != null) {
+					property.setRange((Type)range);
+				}
+				final IdentifiedObject transitiveOver = this.readObject();
+				if (transitiveOver != null) {
+					property.setTransitiveOver((OBOProperty)transitiveOver);
+				}
+				final IdentifiedObject disjointOver = this.readObject();
+				if (disjointOver != null) {
+					property.setDisjointOver((OBOProperty)disjointOver);
+				}
+				final int chains = this.data.readInt();
+				for (int i = 0; i < chains; i++) {
+					final List<OBOProperty> chain = new ArrayList<OBOProperty>();
+					for (IdentifiedObject link : this.readObjects()) {
+						chain.add((OBOProperty)link);
+					}
+					property.addHoldsOverChain(chain);
+				}
+			}
+		}
+
+		private void readLinks(LinkedObject object) throws IOException {
+			final int links = this.data.readInt();
+			for (int i = 0; i < links; i++) {
+				final OBOProperty type = (OBOProperty)(this.readObject());
+				final LinkedObject parent = (LinkedObject)(this.readObject());
+				final OBORestriction link = this.factory.createOBORestriction(object, type, parent, false);
+				link.setNamespace(this.readNamespace());
+				link.setCompletes(this.data.readBoolean());
+				link.setInverseCompletes(this.data.readBoolean());
+				link.setNecessarilyTrue(this.data.readBoolean());
+				link.setInverseNecessarilyTrue(this.data.readBoolean());
+				link.setCardinality(this.readInteger());
+				link.setMinCardinality(this.readInteger());
+				link.setMaxCardinality(this.readInteger());
+				object.addParent(link);
+			}
+		}
+
+		private List<Dbxref> readDbxrefs() throws IOException {
+			final int count = this.data.readInt();
+			final List<Dbxref> dbxrefs = new ArrayList<Dbxref>(count);
+			for (int i = 0; i < count; i++) {
+				dbxrefs.add(this.factory.createDbxref(this.readString(), this.readString(), this.readString(), this.data.readInt(), null));
+			}
+			return dbxrefs;
+		}
+
+		private List<PropertyValue> readPropertyValues() throws IOException {
+			final int count = this.data.readInt();
+			final List<PropertyValue> values = new ArrayList<PropertyValue>(count);
+			for (int i = 0; i < count; i++) {
+				values.add(this.factory.createPropertyValue(this.readString(), this.readString()));
+			}
+			return values;
+		}
+
+		private List<IdentifiedObject> readObjects() throws IOException {
+			final int count = this.data.readInt();
+			final List<IdentifiedObject> objects = new ArrayList<IdentifiedObject>(count);
+			for (int i = 0; i < count; i++) {
+				objects.add(this.readObject());
+			}
+			return objects;
+		}
+
+		private IdentifiedObject readObject() throws IOException {
+			final String id = this.readString();
+			if (id == null) {
+				return null;
+			}
+			final IdentifiedObject object = this.session.getObject(id);
+			if (object == null) {
+				throw new IOException("Snapshot refers to missing object " + id);
+			}
+			return object;
+		}
+
+		private Namespace readNamespace() throws IOException {
+			final String id = this.readString();
+			return (id != null) ? this.session.getNamespace(id) : null;
+		}
+
+		private List<String> readStrings() throws IOException {
+			final int count = this.data.readInt();
+			final List<String> strings = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				strings.add(this.readString());
+			}
+			return strings;
+		}
+
+		private Date readDate() throws IOException {
+			return this.data.readBoolean() ? new Date(this.data.readLong()) : null;
+		}
+
+		private Integer readInteger() throws IOException {
+			return this.data.readBoolean() ? Integer.valueOf(this.data.readInt()) : null;
+		}
+
+		public String readString() throws IOException {
+			final int index = this.data.readInt();
+			if (index < 0) {
+				return null;
+			}
+			if (index < this.pool.size()) {
+				return this.pool.get(index);
+			}
+			if (index > this.pool.size()) {
+				throw new IOException("Corrupt string pool index " + index);
+			}
+			final byte[] bytes = new byte[this.data.readInt()];
+			this.data.readFully(bytes);
+			final String string = new String(bytes, "UTF-8");
+			this.pool.add(string);
+			return string;
+		}
+
+	}
+
+	/**
+	 * Thrown when a session contains something the snapshot format cannot represent.
+	 */
+	private static class UnsupportedContentException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedContentException(String message) {
+			super(message);
+		}
+
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+}
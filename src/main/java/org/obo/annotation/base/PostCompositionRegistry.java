@@ -0,0 +1,111 @@
+package org.obo.annotation.base;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.obo.annotation.base.OBOUtil.Differentium;
+import org.obo.datamodel.Link;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOProperty;
+
+/**
+ * Keeps one instance of each post-composed term, identified by its generated ID, so that every state or phenotype
+ * using the same composition shares it instead of holding an equivalent copy.  Compositions are held by weak
+ * references, so one which is no longer used anywhere can be collected.
+ * <p>
+ * A registered composition is only reused if its genus and differentia are the very objects requested, so a
+ * composition of dangling terms is not returned once real terms with the same IDs are in use.
+ */
+public class PostCompositionRegistry {
+
+	private static final PostCompositionRegistry SHARED = new PostCompositionRegistry();
+	private final Map<String, CompositionReference> compositions = new HashMap<String, CompositionReference>();
+	private final ReferenceQueue<OBOClass> collected = new ReferenceQueue<OBOClass>();
+
+	/**
+	 * @return The registry used by OBOUtil.createPostComposition.
+	 */
+	public static PostCompositionRegistry getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return The registered composition with the given ID, genus and differentia, or null if there is none.
+	 */
+	public synchronized OBOClass get(String id, OBOClass genus, List<Differentium> differentia) {
+		this.expungeCollected();
+		final CompositionReference reference = this.compositions.get(id);
+		final OBOClass composition = (reference != null) ? reference.get() : null;
+		if ((composition != null) && isComposedOf(composition, genus, differentia)) {
+			return composition;
+		}
+		return null;
+	}
+
+	/**
+	 * Register the composition under its ID, replacing any composition registered before with that ID.  To avoid
+	 * two threads creating the same composition, hold the registry's lock from the call to get until this call.
+	 */
+	public synchronized void put(OBOClass composition) {
+		this.expungeCollected();
+		this.compositions.put(composition.getID(), new CompositionReference(composition, this.collected));
+	}
+
+	/**
+	 * @return The number of compositions registered which have not yet been collected.
+	 */
+	public synchronized int size() {
+		this.expungeCollected();
+		return this.compositions.size();
+	}
+
+	private void expungeCollected() {
+		CompositionReference reference;
+		while ((reference = (CompositionReference)(this.collected.poll())) != null) {
+			// only remove the entry if it has not been replaced since
+			if (this.compositions.get(reference.id) == reference) {
+				this.compositions.remove(reference.id);
+			}
+		}
+	}
+
+	private static boolean isComposedOf(OBOClass composition, OBOClass genus, List<Differentium> differentia) {
+		if (OBOUtil.getGenusTerm(composition) != genus) {
+			return false;
+		}
+		final List<Link> links = OBOUtil.getAllDifferentia(composition);
+		if (links.size() != differentia.size()) {
+			return false;
+		}
+		for (Differentium differentium : differentia) {
+			if (!hasLink(links, differentium.getRelation(), differentium.getTerm())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasLink(List<Link> links, OBOProperty relation, OBOClass term) {
+		for (Link link : links) {
+			if ((link.getType() == relation) && (link.getParent() == term)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class CompositionReference extends WeakReference<OBOClass> {
+
+		private final String id;
+
+		public CompositionReference(OBOClass composition, ReferenceQueue<OBOClass> queue) {
+			super(composition, queue);
+			this.id = composition.getID();
+		}
+
+	}
+
+}
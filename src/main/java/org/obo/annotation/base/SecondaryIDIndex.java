@@ -0,0 +1,74 @@
+package org.obo.annotation.base;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOSession;
+
+/**
+ * Finds terms by their secondary IDs (alt_id), e.g. IDs of terms which have been merged into others, without
+ * scanning every object in the session.  There is one index per session, built on first use; terms added to the
+ * session afterwards, such as provisional terms, must be added to the index as well.  An index does not refer to
+ * its session, so it is discarded once the session is no longer used.
+ */
+public class SecondaryIDIndex {
+
+	private static final Map<OBOSession, SecondaryIDIndex> INDEXES = new WeakHashMap<OBOSession, SecondaryIDIndex>();
+	private final Map<String, OBOClass> terms = new HashMap<String, OBOClass>();
+
+	private SecondaryIDIndex() {}
+
+	/**
+	 * @return The class in the session which has the given secondary ID, or null if there is none.  If several
+	 * classes have it, the one found first is returned.
+	 */
+	public static OBOClass getTerm(OBOSession session, String secondaryID) {
+		final SecondaryIDIndex index;
+		synchronized (INDEXES) {
+			SecondaryIDIndex existing = INDEXES.get(session);
+			if (existing == null) {
+				existing = new SecondaryIDIndex();
+				existing.index(session.getObjects());
+				INDEXES.put(session, existing);
+			}
+			index = existing;
+		}
+		synchronized (index) {
+			return index.terms.get(secondaryID);
+		}
+	}
+
+	/**
+	 * Index the secondary IDs of objects added to the session since its index was built.  Secondary IDs already
+	 * in the index keep their terms.  If the session has no index yet, the objects are indexed when it is built.
+	 */
+	public static void addTerms(OBOSession session, Collection<? extends IdentifiedObject> objects) {
+		final SecondaryIDIndex index;
+		synchronized (INDEXES) {
+			index = INDEXES.get(session);
+		}
+		if (index != null) {
+			synchronized (index) {
+				index.index(objects);
+			}
+		}
+	}
+
+	private void index(Collection<? extends IdentifiedObject> objects) {
+		for (IdentifiedObject object : objects) {
+			if (object instanceof OBOClass) {
+				final OBOClass term = (OBOClass)object;
+				for (String secondaryID : term.getSecondaryIDs()) {
+					if (!this.terms.containsKey(secondaryID)) {
+						this.terms.put(secondaryID, term);
+					}
+				}
+			}
+		}
+	}
+
+}
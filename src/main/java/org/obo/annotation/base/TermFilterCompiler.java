@@ -0,0 +1,342 @@
+package org.obo.annotation.base;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.MultiIDObject;
+import org.obo.datamodel.Namespace;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.SubsetObject;
+import org.obo.datamodel.TermSubset;
+import org.obo.datamodel.impl.OBOClassImpl;
+import org.obo.datamodel.impl.TermCategoryImpl;
+import org.obo.filters.CompoundFilter;
+import org.obo.filters.EqualsComparison;
+import org.obo.filters.Filter;
+import org.obo.filters.IDSearchCriterion;
+import org.obo.filters.IsClassCriterion;
+import org.obo.filters.IsObsoleteCriterion;
+import org.obo.filters.IsPropertyCriterion;
+import org.obo.filters.NamespaceSearchCriterion;
+import org.obo.filters.ObjectFilter;
+import org.obo.filters.SearchComparison;
+import org.obo.filters.SearchCriterion;
+import org.obo.filters.SelfSearchAspect;
+import org.obo.filters.StartsWithComparison;
+import org.obo.filters.SubsetSearchCriterion;
+import org.obo.util.TermUtil;
+
+/**
+ * Evaluates term filters over a fixed collection of objects using precomputed bitsets.  The class, property and
+ * obsolete status of each object and its namespace and subset memberships are recorded once, in a single pass.  Filters
+ * built from those tests and from ID tests, combined with AND, OR and negation, are then evaluated as set operations
+ * rather than by calling the filter on every object.  Any other filter construct, such as a search over ancestors, is
+ * evaluated by calling the filter itself, but only on the objects still in question at that point.
+ * Once constructed, a TermFilterCompiler may be used from several threads at once.
+ */
+public class TermFilterCompiler {
+
+	// an obsolete object used to detect criteria which ignore obsolete objects
+	private static final IdentifiedObject OBSOLETE_PROBE = createObsoleteProbe();
+	private final List<OBOObject> objects = new ArrayList<OBOObject>();
+	private final BitSet classes = new BitSet();
+	private final BitSet properties = new BitSet();
+	private final BitSet obsoletes = new BitSet();
+	private final Map<String, BitSet> namespaces = new HashMap<String, BitSet>();
+	private final Map<String, BitSet> subsets = new HashMap<String, BitSet>();
+
+	/**
+	 * @param objects The objects to filter.  Built in objects are excluded, as a filter query excludes them, and so
+	 * are objects which are not OBOObjects, as only terms are returned.
+	 */
+	public TermFilterCompiler(Collection<? extends IdentifiedObject> objects) {
+		for (IdentifiedObject identifiedObject : objects) {
+			if (identifiedObject.isBuiltIn() || !(identifiedObject instanceof OBOObject)) {
+				continue;
+			}
+			final OBOObject object = (OBOObject)identifiedObject;
+			final int index = this.objects.size();
+			this.objects.add(object);
+			if (TermUtil.isClass(object)) {
+				this.classes.set(index);
+			}
+			if (TermUtil.isProperty(object)) {
+				this.properties.set(index);
+			}
+			if (TermUtil.isObsolete(object)) {
+				this.obsoletes.set(index);
+			}
+			final Namespace namespace = object.getNamespace();
+			if (namespace != null) {
+				getBits(this.namespaces, namespace.getID()).set(index);
+			}
+			if ((object instanceof SubsetObject) && (((SubsetObject)object).getSubsets() != null)) {
+				for (TermSubset subset : ((SubsetObject)object).getSubsets()) {
+					getBits(this.subsets, subset.getName()).set(index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the objects which satisfy the filter, in their original order.  The filter's reasoner should be
+	 * set beforehand, in case any part of it must be evaluated by the filter itself.
+	 */
+	public List<OBOObject> getMatches(Filter<IdentifiedObject> filter) {
+		final BitSet all = new BitSet();
+		all.set(0, this.objects.size());
+		final BitSet matches = this.compile(filter).evaluate(all);
+		final List<OBOObject> terms = new ArrayList<OBOObject>(matches.cardinality());
+		for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			terms.add(this.objects.get(i));
+		}
+		return terms;
+	}
+
+	private CompiledFilter compile(Filter<IdentifiedObject> filter) {
+		if (filter instanceof CompoundFilter) {
+			final CompoundFilter compound = (CompoundFilter)filter;
+			if ((compound.getBooleanOperation() == CompoundFilter.AND) || (compound.getBooleanOperation() == CompoundFilter.OR)) {
+				final List<CompiledFilter> operands = new ArrayList<CompiledFilter>();
+				for (Object operand : compound.getFilters()) {
+					@SuppressWarnings("unchecked")
+					final Filter<IdentifiedObject> operandFilter = (Filter<IdentifiedObject>)operand;
+					operands.add(this.compile(operandFilter));
+				}
+				return new Compound(compound.getBooleanOperation() == CompoundFilter.AND, operands);
+			}
+		} else if (filter instanceof ObjectFilter) {
+			final BitSet matches = this.compileObjectFilter((ObjectFilter)filter);
+			if (matches != null) {
+				return new Precomputed(matches);
+			}
+		}
+		log().debug("Evaluating filter without compiling: " + filter);
+		return new Generic(filter);
+	}
+
+	/**
+	 * Returns the objects matching a single test, or null if the test cannot be compiled.
+	 */
+	private BitSet compileObjectFilter(ObjectFilter filter) {
+		final SearchCriterion<?, ?> criterion = filter.getCriterion();
+		if (criterion == null) {
+			// such a filter is never satisfied
+			return new BitSet();
+		}
+		if (!((filter.getAspect() != null) && (filter.getAspect().getClass() == SelfSearchAspect.class))) {
+			return null;
+		}
+		if (criterion.getInputType() != IdentifiedObject.class) {
+			return null;
+		}
+		final BitSet matches;
+		if (criterion.getClass() == IsClassCriterion.class) {
+			matches = (BitSet)this.classes.clone();
+		} else if (criterion.getClass() == IsPropertyCriterion.class) {
+			matches = (BitSet)this.properties.clone();
+		} else if (criterion.getClass() == IsObsoleteCriterion.class) {
+			matches = (BitSet)this.obsoletes.clone();
+		} else {
+			matches = this.compileStringTest(criterion, filter.getComparison(), filter.getValue());
+			if (matches == null) {
+				return null;
+			}
+		}
+		if (filter.getNegate()) {
+			matches.flip(0, this.objects.size());
+		}
+		return matches;
+	}
+
+	private BitSet compileStringTest(SearchCriterion<?, ?> criterion, SearchComparison comparison, String value) {
+		if ((value == null) || (value.indexOf('`') > -1)) {
+			// backtick expressions are resolved against the filter's context
+			return null;
+		}
+		final boolean startsWith;
+		if ((comparison != null) && (comparison.getClass() == EqualsComparison.class)) {
+			startsWith = false;
+		} else if ((comparison != null) && (comparison.getClass() == StartsWithComparison.class)) {
+			startsWith = true;
+		} else {
+			return null;
+		}
+		final BitSet matches = new BitSet();
+		if (criterion.getClass() == NamespaceSearchCriterion.class) {
+			for (Map.Entry<String, BitSet> namespace : this.namespaces.entrySet()) {
+				if (matches(namespace.getKey(), value, startsWith)) {
+					matches.or(namespace.getValue());
+				}
+			}
+		} else if (criterion.getClass() == SubsetSearchCriterion.class) {
+			for (Map.Entry<String, BitSet> subset : this.subsets.entrySet()) {
+				if (matches(subset.getKey(), value, startsWith)) {
+					matches.or(subset.getValue());
+				}
+			}
+		} else if (criterion.getClass() == IDSearchCriterion.class) {
+			for (int i = 0; i < this.objects.size(); i++) {
+				if (this.idMatches(this.objects.get(i), value, startsWith)) {
+					matches.set(i);
+				}
+			}
+		} else {
+			return null;
+		}
+		if (ignoresObsoletes(criterion)) {
+			matches.andNot(this.obsoletes);
+		}
+		return matches;
+	}
+
+	private boolean idMatches(IdentifiedObject object, String value, boolean startsWith) {
+		if (matches(object.getID(), value, startsWith)) {
+			return true;
+		}
+		if (object instanceof MultiIDObject) {
+			for (String id : ((MultiIDObject)object).getSecondaryIDs()) {
+				if (matches(id, value, startsWith)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The same test as EqualsComparison or StartsWithComparison applies to a string value.
+	 */
+	private static boolean matches(String candidate, String value, boolean startsWith) {
+		if (candidate == null) {
+			return false;
+		}
+		return startsWith ? candidate.toLowerCase().startsWith(value.toLowerCase()) : candidate.equalsIgnoreCase(value);
+	}
+
+	/**
+	 * Namespace, subset and ID criteria can be constructed to yield no values for obsolete objects, which
+	 * is not otherwise visible.
+	 */
+	@SuppressWarnings("unchecked")
+	private static boolean ignoresObsoletes(SearchCriterion<?, ?> criterion) {
+		return ((SearchCriterion<IdentifiedObject, Object>)criterion).getValues(new LinkedList<Object>(), OBSOLETE_PROBE).isEmpty();
+	}
+
+	private static IdentifiedObject createObsoleteProbe() {
+		final OBOClassImpl probe = new OBOClassImpl("probe", "probe:probe");
+		probe.setNamespace(new Namespace("probe"));
+		probe.addCategory(new TermCategoryImpl("probe", "probe"));
+		probe.setObsolete(true);
+		return probe;
+	}
+
+	private static BitSet getBits(Map<String, BitSet> map, String key) {
+		BitSet bits = map.get(key);
+		if (bits == null) {
+			bits = new BitSet();
+			map.put(key, bits);
+		}
+		return bits;
+	}
+
+	/**
+	 * A filter reduced to an operation on sets of object indexes.
+	 */
+	private static interface CompiledFilter {
+
+		/**
+		 * @return The indexes among the candidates of the objects which satisfy the filter.
+		 */
+		public BitSet evaluate(BitSet candidates);
+
+	}
+
+	private static class Precomputed implements CompiledFilter {
+
+		private final BitSet matches;
+
+		public Precomputed(BitSet matches) {
+			this.matches = matches;
+		}
+
+		@Override
+		public BitSet evaluate(BitSet candidates) {
+			final BitSet result = (BitSet)candidates.clone();
+			result.and(this.matches);
+			return result;
+		}
+
+	}
+
+	private static class Compound implements CompiledFilter {
+
+		private final boolean and;
+		private final List<CompiledFilter> operands;
+
+		public Compound(boolean and, List<CompiledFilter> operands) {
+			this.and = and;
+			this.operands = operands;
+		}
+
+		@Override
+		public BitSet evaluate(BitSet candidates) {
+			if (this.operands.isEmpty()) {
+				// an empty compound filter is always satisfied
+				return (BitSet)candidates.clone();
+			}
+			if (this.and) {
+				// each operand need only consider the candidates which satisfied all the previous ones
+				BitSet result = candidates;
+				for (CompiledFilter operand : this.operands) {
+					result = operand.evaluate(result);
+				}
+				return result;
+			} else {
+				// each operand need only consider the candidates which satisfied none of the previous ones
+				final BitSet result = new BitSet();
+				final BitSet remaining = (BitSet)candidates.clone();
+				for (CompiledFilter operand : this.operands) {
+					final BitSet matches = operand.evaluate(remaining);
+					result.or(matches);
+					remaining.andNot(matches);
+				}
+				return result;
+			}
+		}
+
+	}
+
+	private class Generic implements CompiledFilter {
+
+		private final Filter<IdentifiedObject> filter;
+
+		public Generic(Filter<IdentifiedObject> filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		public BitSet evaluate(BitSet candidates) {
+			final BitSet result = new BitSet();
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				if (this.filter.satisfies(objects.get(i))) {
+					result.set(i);
+				}
+			}
+			return result;
+		}
+
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+}
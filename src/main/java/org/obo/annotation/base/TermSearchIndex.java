@@ -0,0 +1,771 @@
+package org.obo.annotation.base;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.obo.app.util.BoundedPriorityQueue;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.Synonym;
+
+/**
+ * An immutable text index over the names and synonyms of a collection of terms, used to
+ * answer autocomplete queries without rescanning and re-lowercasing every label on each keystroke.
+ * Each name or synonym is an entry.  Entries are numbered in the order in which matches are
+ * presented (by label text), so results which are collected in entry order need no further sorting.
+ * Queries of three or more characters are answered from trigram posting lists; shorter queries
+ * use a pass over the pre-normalized labels.  A query which extends the previous one typed can
+ * instead be answered by filtering the previous result.  Exact label lookups, used when typed text
+ * is committed, are answered from a hash table.
+ * <p>
+ * An index can be derived from another with a few terms added, changed or removed, e.g. when provisional
+ * terms are created, without rebuilding it.  The derived index shares the entries of the original, hides the
+ * entries of changed and removed terms, and indexes the new and changed terms in a small supplement whose
+ * entries are numbered after the shared ones.  Matches from both are merged into label order at query time.
+ * Once the supplement grows large relative to the shared entries, the index is rebuilt instead.
+ */
+public class TermSearchIndex {
+
+	private static final int GRAM = 3;
+	private static final int[] NO_ENTRIES = new int[0];
+	private static final int FUZZY_DEADLINE_CHECK_INTERVAL = 64;
+	private static final Comparator<Long> FUZZY_ORDER = new Comparator<Long>() {
+		@Override
+		public int compare(Long o1, Long o2) {
+			return o1.compareTo(o2);
+		}
+	};
+	// the largest supplement, as a fraction of the shared entries, which is kept instead of rebuilding
+	private static final int SUPPLEMENT_FRACTION = 8;
+	private static final int MINIMUM_SUPPLEMENT = 256;
+	private final TermSearchIndex base;
+	private final Set<OBOObject> hidden;
+	private final int offset;
+	private final OBOObject[] terms;
+	private final String[] labels;
+	private final String[] normalizedLabels;
+	private final boolean[] synonyms;
+	private final Map<Long, int[]> trigrams;
+	private final Map<String, int[]> exactLabels;
+	// trigram hit counts for fuzzy searches, one array per searching thread shared by all indexes, kept zeroed between
+	// searches and grown to the largest index searched
+	private static final ThreadLocal<int[]> FUZZY_COUNTS = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[0];
+		}
+	};
+
+	public TermSearchIndex(Collection<OBOObject> terms) {
+		this(null, Collections.<OBOObject>emptySet(), terms);
+	}
+
+	/**
+	 * @param base The index whose entries are shared, or null.
+	 * @param hidden The terms whose entries in the base are not to be matched.
+	 * @param terms The terms to index in addition to those of the base.
+	 */
+	private TermSearchIndex(TermSearchIndex base, Set<OBOObject> hidden, Collection<OBOObject> terms) {
+		this.base = base;
+		this.hidden = hidden;
+		this.offset = (base != null) ? base.size() : 0;
+		final List<Entry> entries = new ArrayList<Entry>();
+		for (OBOObject term : terms) {
+			if (term.getName() != null) {
+				entries.add(new Entry(term, term.getName(), false));
+			}
+			for (Synonym synonym : term.getSynonyms()) {
+				if (synonym.getText() != null) {
+					entries.add(new Entry(term, synonym.getText(), true));
+				}
+			}
+		}
+		Collections.sort(entries, ENTRY_ORDER);
+		final int size = entries.size();
+		this.terms = new OBOObject[size];
+		this.labels = new String[size];
+		this.normalizedLabels = new String[size];
+		this.synonyms = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			final Entry entry = entries.get(i);
+			this.terms[i] = entry.term;
+			this.labels[i] = entry.label;
+			this.normalizedLabels[i] = normalize(entry.label);
+			this.synonyms[i] = entry.synonym;
+		}
+		this.trigrams = this.buildTrigrams();
+		this.exactLabels = this.buildExactLabels();
+	}
+
+	private TermSearchIndex(OBOObject[] terms, String[] labels, boolean[] synonyms, Map<Long, int[]> trigrams) {
+		this.base = null;
+		this.hidden = Collections.emptySet();
+		this.offset = 0;
+		this.terms = terms;
+		this.labels = labels;
+		this.synonyms = synonyms;
+		this.normalizedLabels = new String[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			this.normalizedLabels[i] = normalize(labels[i]);
+		}
+		this.trigrams = trigrams;
+		this.exactLabels = this.buildExactLabels();
+	}
+
+	/**
+	 * Write this index's entries and trigram postings, so that it can be read back without sorting and
+	 * scanning every label again.  Terms are written as their numbers in the given map, which must contain
+	 * every term in this index.  Only an index which does not share another's entries can be written.
+	 */
+	void write(DataOutput output, Map<OBOObject, Integer> termNumbers) throws IOException {
+		if (this.base != null) {
+			throw new IllegalStateException("A derived index cannot be written");
+		}
+		output.writeInt(this.labels.length);
+		for (int entry = 0; entry < this.labels.length; entry++) {
+			output.writeInt(termNumbers.get(this.terms[entry]));
+			output.writeBoolean(this.synonyms[entry]);
+			output.writeUTF(this.labels[entry]);
+		}
+		output.writeInt(this.trigrams.size());
+		for (Map.Entry<Long, int[]> posting : this.trigrams.entrySet()) {
+			output.writeLong(posting.getKey());
+			output.writeInt(posting.getValue().length);
+			for (int entry : posting.getValue()) {
+				output.writeInt(entry);
+			}
+		}
+	}
+
+	/**
+	 * Read an index written by {@link #write}.  Entries whose term is null in the given list, e.g. because the
+	 * term no longer exists, are left out.
+	 * @param terms The terms, listed by the numbers they were written with.
+	 */
+	static TermSearchIndex read(DataInput input, List<OBOObject> terms) throws IOException {
+		final int size = input.readInt();
+		final int[] renumbering = new int[size];
+		final List<OBOObject> entryTerms = new ArrayList<OBOObject>(size);
+		final List<String> entryLabels = new ArrayList<String>(size);
+		final boolean[] entrySynonyms = new boolean[size];
+		for (int entry = 0; entry < size; entry++) {
+			final OBOObject term = terms.get(input.readInt());
+			final boolean synonym = input.readBoolean();
+			final String label = input.readUTF();
+			if (term != null) {
+				renumbering[entry] = entryTerms.size();
+				entrySynonyms[entryTerms.size()] = synonym;
+				entryTerms.add(term);
+				entryLabels.add(label);
+			} else {
+				renumbering[entry] = -1;
+			}
+		}
+		final boolean[] synonyms = Arrays.copyOf(entrySynonyms, entryTerms.size());
+		final int trigramCount = input.readInt();
+		final Map<Long, int[]> trigrams = new HashMap<Long, int[]>(trigramCount * 4 / 3 + 1);
+		for (int i = 0; i < trigramCount; i++) {
+			final Long key = Long.valueOf(input.readLong());
+			final IntList postings = new IntList();
+			final int length = input.readInt();
+			for (int j = 0; j < length; j++) {
+				final int entry = renumbering[input.readInt()];
+				if (entry > -1) {
+					postings.add(entry);
+				}
+			}
+			if (!postings.isEmpty()) {
+				trigrams.put(key, postings.toArray());
+			}
+		}
+		return new TermSearchIndex(entryTerms.toArray(new OBOObject[0]), entryLabels.toArray(new String[0]), synonyms, trigrams);
+	}
+
+	/**
+	 * @return Whether this index shares the entries of another, rather than holding all of its own.
+	 */
+	boolean isDerived() {
+		return this.base != null;
+	}
+
+	/**
+	 * The normalization applied to both labels and queries before matching.
+	 */
+	public static String normalize(String text) {
+		return text.toLowerCase();
+	}
+
+	/**
+	 * @return The number of entries (names plus synonyms) in this index, including shared entries hidden by later changes.
+	 */
+	public int size() {
+		return this.offset + this.labels.length;
+	}
+
+	public OBOObject getTerm(int entry) {
+		return (entry < this.offset) ? this.base.getTerm(entry) : this.terms[entry - this.offset];
+	}
+
+	/**
+	 * @return The name or synonym text of the given entry, as it appears in the ontology.
+	 */
+	public String getLabel(int entry) {
+		return (entry < this.offset) ? this.base.getLabel(entry) : this.labels[entry - this.offset];
+	}
+
+	/**
+	 * @return Whether the given entry's label is a synonym rather than the term name.
+	 */
+	public boolean isSynonym(int entry) {
+		return (entry < this.offset) ? this.base.isSynonym(entry) : this.synonyms[entry - this.offset];
+	}
+
+	String getNormalizedLabel(int entry) {
+		return (entry < this.offset) ? this.base.getNormalizedLabel(entry) : this.normalizedLabels[entry - this.offset];
+	}
+
+	/**
+	 * @return The distinct terms with entries in this index, other than hidden ones.
+	 */
+	public Collection<OBOObject> getTerms() {
+		final Set<OBOObject> result = new LinkedHashSet<OBOObject>();
+		if (this.base != null) {
+			for (OBOObject term : this.base.getTerms()) {
+				if (!this.hidden.contains(term)) {
+					result.add(term);
+				}
+			}
+		}
+		result.addAll(Arrays.asList(this.terms));
+		return result;
+	}
+
+	/**
+	 * Returns an index which differs from this one by the given terms.  Unless the changes have accumulated, the new
+	 * index shares this index's entries, so deriving it takes time proportional to the number of changed terms.
+	 * This index is not modified and can still be used.
+	 * @param removed Terms to remove.  Terms not in this index are ignored.
+	 * @param added Terms to add.  A term already in this index is replaced, e.g. to pick up a changed name.
+	 */
+	public TermSearchIndex withChanges(Collection<OBOObject> removed, Collection<OBOObject> added) {
+		final TermSearchIndex shared = (this.base != null) ? this.base : this;
+		final Set<OBOObject> supplement = new LinkedHashSet<OBOObject>(Arrays.asList((this.base != null) ? this.terms : new OBOObject[0]));
+		supplement.removeAll(removed);
+		supplement.removeAll(added);
+		supplement.addAll(added);
+		final Set<OBOObject> newHidden = new HashSet<OBOObject>(this.hidden);
+		newHidden.addAll(removed);
+		newHidden.addAll(added);
+		if (supplement.size() > Math.max(MINIMUM_SUPPLEMENT, shared.size() / SUPPLEMENT_FRACTION)) {
+			final Set<OBOObject> all = new LinkedHashSet<OBOObject>();
+			for (OBOObject term : shared.getTerms()) {
+				if (!newHidden.contains(term)) {
+					all.add(term);
+				}
+			}
+			all.addAll(supplement);
+			return new TermSearchIndex(all);
+		}
+		return new TermSearchIndex(shared, newHidden, supplement);
+	}
+
+	/**
+	 * Find all entries whose label contains the input text, ignoring case.
+	 */
+	public Result search(String input) {
+		return this.search(input, null);
+	}
+
+	/**
+	 * Find all entries whose label contains the input text, ignoring case.  If the input extends the query
+	 * of a previous result from this index, every match must be among that result's entries, so only those
+	 * need to be checked.
+	 * @param previous The result of an earlier search of this index, or null.
+	 */
+	public Result search(String input, Result previous) {
+		if (this.base == null) {
+			return this.searchEntries(input, previous);
+		}
+		final Result baseResult = this.base.search(input, ((previous != null) && (previous.index == this)) ? previous.baseResult : null);
+		final Result supplementResult = this.searchEntries(input, null);
+		final int[] startsWith = this.merge(baseResult.getStartsWith(), supplementResult.getStartsWith());
+		final int[] containedIn = this.merge(baseResult.getContainedIn(), supplementResult.getContainedIn());
+		return new Result(this, baseResult.getQuery(), startsWith, containedIn, baseResult);
+	}
+
+	/**
+	 * Search this index's own entries, not those shared with a base index.  The entries in the result are
+	 * numbered from zero, and match the entry numbers of this index only if it has no base.
+	 */
+	private Result searchEntries(String input, Result previous) {
+		final String query = normalize(input);
+		final boolean refinable = (previous != null) && (previous.index == this) && query.startsWith(previous.getQuery());
+		if (query.length() < GRAM) {
+			return refinable ? this.refine(query, previous) : this.scan(query);
+		}
+		int[] candidates = null;
+		for (int i = 0; i <= query.length() - GRAM; i++) {
+			final int[] postings = this.trigrams.get(trigram(query, i));
+			if (postings == null) {
+				return new Result(this, query, NO_ENTRIES, NO_ENTRIES, null);
+			}
+			if ((candidates == null) || (postings.length < candidates.length)) {
+				candidates = postings;
+			}
+		}
+		if (refinable && (previous.size() < candidates.length)) {
+			return this.refine(query, previous);
+		}
+		return this.verify(query, candidates);
+	}
+
+	/**
+	 * Find the entries whose label is exactly the given text, including case.
+	 * @return The matching entries in order, with any name matches listed before synonym matches.
+	 */
+	public int[] findExact(String text) {
+		final int[] found = this.exactLabels.get(text);
+		final int[] entries = (found != null) ? found : NO_ENTRIES;
+		if (this.base == null) {
+			return entries;
+		}
+		final int[] baseEntries = this.base.findExact(text);
+		final IntList names = new IntList();
+		final IntList synonymEntries = new IntList();
+		for (int entry : baseEntries) {
+			if (!this.hidden.contains(this.base.getTerm(entry))) {
+				(this.base.isSynonym(entry) ? synonymEntries : names).add(entry);
+			}
+		}
+		for (int entry : entries) {
+			(this.synonyms[entry] ? synonymEntries : names).add(this.offset + entry);
+		}
+		final int[] nameArray = names.toArray();
+		final int[] synonymArray = synonymEntries.toArray();
+		final int[] combined = Arrays.copyOf(nameArray, nameArray.length + synonymArray.length);
+		System.arraycopy(synonymArray, 0, combined, nameArray.length, synonymArray.length);
+		return combined;
+	}
+
+	/**
+	 * Find the entries for the name and synonyms of the given term, using the exact label lookup, so that the cost
+	 * depends on the term's labels rather than the size of the index.
+	 * @return The term's entries in order, or none if the term is not in this index or has been renamed since it was indexed.
+	 */
+	public int[] getEntries(OBOObject term) {
+		final Set<String> termLabels = new LinkedHashSet<String>();
+		if (term.getName() != null) {
+			termLabels.add(term.getName());
+		}
+		for (Synonym synonym : term.getSynonyms()) {
+			if (synonym.getText() != null) {
+				termLabels.add(synonym.getText());
+			}
+		}
+		final IntList entries = new IntList();
+		for (String label : termLabels) {
+			for (int entry : this.findExact(label)) {
+				if (this.getTerm(entry).equals(term)) {
+					entries.add(entry);
+				}
+			}
+		}
+		final int[] result = entries.toArray();
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Find entries whose label contains an approximate match for the input, for use when exact substring matching
+	 * finds little or nothing, e.g. because of a typo.  Up to two edits (insertions, deletions or substitutions) are allowed,
+	 * depending on the input length; labels which contain the input exactly are not included.  Candidates are found
+	 * using the trigram postings, since a label containing the input with k edits must still share all but at most 3k
+	 * of the input's trigrams.  Only those candidates are checked with an edit distance computation.
+	 * @param limit The maximum number of entries to return.
+	 * @param timeBudget The time in nanoseconds after which to stop checking candidates and return what has been found.
+	 * @return Matching entries, fewest edits first, then shortest label, then in entry order.
+	 */
+	public int[] searchFuzzy(String input, int limit, long timeBudget) {
+		if (this.base == null) {
+			return this.searchFuzzyEntries(input, limit, timeBudget);
+		}
+		if (limit < 1) {
+			return NO_ENTRIES;
+		}
+		final long start = System.nanoTime();
+		// the shared entries may include hidden ones, so ask for enough to make up for them
+		final int[] baseEntries = this.base.searchFuzzy(input, limit + Math.min(this.hidden.size(), limit), timeBudget);
+		// the supplement gets whatever time the base search left
+		final long remaining = Math.max(0, timeBudget - (System.nanoTime() - start));
+		final int[] supplementEntries = this.searchFuzzyEntries(input, limit, remaining);
+		final String query = normalize(input);
+		final int[] previousRow = new int[query.length() + 1];
+		final int[] currentRow = new int[query.length() + 1];
+		final BoundedPriorityQueue<Long> best = new BoundedPriorityQueue<Long>(limit, FUZZY_ORDER);
+		for (int entry : baseEntries) {
+			if (!this.hidden.contains(this.base.getTerm(entry))) {
+				best.offer(fuzzyKey(substringEditDistance(query, this.getNormalizedLabel(entry), previousRow, currentRow), this.getNormalizedLabel(entry), entry));
+			}
+		}
+		for (int entry : supplementEntries) {
+			best.offer(fuzzyKey(substringEditDistance(query, this.normalizedLabels[entry], previousRow, currentRow), this.normalizedLabels[entry], this.offset + entry));
+		}
+		return fuzzyEntries(best);
+	}
+
+	private int[] searchFuzzyEntries(String input, int limit, long timeBudget) {
+		final long start = System.nanoTime();
+		final String query = normalize(input);
+		final List<int[]> postings = new ArrayList<int[]>();
+		final Set<Long> seen = new HashSet<Long>();
+		for (int i = 0; i <= query.length() - GRAM; i++) {
+			final Long key = trigram(query, i);
+			if (seen.add(key)) {
+				final int[] list = this.trigrams.get(key);
+				if (list != null) {
+					postings.add(list);
+				}
+			}
+		}
+		final int maxEdits = Math.min(maxFuzzyEdits(query.length()), (seen.size() - 1) / GRAM);
+		if ((maxEdits < 1) || (limit < 1)) {
+			return NO_ENTRIES;
+		}
+		final int threshold = seen.size() - (GRAM * maxEdits);
+		final int[] counts = this.getFuzzyCounts();
+		final IntList candidates = new IntList();
+		try {
+			for (int[] list : postings) {
+				for (int entry : list) {
+					if (++counts[entry] == threshold) {
+						candidates.add(entry);
+					}
+				}
+			}
+		} finally {
+			for (int[] list : postings) {
+				for (int entry : list) {
+					counts[entry] = 0;
+				}
+			}
+		}
+		final BoundedPriorityQueue<Long> best = new BoundedPriorityQueue<Long>(limit, FUZZY_ORDER);
+		final int[] previousRow = new int[query.length() + 1];
+		final int[] currentRow = new int[query.length() + 1];
+		final int[] candidateEntries = candidates.toArray();
+		for (int i = 0; i < candidateEntries.length; i++) {
+			if ((i % FUZZY_DEADLINE_CHECK_INTERVAL == 0) && ((System.nanoTime() - start) > timeBudget)) {
+				break;
+			}
+			final int entry = candidateEntries[i];
+			final int edits = substringEditDistance(query, this.normalizedLabels[entry], previousRow, currentRow);
+			if ((edits > 0) && (edits <= maxEdits)) {
+				best.offer(fuzzyKey(edits, this.normalizedLabels[entry], entry));
+			}
+		}
+		return fuzzyEntries(best);
+	}
+
+	private int[] getFuzzyCounts() {
+		int[] counts = FUZZY_COUNTS.get();
+		if (counts.length < this.labels.length) {
+			counts = new int[this.labels.length];
+			FUZZY_COUNTS.set(counts);
+		}
+		return counts;
+	}
+
+	/**
+	 * Packs the fuzzy ranking criteria into a single number: fewest edits, then shortest label, then entry order.
+	 */
+	private static Long fuzzyKey(int edits, String label, int entry) {
+		return Long.valueOf(((long)edits << 48) | ((long)Math.min(label.length(), 0xFFFF) << 32) | entry);
+	}
+
+	private static int[] fuzzyEntries(BoundedPriorityQueue<Long> best) {
+		final List<Long> ranked = best.toSortedList();
+		final int[] entries = new int[ranked.size()];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = (int)(ranked.get(i).longValue() & 0xFFFFFFFFL);
+		}
+		return entries;
+	}
+
+	/**
+	 * Merge shared entries, less any hidden ones, with supplement entries numbered from zero, into label order.
+	 */
+	private int[] merge(int[] baseEntries, int[] supplementEntries) {
+		final IntList merged = new IntList();
+		int i = 0;
+		int j = 0;
+		while ((i < baseEntries.length) || (j < supplementEntries.length)) {
+			if ((i < baseEntries.length) && this.hidden.contains(this.base.getTerm(baseEntries[i]))) {
+				i++;
+			} else if ((j >= supplementEntries.length) || ((i < baseEntries.length) && (this.base.getLabel(baseEntries[i]).compareTo(this.labels[supplementEntries[j]]) <= 0))) {
+				merged.add(baseEntries[i++]);
+			} else {
+				merged.add(this.offset + supplementEntries[j++]);
+			}
+		}
+		return merged.toArray();
+	}
+
+	private static int maxFuzzyEdits(int queryLength) {
+		if (queryLength >= 9) {
+			return 2;
+		} else if (queryLength >= 6) {
+			return 1;
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * The fewest edits needed to turn the query into some substring of the label.
+	 */
+	private static int substringEditDistance(String query, String label, int[] previousRow, int[] currentRow) {
+		int[] previous = previousRow;
+		int[] current = currentRow;
+		for (int i = 0; i <= query.length(); i++) {
+			previous[i] = i;
+		}
+		int best = previous[query.length()];
+		for (int j = 1; j <= label.length(); j++) {
+			// a match may begin anywhere in the label, so the first row is always zero
+			current[0] = 0;
+			final char labelChar = label.charAt(j - 1);
+			for (int i = 1; i <= query.length(); i++) {
+				final int substitution = previous[i - 1] + ((query.charAt(i - 1) == labelChar) ? 0 : 1);
+				current[i] = Math.min(substitution, Math.min(previous[i] + 1, current[i - 1] + 1));
+			}
+			best = Math.min(best, current[query.length()]);
+			final int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return best;
+	}
+
+	private Result scan(String query) {
+		final IntList startsWith = new IntList();
+		final IntList containedIn = new IntList();
+		for (int entry = 0; entry < this.normalizedLabels.length; entry++) {
+			this.classify(query, entry, startsWith, containedIn);
+		}
+		return new Result(this, query, startsWith.toArray(), containedIn.toArray(), null);
+	}
+
+	private Result verify(String query, int[] candidates) {
+		final IntList startsWith = new IntList();
+		final IntList containedIn = new IntList();
+		for (int entry : candidates) {
+			this.classify(query, entry, startsWith, containedIn);
+		}
+		return new Result(this, query, startsWith.toArray(), containedIn.toArray(), null);
+	}
+
+	private Result refine(String query, Result previous) {
+		final IntList startsWith = new IntList();
+		final IntList containedIn = new IntList();
+		final int[] previousStartsWith = previous.getStartsWith();
+		final int[] previousContainedIn = previous.getContainedIn();
+		int i = 0;
+		int j = 0;
+		// merge the two previous lists so that entries are still visited in order
+		while ((i < previousStartsWith.length) || (j < previousContainedIn.length)) {
+			final int entry;
+			if ((j >= previousContainedIn.length) || ((i < previousStartsWith.length) && (previousStartsWith[i] < previousContainedIn[j]))) {
+				entry = previousStartsWith[i++];
+			} else {
+				entry = previousContainedIn[j++];
+			}
+			this.classify(query, entry, startsWith, containedIn);
+		}
+		return new Result(this, query, startsWith.toArray(), containedIn.toArray(), null);
+	}
+
+	private void classify(String query, int entry, IntList startsWith, IntList containedIn) {
+		final int position = this.normalizedLabels[entry].indexOf(query);
+		if (position == 0) {
+			startsWith.add(entry);
+		} else if (position > -1) {
+			containedIn.add(entry);
+		}
+	}
+
+	private Map<Long, int[]> buildTrigrams() {
+		final Map<Long, IntList> postings = new HashMap<Long, IntList>();
+		for (int entry = 0; entry < this.normalizedLabels.length; entry++) {
+			final String label = this.normalizedLabels[entry];
+			for (int i = 0; i <= label.length() - GRAM; i++) {
+				final Long key = trigram(label, i);
+				IntList list = postings.get(key);
+				if (list == null) {
+					list = new IntList();
+					postings.put(key, list);
+				}
+				// entries are visited in order, so a repeated trigram within one label shows up as the last element
+				if (list.isEmpty() || (list.last() != entry)) {
+					list.add(entry);
+				}
+			}
+		}
+		final Map<Long, int[]> result = new HashMap<Long, int[]>(postings.size() * 4 / 3 + 1);
+		for (Map.Entry<Long, IntList> posting : postings.entrySet()) {
+			result.put(posting.getKey(), posting.getValue().toArray());
+		}
+		return result;
+	}
+
+	private Map<String, int[]> buildExactLabels() {
+		final Map<String, IntList> names = new HashMap<String, IntList>();
+		final Map<String, IntList> synonymLabels = new HashMap<String, IntList>();
+		for (int entry = 0; entry < this.labels.length; entry++) {
+			final Map<String, IntList> map = this.synonyms[entry] ? synonymLabels : names;
+			IntList list = map.get(this.labels[entry]);
+			if (list == null) {
+				list = new IntList();
+				map.put(this.labels[entry], list);
+			}
+			list.add(entry);
+		}
+		final Map<String, int[]> result = new HashMap<String, int[]>((names.size() + synonymLabels.size()) * 4 / 3 + 1);
+		for (Map.Entry<String, IntList> name : names.entrySet()) {
+			result.put(name.getKey(), name.getValue().toArray());
+		}
+		for (Map.Entry<String, IntList> synonym : synonymLabels.entrySet()) {
+			final int[] nameEntries = result.get(synonym.getKey());
+			final int[] synonymEntries = synonym.getValue().toArray();
+			if (nameEntries == null) {
+				result.put(synonym.getKey(), synonymEntries);
+			} else {
+				final int[] combined = Arrays.copyOf(nameEntries, nameEntries.length + synonymEntries.length);
+				System.arraycopy(synonymEntries, 0, combined, nameEntries.length, synonymEntries.length);
+				result.put(synonym.getKey(), combined);
+			}
+		}
+		return result;
+	}
+
+	private static Long trigram(String text, int start) {
+		return Long.valueOf(((long)text.charAt(start) << 32) | ((long)text.charAt(start + 1) << 16) | text.charAt(start + 2));
+	}
+
+	/**
+	 * The entries matching a query, split into those whose label starts with the query
+	 * and those which contain it elsewhere.  Both arrays are in entry (presentation) order.
+	 */
+	public static class Result {
+
+		private final TermSearchIndex index;
+		private final String query;
+		private final int[] startsWith;
+		private final int[] containedIn;
+		// the result from the shared entries of a derived index, which a refined search can start from
+		private final Result baseResult;
+
+		private Result(TermSearchIndex index, String query, int[] startsWith, int[] containedIn, Result baseResult) {
+			this.index = index;
+			this.query = query;
+			this.startsWith = startsWith;
+			this.containedIn = containedIn;
+			this.baseResult = baseResult;
+		}
+
+		/**
+		 * @return The normalized query text which produced this result.
+		 */
+		public String getQuery() {
+			return this.query;
+		}
+
+		public int[] getStartsWith() {
+			return this.startsWith;
+		}
+
+		public int[] getContainedIn() {
+			return this.containedIn;
+		}
+
+		/**
+		 * @return Whether the label of the given entry, which must not be hidden, starts with the query.
+		 */
+		public boolean isStartsWith(int entry) {
+			return this.index.getNormalizedLabel(entry).startsWith(this.query);
+		}
+
+		/**
+		 * @return Whether the label of the given entry, which must not be hidden, contains the query other than at the start.
+		 */
+		public boolean isContainedIn(int entry) {
+			return this.index.getNormalizedLabel(entry).indexOf(this.query) > 0;
+		}
+
+		/**
+		 * @return The total number of matching entries.
+		 */
+		public int size() {
+			return this.startsWith.length + this.containedIn.length;
+		}
+
+	}
+
+	private static class Entry {
+
+		private final OBOObject term;
+		private final String label;
+		private final boolean synonym;
+
+		private Entry(OBOObject term, String label, boolean synonym) {
+			this.term = term;
+			this.label = label;
+			this.synonym = synonym;
+		}
+
+	}
+
+	private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry o1, Entry o2) {
+			return o1.label.compareTo(o2.label);
+		}
+	};
+
+	private static class IntList {
+
+		private int[] values = new int[8];
+		private int size = 0;
+
+		public void add(int value) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			this.values[this.size++] = value;
+		}
+
+		public boolean isEmpty() {
+			return this.size == 0;
+		}
+
+		public int last() {
+			return this.values[this.size - 1];
+		}
+
+		public int[] toArray() {
+			return Arrays.copyOf(this.values, this.size);
+		}
+
+	}
+
+}
@@ -2,7 +2,12 @@ package org.obo.annotation.base;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import org.apache.log4j.Logger;
 import org.obo.datamodel.IdentifiedObject;
@@ -23,8 +28,11 @@ public class TermSet {
 
     private OBOSession session;
     private ReasonedLinkDatabase reasoner;
-    private Collection<OBOObject> cachedTerms = null;
+    private volatile Collection<OBOObject> cachedTerms = null;
+    private volatile TermSearchIndex cachedSearchIndex = null;
     private Filter<IdentifiedObject> filter = null;
+    private TermUsage usage = null;
+    private CompletableFuture<TermSet> readiness = new CompletableFuture<TermSet>();
     
     public TermSet(OBOSession session, ReasonedLinkDatabase reasoner) {
         this.session = session;
@@ -63,13 +71,34 @@ public class TermSet {
         this.filter = filter;
     }
 
+    /**
+     * @return The record of the user's term choices used to rank searches of this TermSet, or null if there is none.
+     */
+    public TermUsage getUsage() {
+        return this.usage;
+    }
+
+    public void setUsage(TermUsage usage) {
+        this.usage = usage;
+    }
+
     /**
      * @return All terms matching the search criteria of this TermSet, such as its namespaces and categories.
      */
     public Collection<OBOObject> getTerms() {
-        if (this.cachedTerms != null) {
+        final Collection<OBOObject> terms = this.cachedTerms;
+        if (terms != null) {
+            return terms;
+        }
+        synchronized (this) {
+            if (this.cachedTerms == null) {
+                this.cachedTerms = this.queryTerms();
+            }
             return this.cachedTerms;
         }
+    }
+
+    private Collection<OBOObject> queryTerms() {
         final QueryEngine engine = new QueryEngine(this.getOBOSession());
         final FilterQuery<IdentifiedObject> query = new FilterQuery<IdentifiedObject>(this.getTermFilter(), IdentifiedObject.class, this.getReasoner());
         final Collection<SearchHit<IdentifiedObject>> termHits = engine.query(query);
@@ -77,12 +106,109 @@ public class TermSet {
         for (SearchHit<IdentifiedObject> hit : termHits) {
             terms.add((OBOObject)hit.getHit());  //TODO fix need for this cast
         }
+        return terms;
+    }
+
+    /**
+     * Returns the index over the names and synonyms of this TermSet's terms.  There is a single index per TermSet,
+     * shared by every searcher and editor using it; it is built by whichever thread first asks for it, and once built
+     * can be read from any thread without locking.
+     */
+    public TermSearchIndex getSearchIndex() {
+        final TermSearchIndex index = this.cachedSearchIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (this.cachedSearchIndex == null) {
+                this.cachedSearchIndex = new TermSearchIndex(this.getTerms());
+                this.readiness.complete(this);
+            }
+            return this.cachedSearchIndex;
+        }
+    }
+
+    /**
+     * @return Whether this TermSet's terms and search index have been computed, so that searching it will not block.
+     */
+    public boolean isReady() {
+        return this.cachedSearchIndex != null;
+    }
+
+    /**
+     * Returns a stage completed with this TermSet once its search index has been built, by whichever thread first asks
+     * for it.  This TermSet does not build its index itself; that is left to a caller such as OntologyController, which
+     * warms term sets in the background.  Completion actions are run on the thread which built the index.
+     */
+    public synchronized CompletionStage<TermSet> getReadiness() {
+        return this.readiness;
+    }
+
+    /**
+     * Supply the terms matching this TermSet's filter, when they have been computed elsewhere, e.g. by a TermSetBuilder.
+     */
+    synchronized void setTerms(Collection<OBOObject> terms) {
+        this.cachedTerms = terms;
+        this.discardSearchIndex();
+    }
+
+    /**
+     * Supply the terms and search index of this TermSet, when they have been restored from a TermSetCache.
+     * @param index The search index over the terms, or null if it must still be built.
+     */
+    synchronized void setTerms(Collection<OBOObject> terms, TermSearchIndex index) {
+        this.setTerms(terms);
+        if (index != null) {
+            this.cachedSearchIndex = index;
+            this.readiness.complete(this);
+        }
+    }
+
+    /**
+     * Add terms which have been found to match this TermSet's filter, e.g. provisional terms just added to the
+     * session, without recomputing the rest.  A term which is already in this TermSet is replaced, so this is also
+     * how a changed term is updated.  If the search index has been built it is updated rather than rebuilt.
+     * If this TermSet's terms have not yet been computed, nothing needs to be done.
+     */
+    public synchronized void addTerms(Collection<OBOObject> terms) {
+        this.changeTerms(terms, terms);
+    }
+
+    /**
+     * Remove terms, e.g. terms changed so that they no longer match this TermSet's filter, without recomputing the rest.
+     */
+    public synchronized void removeTerms(Collection<OBOObject> terms) {
+        this.changeTerms(terms, Collections.<OBOObject>emptyList());
+    }
+
+    private void changeTerms(Collection<OBOObject> removed, Collection<OBOObject> added) {
+        if (this.cachedTerms == null) {
+            return;
+        }
+        final Set<OBOObject> removedSet = new HashSet<OBOObject>(removed);
+        final List<OBOObject> terms = new ArrayList<OBOObject>(this.cachedTerms.size() + added.size());
+        for (OBOObject term : this.cachedTerms) {
+            if (!removedSet.contains(term)) {
+                terms.add(term);
+            }
+        }
+        terms.addAll(added);
         this.cachedTerms = terms;
-        return this.cachedTerms;
+        if (this.cachedSearchIndex != null) {
+            this.cachedSearchIndex = this.cachedSearchIndex.withChanges(removed, added);
+        }
     }
 
-    public void invalidateTerms() {
+    public synchronized void invalidateTerms() {
         this.cachedTerms = null;
+        this.discardSearchIndex();
+    }
+
+    private void discardSearchIndex() {
+        this.cachedSearchIndex = null;
+        if (this.readiness.isDone()) {
+            this.readiness = new CompletableFuture<TermSet>();
+        }
     }
     
     @SuppressWarnings("unused")
@@ -0,0 +1,114 @@
+package org.obo.annotation.base;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.OBOObject;
+import org.obo.filters.Filter;
+
+/**
+ * Computes the terms of several TermSets at once.  The session's objects are indexed once by a TermFilterCompiler,
+ * and the TermSets' filters are then evaluated against that index in parallel.  The time spent in each filter is
+ * logged, to show which TermSets dominate startup.
+ */
+public class TermSetBuilder {
+
+	private final Collection<? extends IdentifiedObject> objects;
+	private final Map<String, TermSet> termSets = new LinkedHashMap<String, TermSet>();
+
+	/**
+	 * @param objects The session's objects.  If the builder is run on another thread than the one which modifies the
+	 * session, this should be a copy taken on the session's thread, since the session's own collection is not safe
+	 * to iterate while objects are being added.
+	 */
+	public TermSetBuilder(Collection<? extends IdentifiedObject> objects) {
+		this.objects = objects;
+	}
+
+	/**
+	 * Add a TermSet to be computed.  TermSets without a filter are skipped, as is a TermSet added under a second name.
+	 * @param name Identifies the TermSet in log messages.
+	 */
+	public void add(String name, TermSet termSet) {
+		if ((termSet.getTermFilter() != null) && !this.termSets.containsValue(termSet)) {
+			this.termSets.put(name, termSet);
+		}
+	}
+
+	/**
+	 * Evaluate every added TermSet's filter against the session and give each TermSet its terms.  If evaluation
+	 * fails, the TermSets are left to compute their own terms when first asked.
+	 */
+	public void build() {
+		if (this.termSets.isEmpty()) {
+			return;
+		}
+		final long start = System.nanoTime();
+		final List<String> names = new ArrayList<String>(this.termSets.keySet());
+		final TermFilterCompiler compiler = new TermFilterCompiler(this.objects);
+		final long indexTime = System.nanoTime() - start;
+		final int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), names.size()));
+		final ExecutorService executor = Executors.newFixedThreadPool(workers);
+		final List<Future<Result>> results = new ArrayList<Future<Result>>();
+		for (TermSet termSet : this.termSets.values()) {
+			final Filter<IdentifiedObject> filter = termSet.getTermFilter();
+			// as FilterQuery does before evaluating a filter
+			filter.setReasoner(termSet.getReasoner());
+			results.add(executor.submit(new Callable<Result>() {
+				@Override
+				public Result call() {
+					final long filterStart = System.nanoTime();
+					final List<OBOObject> terms = compiler.getMatches(filter);
+					return new Result(terms, System.nanoTime() - filterStart);
+				}
+			}));
+		}
+		executor.shutdown();
+		try {
+			for (int i = 0; i < names.size(); i++) {
+				final Result result = results.get(i).get();
+				this.termSets.get(names.get(i)).setTerms(result.terms);
+				log().info(String.format("Filter \"%s\" matched %d terms in %.1f ms", names.get(i), result.terms.size(), result.time / 1000000.0));
+			}
+		} catch (InterruptedException e) {
+			log().error("Interrupted while computing term sets", e);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			log().error("Failed to compute term sets", e.getCause());
+			return;
+		}
+		log().info(String.format("Computed %d term sets in %.1f ms using %d threads, after indexing the session in %.1f ms", names.size(), (System.nanoTime() - start) / 1000000.0, workers, indexTime / 1000000.0));
+	}
+
+	/**
+	 * The terms matched by one TermSet's filter, and the time the filter took.
+	 */
+	private static class Result {
+
+		private final List<OBOObject> terms;
+		private final long time;
+
+		public Result(List<OBOObject> terms, long time) {
+			this.terms = terms;
+			this.time = time;
+		}
+
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+}
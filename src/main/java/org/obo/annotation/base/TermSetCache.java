@@ -0,0 +1,140 @@
+package org.obo.annotation.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.obo.app.util.FileReplacement;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.OBOSession;
+
+/**
+ * Stores the member IDs of TermSets, with their search indexes, so that a TermSet can be restored on the next
+ * launch instead of evaluating its filter over the whole session.  Each TermSet is stored in its own file.  A stored
+ * TermSet is only used if the ontology sources and the filter are exactly the same as when it was saved.
+ *
+ * Members which are not in the session when a TermSet is restored, such as provisional terms, are left out, so
+ * such terms must be added to the TermSet again afterwards.
+ */
+public class TermSetCache {
+
+	// bump this whenever the file layout changes
+	private static final int FORMAT_VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String EXTENSION = ".termset";
+	private final File folder;
+	private final String sourceKey;
+
+	/**
+	 * @param folder The folder in which to store TermSets.
+	 * @param sourceKey Identifies the contents of the ontology sources, e.g. as computed by OntologySnapshot.
+	 */
+	public TermSetCache(File folder, String sourceKey) {
+		this.folder = folder;
+		this.sourceKey = sourceKey;
+	}
+
+	/**
+	 * Returns a key identifying the contents of a filter definition, and closes the stream.
+	 */
+	public static String computeFilterKey(InputStream filterXML) throws IOException {
+		return OntologySnapshot.digest(filterXML);
+	}
+
+	/**
+	 * Give the TermSet its terms and search index as saved under the given name, if they were saved from the same
+	 * ontology sources and filter.
+	 * @return Whether the TermSet was restored.  If not, the TermSet is unchanged.
+	 */
+	public boolean load(String name, String filterKey, TermSet termSet) {
+		final File file = this.getFile(name);
+		if (!file.exists()) {
+			return false;
+		}
+		try {
+			final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+			try {
+				if ((input.readInt() != FORMAT_VERSION) || !this.sourceKey.equals(input.readUTF()) || !filterKey.equals(input.readUTF())) {
+					log().info("Stored term set is out of date: " + name);
+					return false;
+				}
+				final OBOSession session = termSet.getOBOSession();
+				final int size = input.readInt();
+				final List<OBOObject> numberedTerms = new ArrayList<OBOObject>(size);
+				final List<OBOObject> terms = new ArrayList<OBOObject>(size);
+				for (int i = 0; i < size; i++) {
+					final IdentifiedObject object = session.getObject(input.readUTF());
+					final OBOObject term = (object instanceof OBOObject) ? (OBOObject)object : null;
+					numberedTerms.add(term);
+					if (term != null) {
+						terms.add(term);
+					}
+				}
+				final TermSearchIndex index = input.readBoolean() ? TermSearchIndex.read(input, numberedTerms) : null;
+				termSet.setTerms(terms, index);
+				return true;
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			log().error("Unable to read stored term set: " + name, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Save the TermSet's current terms and search index under the given name.  If the TermSet's search index has been
+	 * updated incrementally since it was built, only its terms are saved.
+	 */
+	public void save(String name, String filterKey, TermSet termSet) {
+		final File temp = new File(this.folder, name + EXTENSION + ".tmp");
+		try {
+			this.folder.mkdirs();
+			final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+			try {
+				output.writeInt(FORMAT_VERSION);
+				output.writeUTF(this.sourceKey);
+				output.writeUTF(filterKey);
+				final List<OBOObject> terms = new ArrayList<OBOObject>(termSet.getTerms());
+				final Map<OBOObject, Integer> termNumbers = new HashMap<OBOObject, Integer>();
+				output.writeInt(terms.size());
+				for (int i = 0; i < terms.size(); i++) {
+					termNumbers.put(terms.get(i), i);
+					output.writeUTF(terms.get(i).getID());
+				}
+				final TermSearchIndex index = termSet.isReady() ? termSet.getSearchIndex() : null;
+				output.writeBoolean((index != null) && !index.isDerived());
+				if ((index != null) && !index.isDerived()) {
+					index.write(output, termNumbers);
+				}
+			} finally {
+				output.close();
+			}
+			FileReplacement.replace(temp, this.getFile(name));
+		} catch (IOException e) {
+			log().error("Unable to store term set: " + name, e);
+			temp.delete();
+		}
+	}
+
+	private File getFile(String name) {
+		return new File(this.folder, name + EXTENSION);
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+}
@@ -0,0 +1,255 @@
+package org.obo.annotation.base;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.obo.app.util.FileReplacement;
+import org.obo.datamodel.IdentifiedObject;
+
+/**
+ * Keeps track of which terms a user chooses, so that frequently and recently used terms can be ranked
+ * first in term searches.  Use counts are stored in a tab-delimited file and persist across sessions.
+ * The file is written on a background thread shortly after uses are recorded, and when the application exits.
+ * Terms whose score has decayed to almost nothing are dropped when it is written, as are the lowest scoring
+ * terms if there are too many.  Terms used in the currently open document also receive a smaller boost,
+ * which is not persisted.
+ */
+public class TermUsage {
+
+	private static final String ENCODING = "UTF-8";
+	private static final double HALF_LIFE = 30L * 24 * 60 * 60 * 1000;
+	private static final double DOCUMENT_SCORE = 0.5;
+	private static final double MINIMUM_SCORE = 0.01;
+	private static final int MAXIMUM_TERMS = 5000;
+	private static final long WRITE_DELAY = 2000;
+	private final File storage;
+	private final Map<String, Usage> usages = new HashMap<String, Usage>();
+	private Set<String> documentTermIDs = Collections.emptySet();
+	private volatile Map<String, Double> scores = null;
+	private boolean modified = false;
+	private boolean writeScheduled = false;
+	// held while writing, so that writes are made one at a time, in the order their contents were taken
+	private final Object writeLock = new Object();
+	private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, "Term usage writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * @param storage The file in which use counts are kept.  It is read now if it exists, and rewritten after uses are recorded.
+	 */
+	public TermUsage(File storage) {
+		this.storage = storage;
+		if (storage.exists()) {
+			this.read();
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(this.flushTask, "Term usage writer"));
+	}
+
+	/**
+	 * Record that the user has chosen the given term.
+	 */
+	public synchronized void recordUse(IdentifiedObject term) {
+		final Usage usage = this.usages.get(term.getID());
+		final long now = System.currentTimeMillis();
+		if (usage == null) {
+			this.usages.put(term.getID(), new Usage(1, now));
+		} else {
+			this.usages.put(term.getID(), new Usage(usage.count + 1, now));
+		}
+		this.scores = null;
+		this.modified = true;
+		if (!this.writeScheduled) {
+			this.writeScheduled = true;
+			this.writer.schedule(this.flushTask, WRITE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Write any uses recorded since the file was last written.
+	 */
+	public void flush() {
+		synchronized (this.writeLock) {
+			final Map<String, Usage> contents;
+			synchronized (this) {
+				this.writeScheduled = false;
+				if (!this.modified) {
+					return;
+				}
+				this.modified = false;
+				this.prune();
+				contents = new HashMap<String, Usage>(this.usages);
+			}
+			this.write(contents);
+		}
+	}
+
+	/**
+	 * Replace the set of terms used in the currently open document.
+	 */
+	public synchronized void setDocumentTerms(Collection<? extends IdentifiedObject> terms) {
+		final Set<String> ids = new HashSet<String>();
+		for (IdentifiedObject term : terms) {
+			ids.add(term.getID());
+		}
+		this.documentTermIDs = ids;
+		this.scores = null;
+	}
+
+	/**
+	 * Returns a ranking score for each term ID which has been used, higher being more relevant.  A term's use count
+	 * is discounted by half for every thirty days since it was last used.  The returned map is a snapshot which is
+	 * not modified afterwards, so it can be read while searching on another thread.
+	 */
+	public Map<String, Double> getScores() {
+		final Map<String, Double> current = this.scores;
+		if (current != null) {
+			return current;
+		}
+		synchronized (this) {
+			if (this.scores == null) {
+				this.scores = this.computeScores();
+			}
+			return this.scores;
+		}
+	}
+
+	private Map<String, Double> computeScores() {
+		final long now = System.currentTimeMillis();
+		final Map<String, Double> result = new HashMap<String, Double>();
+		for (String id : this.documentTermIDs) {
+			result.put(id, DOCUMENT_SCORE);
+		}
+		for (Map.Entry<String, Usage> entry : this.usages.entrySet()) {
+			final double score = entry.getValue().getScore(now);
+			final Double documentScore = result.get(entry.getKey());
+			result.put(entry.getKey(), documentScore != null ? score + documentScore : score);
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	private void read() {
+		try {
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.storage), ENCODING));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					final String[] fields = line.split("\t");
+					if (fields.length != 3) {
+						continue;
+					}
+					try {
+						this.usages.put(fields[0], new Usage(Integer.parseInt(fields[1]), Long.parseLong(fields[2])));
+					} catch (NumberFormatException e) {
+						log().warn("Ignoring malformed term usage line: " + line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			log().error("Unable to read term usage from " + this.storage, e);
+		}
+	}
+
+	/**
+	 * Drop terms whose score has decayed below the minimum, then the lowest scoring terms beyond the maximum number kept.
+	 */
+	private void prune() {
+		final long now = System.currentTimeMillis();
+		final Iterator<Usage> iterator = this.usages.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getScore(now) < MINIMUM_SCORE) {
+				iterator.remove();
+				this.scores = null;
+			}
+		}
+		if (this.usages.size() > MAXIMUM_TERMS) {
+			final List<Map.Entry<String, Usage>> entries = new ArrayList<Map.Entry<String, Usage>>(this.usages.entrySet());
+			Collections.sort(entries, new Comparator<Map.Entry<String, Usage>>() {
+				@Override
+				public int compare(Map.Entry<String, Usage> o1, Map.Entry<String, Usage> o2) {
+					return Double.compare(o2.getValue().getScore(now), o1.getValue().getScore(now));
+				}
+			});
+			for (Map.Entry<String, Usage> entry : entries.subList(MAXIMUM_TERMS, entries.size())) {
+				this.usages.remove(entry.getKey());
+			}
+			this.scores = null;
+		}
+	}
+
+	private void write(Map<String, Usage> contents) {
+		final File temp = new File(this.storage.getParentFile(), this.storage.getName() + ".tmp");
+		try {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), ENCODING));
+			try {
+				for (Map.Entry<String, Usage> entry : contents.entrySet()) {
+					writer.write(entry.getKey() + "\t" + entry.getValue().count + "\t" + entry.getValue().lastUsed + "\n");
+				}
+			} finally {
+				writer.close();
+			}
+			FileReplacement.replace(temp, this.storage);
+		} catch (IOException e) {
+			log().error("Unable to write term usage to " + this.storage, e);
+		}
+	}
+
+	private static class Usage {
+
+		private final int count;
+		private final long lastUsed;
+
+		private Usage(int count, long lastUsed) {
+			this.count = count;
+			this.lastUsed = lastUsed;
+		}
+
+		/**
+		 * The use count, discounted by half for every thirty days since the last use.
+		 */
+		private double getScore(long now) {
+			final double age = Math.max(0, now - this.lastUsed);
+			return this.count * Math.pow(0.5, age / HALF_LIFE);
+		}
+
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+}
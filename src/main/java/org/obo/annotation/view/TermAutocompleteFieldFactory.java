@@ -1,12 +1,20 @@
 package org.obo.annotation.view;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import javax.swing.JList;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.TableCellEditor;
 
 import org.apache.log4j.Logger;
 import org.obo.annotation.base.TermSet;
+import org.obo.annotation.base.TermUsage;
 import org.obo.app.swing.AutocompleteCellEditor;
 import org.obo.app.swing.AutocompleteField;
 import org.obo.app.swing.SearchHit;
@@ -15,6 +23,8 @@ import org.obo.datamodel.OBOObject;
 
 public class TermAutocompleteFieldFactory {
 
+	private static final String LOADING_MESSAGE = "Loading terms\u2026";
+
 	/**
 	 * Update SelectionManager with current term selection.  This allows components
 	 * like the Term Info panel to display information about the term.
@@ -23,9 +33,43 @@ public class TermAutocompleteFieldFactory {
 		selectionManager.selectTerm(source, term, false);
 	}
 
+	/**
+	 * Searchers are shared by all fields using the same TermSet.  A searcher is only weakly referenced here,
+	 * so it is kept as long as some field uses it; the TermSet's search index is never duplicated either way.
+	 */
+	private static final Map<TermSet, WeakReference<TermSearcher>> SEARCHERS = new WeakHashMap<TermSet, WeakReference<TermSearcher>>();
+
+	private static synchronized TermSearcher getSearcher(TermSet terms) {
+		final WeakReference<TermSearcher> reference = SEARCHERS.get(terms);
+		final TermSearcher existing = (reference != null) ? reference.get() : null;
+		if (existing != null) {
+			return existing;
+		}
+		final TermSearcher searcher = new TermSearcher(terms);
+		SEARCHERS.put(terms, new WeakReference<TermSearcher>(searcher));
+		return searcher;
+	}
+
 	public static AutocompleteField<OBOObject> createAutocompleteBox(TermSet terms, OntologyCoordinator coordinator) {
-		final AutocompleteField<OBOObject> ac =  new AutocompleteField<OBOObject>(new TermSearcher(terms));
+		final AutocompleteField<OBOObject> ac =  new AutocompleteField<OBOObject>(getSearcher(terms));
 		ac.getListComponent().addListSelectionListener(new CompletionListListener(coordinator.getSelectionManager()));
+		if (terms.getUsage() != null) {
+			ac.addActionListener(new UsageRecorder(ac, terms.getUsage()));
+		}
+		if (!terms.isReady()) {
+			ac.setLoadingMessage(LOADING_MESSAGE);
+			terms.getReadiness().thenRun(new Runnable() {
+				@Override
+				public void run() {
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							ac.setLoadingMessage(null);
+						}
+					});
+				}
+			});
+		}
 		return ac;
 	}
 
@@ -33,6 +77,29 @@ public class TermAutocompleteFieldFactory {
 		return new AutocompleteCellEditor<OBOObject>(createAutocompleteBox(terms, coordinator));
 	}
 
+	/**
+	 * Records each term committed in an autocomplete field, so that it ranks higher in later searches.
+	 */
+	private static class UsageRecorder implements ActionListener {
+
+		private final AutocompleteField<OBOObject> field;
+		private final TermUsage usage;
+
+		public UsageRecorder(AutocompleteField<OBOObject> field, TermUsage usage) {
+			this.field = field;
+			this.usage = usage;
+		}
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			final OBOObject term = this.field.getValue();
+			if (term != null) {
+				this.usage.recordUse(term);
+			}
+		}
+
+	}
+
 	private static class CompletionListListener implements ListSelectionListener {
 
 		private SelectionManager selectionManager;
@@ -1,43 +1,67 @@
 package org.obo.annotation.view;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.obo.annotation.base.TermSearchIndex;
 import org.obo.annotation.base.TermSet;
 import org.obo.app.swing.AutocompleteSearcher;
 import org.obo.app.swing.MatchType;
 import org.obo.app.swing.SearchHit;
-import org.obo.datamodel.OBOClass;
+import org.obo.app.util.BoundedPriorityQueue;
+import org.obo.datamodel.IdentifiedObject;
 import org.obo.datamodel.OBOObject;
-import org.obo.datamodel.Synonym;
-import org.obo.util.TermUtil;
-import org.oboedit.controller.SessionManager;
 
+/**
+ * Searches the names and synonyms of the terms in a TermSet, using the TermSet's shared search index.  The search
+ * method is safe to call from several threads and fields at once; setSearch and getMatches are for single-threaded use.
+ */
 public class TermSearcher implements AutocompleteSearcher<OBOObject> {
 
     private final List<SearchHit<OBOObject>> matches = new ArrayList<SearchHit<OBOObject>>();
     private final TermSet terms;
+    private static final int INTERRUPT_CHECK_INTERVAL = 1024;
+    /**
+     * The result of the previous search, which can be filtered instead of searching the whole index when the input is extended.
+     */
+    private volatile TermSearchIndex.Result lastResult = null;
     private static final MatchType NAME_MATCH = new MatchType() {
         @Override
 		public String getName() {
             return "";
         }
     };
+    private static final MatchType EXACT_NAME_MATCH = new MatchType() {
+        @Override
+		public String getName() {
+            return "Name";
+        }
+    };
     private static final MatchType SYNONYM_MATCH = new MatchType() {
         @Override
 		public String getName() {
             return "Synonym";
         }
     };
-    private static final Comparator<TermHit> COMPARATOR = new Comparator<TermHit>() {
+    private static final MatchType FUZZY_NAME_MATCH = new MatchType() {
         @Override
-		public int compare(TermHit o1, TermHit o2) {
-            return o1.getMatchText().compareTo(o2.getMatchText());
+		public String getName() {
+            return "Fuzzy";
         }
     };
+    private static final MatchType FUZZY_SYNONYM_MATCH = new MatchType() {
+        @Override
+		public String getName() {
+            return "Fuzzy synonym";
+        }
+    };
+    private static final long FUZZY_TIME_BUDGET = 20 * 1000 * 1000;
+    private volatile boolean fuzzyMatching = true;
 
     public TermSearcher(TermSet terms) {
         this.terms = terms;
@@ -51,33 +75,118 @@ public class TermSearcher implements AutocompleteSearcher<OBOObject> {
     @Override
 	public void setSearch(String input) {
         this.matches.clear();
-        final List<TermHit> startsWith = new ArrayList<TermHit>();
-        final List<TermHit> containedIn = new ArrayList<TermHit>();
-        final String lowerInput = input.toLowerCase();
-        for (OBOObject term : this.terms.getTerms()) {
-            if ((term.getName() != null)) {
-                final int position = term.getName().toLowerCase().indexOf(lowerInput);
-                if (position == 0) {
-                    startsWith.add(new TermHit(term, term.getName(), NAME_MATCH));
-                } else if (position > -1) {
-                    containedIn.add(new TermHit(term, term.getName(), NAME_MATCH));
-                }
+        try {
+            this.matches.addAll(this.search(input, Integer.MAX_VALUE));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Index results are already in rank order, so only the hits within the limit are ever created.  If the TermSet
+     * records term usage, terms the user has chosen before are moved to the front of the starts-with and
+     * contained-in groups, most relevant first.
+     */
+    @Override
+	public List<SearchHit<OBOObject>> search(String input, int limit) throws InterruptedException {
+        final TermSearchIndex index = this.terms.getSearchIndex();
+        final TermSearchIndex.Result result = index.search(input, this.lastResult);
+        this.lastResult = result;
+        final Map<String, Double> scores = (this.terms.getUsage() != null) ? this.terms.getUsage().getScores() : Collections.<String, Double>emptyMap();
+        final UsageComparator byUsage = new UsageComparator(index, scores);
+        final BoundedPriorityQueue<Integer> usedStartsWith = new BoundedPriorityQueue<Integer>(limit, byUsage);
+        final BoundedPriorityQueue<Integer> usedContainedIn = new BoundedPriorityQueue<Integer>(limit, byUsage);
+        this.findUsedEntries(index, result, scores, usedStartsWith, usedContainedIn);
+        final List<SearchHit<OBOObject>> hits = new ArrayList<SearchHit<OBOObject>>(Math.min(limit, result.size()));
+        this.addHits(index, result.getStartsWith(), usedStartsWith.toSortedList(), limit, hits);
+        this.addHits(index, result.getContainedIn(), usedContainedIn.toSortedList(), limit, hits);
+        if (this.isFuzzyMatching() && (hits.size() < limit)) {
+            for (int entry : index.searchFuzzy(input, limit - hits.size(), FUZZY_TIME_BUDGET)) {
+                hits.add(new TermHit(index.getTerm(entry), index.getLabel(entry), index.isSynonym(entry) ? FUZZY_SYNONYM_MATCH : FUZZY_NAME_MATCH));
             }
-            for (Synonym synonym : term.getSynonyms()) {
-                if (synonym.getText() != null) {
-                    final int position = synonym.getText().toLowerCase().indexOf(lowerInput);
-                    if (position == 0) {
-                        startsWith.add(new TermHit(term, synonym.getText(), SYNONYM_MATCH));
-                    } else if (position > -1) {
-                        containedIn.add(new TermHit(term, synonym.getText(), SYNONYM_MATCH));
+        }
+        return hits;
+    }
+
+    /**
+     * Sorts the entries of the terms with usage scores into the starts-with and contained-in groups of the result.
+     * Only the scored terms are visited, of which there are at most a few thousand, rather than every matching entry.
+     */
+    private void findUsedEntries(TermSearchIndex index, TermSearchIndex.Result result, Map<String, Double> scores, BoundedPriorityQueue<Integer> usedStartsWith, BoundedPriorityQueue<Integer> usedContainedIn) throws InterruptedException {
+        if (scores.isEmpty() || (this.terms.getOBOSession() == null)) {
+            return;
+        }
+        int i = 0;
+        for (String id : scores.keySet()) {
+            if ((i++ % INTERRUPT_CHECK_INTERVAL == 0) && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final IdentifiedObject term = this.terms.getOBOSession().getObject(id);
+            if (term instanceof OBOObject) {
+                for (int entry : index.getEntries((OBOObject)term)) {
+                    if (result.isStartsWith(entry)) {
+                        usedStartsWith.offer(entry);
+                    } else if (result.isContainedIn(entry)) {
+                        usedContainedIn.offer(entry);
                     }
                 }
             }
         }
-        Collections.sort(startsWith, COMPARATOR);
-        Collections.sort(containedIn, COMPARATOR);
-        this.matches.addAll(startsWith);
-        this.matches.addAll(containedIn);
+    }
+
+    private void addHits(TermSearchIndex index, int[] entries, List<Integer> used, int limit, List<SearchHit<OBOObject>> hits) throws InterruptedException {
+        final Set<Integer> boosted = new HashSet<Integer>();
+        for (Integer entry : used) {
+            if (hits.size() >= limit) {
+                return;
+            }
+            hits.add(this.createHit(index, entry));
+            boosted.add(entry);
+        }
+        for (int i = 0; (i < entries.length) && (hits.size() < limit); i++) {
+            if ((i % INTERRUPT_CHECK_INTERVAL == 0) && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (!boosted.contains(entries[i])) {
+                hits.add(this.createHit(index, entries[i]));
+            }
+        }
+    }
+
+    /**
+     * @return Whether searches which do not fill the result limit with exact text matches should be topped up with approximate matches.
+     */
+    public boolean isFuzzyMatching() {
+        return this.fuzzyMatching;
+    }
+
+    public void setFuzzyMatching(boolean fuzzyMatching) {
+        this.fuzzyMatching = fuzzyMatching;
+    }
+
+    /**
+     * Orders index entries by the usage score of their term, highest first, and then in index order.
+     */
+    private static class UsageComparator implements Comparator<Integer> {
+
+        private final TermSearchIndex index;
+        private final Map<String, Double> scores;
+
+        public UsageComparator(TermSearchIndex index, Map<String, Double> scores) {
+            this.index = index;
+            this.scores = scores;
+        }
+
+        @Override
+        public int compare(Integer o1, Integer o2) {
+            final int byScore = this.scores.get(this.index.getTerm(o2).getID()).compareTo(this.scores.get(this.index.getTerm(o1).getID()));
+            return (byScore != 0) ? byScore : o1.compareTo(o2);
+        }
+
+    }
+
+    private TermHit createHit(TermSearchIndex index, int entry) {
+        return new TermHit(index.getTerm(entry), index.getLabel(entry), index.isSynonym(entry) ? SYNONYM_MATCH : NAME_MATCH);
     }
 
     @Override
@@ -85,18 +194,16 @@ public class TermSearcher implements AutocompleteSearcher<OBOObject> {
         return valueObject == null ? null : valueObject.getName();
     }
 
+    /**
+     * Finds a term in this searcher's TermSet whose name, or failing that one of whose synonyms, is exactly the given text.
+     */
     @Override
 	public SearchHit<OBOObject> getExactHit(String text) {
-        Collection<OBOClass> terms = TermUtil.getTerms(SessionManager.getManager().getSession());
-        for (OBOClass term : terms) {
-            if ((term.getName() != null) && term.getName().equals(text)) {
-                return new TermHit(term, term.getName(), new MatchType() {
-                    @Override
-					public String getName() {
-                        return "Name";
-                    }
-                });
-            }
+        final TermSearchIndex index = this.terms.getSearchIndex();
+        final int[] entries = index.findExact(text);
+        if (entries.length > 0) {
+            final int entry = entries[0];
+            return new TermHit(index.getTerm(entry), index.getLabel(entry), index.isSynonym(entry) ? SYNONYM_MATCH : EXACT_NAME_MATCH);
         }
         return null;
     }
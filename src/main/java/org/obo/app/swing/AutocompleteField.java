@@ -3,10 +3,17 @@ package org.obo.app.swing;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.accessibility.Accessible;
 import javax.accessibility.AccessibleContext;
@@ -19,6 +26,7 @@ import javax.swing.JComponent;
 import javax.swing.JList;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
@@ -46,9 +54,34 @@ public class AutocompleteField<T> extends JComponent {
 	private boolean externallySettingText = false;
 	private boolean hasBeenEdited = false;
 	private Object lastHighlightedItem = null;
+	private final Timer searchDelayTimer;
+	private Future<?> pendingSearch = null;
+	private int searchGeneration = 0;
+	private static final int DEFAULT_SEARCH_DELAY = 100;
+	private static final int DEFAULT_MAXIMUM_MATCHES = 50;
+	private int maximumMatches = DEFAULT_MAXIMUM_MATCHES;
+	private String loadingMessage = null;
+	/**
+	 * Searches for all autocomplete fields run on this thread, so that a slow search never blocks typing.
+	 */
+	private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, "Autocomplete search");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 
 	public AutocompleteField(AutocompleteSearcher<T> searcher) {
 		this.searcher = searcher;
+		this.searchDelayTimer = new Timer(DEFAULT_SEARCH_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				queryWithInput();
+			}
+		});
+		this.searchDelayTimer.setRepeats(false);
 		this.comboBox.setEditable(true);
 		this.comboBox.setEditor(new AutocompleteEditor());
 		this.comboBox.setModel(this.comboBoxModel);
@@ -77,6 +110,7 @@ public class AutocompleteField<T> extends JComponent {
 	}
 
 	private void internallySetValue(T value) {
+		this.cancelQuery();
 		this.currentValue = value;
 		this.externallySettingText = true;
 		this.comboBox.setSelectedItem(null);
@@ -132,25 +166,106 @@ public class AutocompleteField<T> extends JComponent {
 	}
 
 	private void queryWithInput() {
-
-		SwingUtilities.invokeLater(new Runnable() {
+		final String input = this.getEditorField().getText();
+		final int generation = this.searchGeneration;
+		final AutocompleteSearcher<T> currentSearcher = this.getSearcher();
+		final int limit = this.getMaximumMatches();
+		this.pendingSearch = SEARCH_EXECUTOR.submit(new Runnable() {
 			@Override
 			public void run() {
-				getSearcher().setSearch(getEditorField().getText());
-				final List<SearchHit<T>> matches = getSearcher().getMatches();
-				if (!matches.isEmpty()) {
-					//TODO maybe autofill textbox?  only if starts with input?
+				try {
+					final List<SearchHit<T>> matches = currentSearcher.search(input, limit);
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							publishMatches(matches, generation);
+						}
+					});
+				} catch (InterruptedException e) {
+					// a newer search has superseded this one
+				} catch (RuntimeException e) {
+					log().error("Autocomplete search failed", e);
 				}
-				changingCompletionList = true;
-				completeList.clear();
-				completeList.addAll(matches.size() > 50 ? matches.subList(0, 50) : matches); //TODO there is a magic number here
-				changingCompletionList = false;
-				comboBox.setPopupVisible(false);
-				comboBox.showPopup();
 			}
 		});
 	}
 
+	/**
+	 * Cancel any search in progress and wait for typing to pause before starting a new one.
+	 */
+	private void scheduleQuery() {
+		this.cancelQuery();
+		this.searchDelayTimer.restart();
+	}
+
+	/**
+	 * Discard any scheduled or running search, so that its results are never shown.
+	 */
+	private void cancelQuery() {
+		this.searchDelayTimer.stop();
+		this.searchGeneration++;
+		if (this.pendingSearch != null) {
+			this.pendingSearch.cancel(true);
+			this.pendingSearch = null;
+		}
+	}
+
+	private void publishMatches(List<SearchHit<T>> matches, int generation) {
+		if (generation != this.searchGeneration) {
+			// the text has changed since this search started
+			return;
+		}
+		if (!matches.isEmpty()) {
+			//TODO maybe autofill textbox?  only if starts with input?
+		}
+		changingCompletionList = true;
+		completeList.clear();
+		completeList.addAll(matches);
+		changingCompletionList = false;
+		comboBox.setPopupVisible(false);
+		comboBox.showPopup();
+	}
+
+	/**
+	 * @return The time in milliseconds to wait after the last keystroke before searching.
+	 */
+	public int getSearchDelay() {
+		return this.searchDelayTimer.getInitialDelay();
+	}
+
+	public void setSearchDelay(int milliseconds) {
+		this.searchDelayTimer.setInitialDelay(milliseconds);
+	}
+
+	/**
+	 * @return The maximum number of matches shown in the completion list.
+	 */
+	public int getMaximumMatches() {
+		return this.maximumMatches;
+	}
+
+	public void setMaximumMatches(int maximumMatches) {
+		this.maximumMatches = maximumMatches;
+	}
+
+	/**
+	 * @return The message shown while the searcher's data is loading, or null if the field is ready for input.
+	 */
+	public String getLoadingMessage() {
+		return this.loadingMessage;
+	}
+
+	/**
+	 * While a loading message is set, the field is disabled and shows the message in place of empty text.
+	 * Set the message back to null once the searcher can be used without blocking.
+	 */
+	public void setLoadingMessage(String message) {
+		this.loadingMessage = message;
+		this.comboBox.setEnabled(message == null);
+		this.comboBox.setToolTipText(message);
+		this.getEditorField().repaint();
+	}
+
 	private void setValueWithInput(SearchHit<T> hit) {
 		this.internallySetValue(hit.getHit());
 		this.fireActionPerformed();
@@ -201,7 +316,7 @@ public class AutocompleteField<T> extends JComponent {
 			}
 			hasBeenEdited = true;
 			comboBox.setPotentialValue(null);
-			queryWithInput();
+			scheduleQuery();
 		}
 
 	}
@@ -298,6 +413,17 @@ public class AutocompleteField<T> extends JComponent {
 			externallySettingText = false;
 		}
 
+		@Override
+		protected void paintComponent(Graphics g) {
+			super.paintComponent(g);
+			if ((loadingMessage != null) && (this.getText().length() == 0)) {
+				final Insets insets = this.getInsets();
+				g.setColor(Color.GRAY);
+				g.setFont(this.getFont().deriveFont(Font.ITALIC));
+				g.drawString(loadingMessage, insets.left, insets.top + g.getFontMetrics().getAscent());
+			}
+		}
+
 	}
 
 	private class AutocompleteActionListener implements ActionListener {
@@ -8,6 +8,14 @@ public interface AutocompleteSearcher<T> {
 
     public List<SearchHit<T>> getMatches();
 
+    /**
+     * Returns the best matches for the given input, in rank order, without changing the state used by setSearch
+     * and getMatches, so that it can be called from a background thread.  Long searches should periodically check
+     * whether the calling thread has been interrupted, and if so give up by throwing InterruptedException.
+     * @param limit The maximum number of matches to return.
+     */
+    public List<SearchHit<T>> search(String input, int limit) throws InterruptedException;
+
     public String toString(T valueObject);
 
     public SearchHit<T> getExactHit(String text);
@@ -2,9 +2,16 @@ package org.obo.app.swing;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.obo.app.util.BoundedPriorityQueue;
+
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.GlazedLists;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
 
 import com.eekboom.utils.Strings;
 
@@ -13,6 +20,12 @@ public class DefaultSearcher<T> implements AutocompleteSearcher<T> {
 	private final Collection<T> choices;
 	private final Class<T> hitClass;
 	private final List<SearchHit<T>> matches = new ArrayList<SearchHit<T>>();
+	private static final int INTERRUPT_CHECK_INTERVAL = 256;
+	private volatile PreviousSearch<T> previousSearch = null;
+	// counts changes to the choices, if they are an EventList which reports them; otherwise null
+	private final AtomicInteger choicesVersion;
+	// the list only holds this weakly, through a proxy, so that it does not keep the searcher alive
+	private final ListEventListener<T> choicesListener;
 	public static final MatchType TO_STRING_STARTS_WITH = new MatchType() {
 		@Override
 		public String getName() {
@@ -25,16 +38,32 @@ public class DefaultSearcher<T> implements AutocompleteSearcher<T> {
 			return "";
 		}
 	};
-	public static final Comparator<DefaultHit<?>> HIT_COMPARATOR = new Comparator<DefaultHit<?>>() {
+	private static final Comparator<Object> CHOICE_COMPARATOR = new Comparator<Object>() {
 		@Override
-		public int compare(DefaultHit<?> o1, DefaultHit<?> o2) {
-			return Strings.compareNatural(o1.getMatchText(), o2.getMatchText());
+		public int compare(Object o1, Object o2) {
+			return Strings.compareNatural(o1.toString(), o2.toString());
 		}
 	};
 
+	@SuppressWarnings("unchecked")
 	public DefaultSearcher(Collection<T> choices, Class<T> hitClass) {
 		this.choices = choices;
 		this.hitClass = hitClass;
+		if (choices instanceof EventList<?>) {
+			final EventList<T> list = (EventList<T>)choices;
+			final AtomicInteger version = new AtomicInteger();
+			this.choicesVersion = version;
+			this.choicesListener = new ListEventListener<T>() {
+				@Override
+				public void listChanged(ListEvent<T> event) {
+					version.incrementAndGet();
+				}
+			};
+			list.addListEventListener(GlazedLists.weakReferenceProxy(list, this.choicesListener));
+		} else {
+			this.choicesVersion = null;
+			this.choicesListener = null;
+		}
 	}
 
 	@Override
@@ -75,21 +104,63 @@ public class DefaultSearcher<T> implements AutocompleteSearcher<T> {
 	@Override
 	public void setSearch(String input) {
 		this.matches.clear();
-		final List<DefaultHit<T>> startsWith = new ArrayList<DefaultHit<T>>();
-		final List<DefaultHit<T>> containedIn = new ArrayList<DefaultHit<T>>();
+		try {
+			this.matches.addAll(this.search(input, Integer.MAX_VALUE));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * If the input extends the previous search's input, only the previous matches are checked.  This is
+	 * only done when the choices are an EventList, whose change events show that the choices have not been
+	 * modified in between; other collections are searched in full every time.
+	 */
+	@Override
+	public List<SearchHit<T>> search(String input, int limit) throws InterruptedException {
+		final List<T> startsWith = new ArrayList<T>();
+		final List<T> containedIn = new ArrayList<T>();
 		final String lowerInput = input.toLowerCase();
-		for (T choice : this.choices) {
+		final PreviousSearch<T> previous = this.previousSearch;
+		final Collection<T> candidates;
+		final int version = (this.choicesVersion != null) ? this.choicesVersion.get() : -1;
+		if ((previous != null) && (this.choicesVersion != null) && (previous.choicesVersion == version) && lowerInput.startsWith(previous.lowerInput)) {
+			candidates = previous.matches;
+		} else {
+			candidates = this.choices;
+		}
+		int checked = 0;
+		for (T choice : candidates) {
+			if ((checked++ % INTERRUPT_CHECK_INTERVAL == 0) && Thread.interrupted()) {
+				throw new InterruptedException();
+			}
 			final int position = choice.toString().toLowerCase().indexOf(lowerInput);
 			if (position == 0) {
-				startsWith.add(new DefaultHit<T>(choice, choice.toString(), TO_STRING_STARTS_WITH));
+				startsWith.add(choice);
 			} else if (position > -1) {
-				containedIn.add(new DefaultHit<T>(choice, choice.toString(), TO_STRING_CONTAINS));
+				containedIn.add(choice);
 			}
 		}
-		Collections.sort(startsWith, HIT_COMPARATOR);
-		Collections.sort(containedIn, HIT_COMPARATOR);
-		this.matches.addAll(startsWith);
-		this.matches.addAll(containedIn);
+		final List<T> matches = new ArrayList<T>(startsWith.size() + containedIn.size());
+		matches.addAll(startsWith);
+		matches.addAll(containedIn);
+		this.previousSearch = new PreviousSearch<T>(lowerInput, matches, version);
+		final List<SearchHit<T>> hits = new ArrayList<SearchHit<T>>();
+		for (T choice : this.best(startsWith, limit)) {
+			hits.add(new DefaultHit<T>(choice, choice.toString(), TO_STRING_STARTS_WITH));
+		}
+		for (T choice : this.best(containedIn, limit - hits.size())) {
+			hits.add(new DefaultHit<T>(choice, choice.toString(), TO_STRING_CONTAINS));
+		}
+		return hits;
+	}
+
+	private List<T> best(List<T> choices, int limit) {
+		final BoundedPriorityQueue<T> queue = new BoundedPriorityQueue<T>(limit, CHOICE_COMPARATOR);
+		for (T choice : choices) {
+			queue.offer(choice);
+		}
+		return queue.toSortedList();
 	}
 
 	@Override
@@ -97,4 +168,18 @@ public class DefaultSearcher<T> implements AutocompleteSearcher<T> {
 		return valueObject == null ? null : valueObject.toString();
 	}
 
+	private static class PreviousSearch<T> {
+
+		private final String lowerInput;
+		private final List<T> matches;
+		private final int choicesVersion;
+
+		private PreviousSearch(String lowerInput, List<T> matches, int choicesVersion) {
+			this.lowerInput = lowerInput;
+			this.matches = matches;
+			this.choicesVersion = choicesVersion;
+		}
+
+	}
+
 }
@@ -0,0 +1,57 @@
+package org.obo.app.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Retains only the first elements offered to it according to a comparator, up to a fixed capacity.
+ * This allows the best few items to be picked from a large number of candidates without sorting them all.
+ */
+public class BoundedPriorityQueue<E> {
+
+	private static final int MAXIMUM_INITIAL_CAPACITY = 64;
+	private final int capacity;
+	private final Comparator<? super E> comparator;
+	// the head of the heap is the worst element retained
+	private final PriorityQueue<E> heap;
+
+	public BoundedPriorityQueue(int capacity, final Comparator<? super E> comparator) {
+		this.capacity = capacity;
+		this.comparator = comparator;
+		this.heap = new PriorityQueue<E>(Math.max(1, Math.min(capacity, MAXIMUM_INITIAL_CAPACITY)), java.util.Collections.reverseOrder(comparator));
+	}
+
+	/**
+	 * Adds the element if there is room, or if it is better than the worst element retained, which is then discarded.
+	 * @return Whether the element was retained.
+	 */
+	public boolean offer(E element) {
+		if (this.capacity < 1) {
+			return false;
+		}
+		if (this.heap.size() < this.capacity) {
+			return this.heap.offer(element);
+		}
+		if (this.comparator.compare(element, this.heap.peek()) < 0) {
+			this.heap.poll();
+			return this.heap.offer(element);
+		}
+		return false;
+	}
+
+	public int size() {
+		return this.heap.size();
+	}
+
+	/**
+	 * @return The retained elements, best first.
+	 */
+	public List<E> toSortedList() {
+		final List<E> list = new ArrayList<E>(this.heap);
+		java.util.Collections.sort(list, this.comparator);
+		return list;
+	}
+
+}
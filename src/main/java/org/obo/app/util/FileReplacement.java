@@ -0,0 +1,31 @@
+package org.obo.app.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class FileReplacement {
+
+	private FileReplacement(){}
+
+	/**
+	 * Move a fully written temporary file over the target, so that readers of the target see either its old or its
+	 * new contents, never a partial file.  If the file system cannot move atomically, the target is still replaced
+	 * in one move, without first being deleted.  The temporary file is deleted if the move fails.
+	 */
+	public static void replace(File temp, File target) throws IOException {
+		try {
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+	}
+
+}
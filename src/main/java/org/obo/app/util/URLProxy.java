@@ -1,15 +1,9 @@
 package org.obo.app.util;
 
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
@@ -17,23 +11,23 @@ import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.log4j.Logger;
 
 /**
  * A URLProxy can be used to maintain a local cache of URL resources. For HTTP
- * URLs, it uses the "Last-Modified" and "ETag" headers to determine if the file
- * needs to be re-downloaded.
+ * URLs, it sends the saved "ETag" and "Last-Modified" values as a conditional
+ * request, so the file is only re-downloaded if it has changed. A URLProxy may
+ * be used from several threads at once.
  * 
  * @author Jim Balhoff
  */
 public class URLProxy {
 
 	private final File cacheFolder;
-	private static final String METADATA_FILENAME = ".proxy_metadata";
+	private final URLProxyMetadata metadata;
+	private int timeout = 0;
 
 	public enum CacheOption {
 		FORCE_CACHE, USE_CACHE, NO_CACHE;
@@ -51,6 +45,7 @@ public class URLProxy {
 					"Cache location must be a directory.");
 		}
 		this.cacheFolder = cacheLocation;
+		this.metadata = new URLProxyMetadata(cacheLocation);
 	}
 
 	/**
@@ -89,15 +84,23 @@ public class URLProxy {
 	 * Returns a local file containing the data at the given URL. The data will
 	 * be downloaded depending on the passed CacheOption. NO_CACHE will force a
 	 * new version to be downloaded. USE_CACHE will download the file only if
-	 * the cache is out of date. FORCE_CACHE will use the cached version even if
-	 * it is out of date.
+	 * the cache is out of date, using a single conditional request, and falls
+	 * back to the cached version if the server cannot be reached. FORCE_CACHE
+	 * will use the cached version even if it is out of date.
 	 */
 	public File get(URL url, CacheOption option) throws IOException {
-		if ((option.equals(CacheOption.NO_CACHE))
-				|| ((option.equals(CacheOption.USE_CACHE)) && (this
-						.isOutOfDate(url)))) {
-			log().info("Need to download from web: " + url);
-			this.downloadToCache(url);
+		if (option.equals(CacheOption.NO_CACHE)) {
+			this.fetch(url, false);
+		} else if (option.equals(CacheOption.USE_CACHE)) {
+			final boolean cached = this.isCached(url);
+			try {
+				this.fetch(url, cached);
+			} catch (IOException e) {
+				if (!cached) {
+					throw e;
+				}
+				log().warn("Unable to check for update, using cached copy of: " + url, e);
+			}
 		}
 		return this.getCacheFile(url);
 	}
@@ -114,122 +117,126 @@ public class URLProxy {
 	 * its current cached status.
 	 */
 	public void downloadToCache(URL url) throws IOException {
-		URLConnection connection = url.openConnection();
-		if (connection instanceof HttpURLConnection) {
-			connection = followRedirects((HttpURLConnection)connection);
-			this.setCacheETag(url, connection.getHeaderField("ETag"));
-			this.setCacheDate(url, new Date(connection.getDate()));
-		} else {
-			this.setCacheDate(url, new Date(connection.getLastModified()));
-		}
-
-		final InputStream input = connection.getInputStream();
-		final ReadableByteChannel readChannel = Channels.newChannel(input);
-		final FileChannel writeChannel = (new FileOutputStream(this.getCacheFile(url))).getChannel();
-		final long BIG_NUM = 99999999999999l;
-		writeChannel.transferFrom(readChannel, 0, BIG_NUM);
-		writeChannel.close();
+		this.fetch(url, false);
 	}
 
-	private HttpURLConnection followRedirects(HttpURLConnection connection) throws IOException {
-		final int status = connection.getResponseCode();
-		if (status == HttpURLConnection.HTTP_MOVED_TEMP
-				|| status == HttpURLConnection.HTTP_MOVED_PERM
-				|| status == HttpURLConnection.HTTP_SEE_OTHER) {
-			return (HttpURLConnection)new URL(connection.getHeaderField("Location")).openConnection();
-		} else return connection;
-	}
-
-	private File getCacheFile(URL url) {
-		return new File(this.cacheFolder, this.getCacheFileName(url));
-	}
-
-	private String getCacheFileName(URL url) {
-		return (String) this.getCacheMetadata(url).get("uuid");
+	/**
+	 * The connect and read timeout, in milliseconds, applied to each request. Zero means no timeout.
+	 */
+	public int getTimeout() {
+		return this.timeout;
 	}
 
-	private File getCacheMetadataFile() throws IOException {
-		final File file = new File(this.cacheFolder, METADATA_FILENAME);
-		if (!file.exists()) {
-			final FileWriter writer = new FileWriter(file);
-			writer.write("");
-			writer.close();
-		}
-		return file;
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
 	}
 
-	@SuppressWarnings("unchecked")
-	private Map<String, Object> getCacheMetadata() {
-		try {
-			final ObjectInputStream input = new ObjectInputStream(
-					new FileInputStream(this.getCacheMetadataFile()));
-			return (Map<String, Object>) (input.readObject());
-		} catch (EOFException e) {
-			// haven't serialized a map before
-			return new HashMap<String, Object>();
-		} catch (FileNotFoundException e) {
-			log().error("Unable to read download cache metadata", e);
-		} catch (IOException e) {
-			log().error("Unable to read download cache metadata", e);
-		} catch (ClassNotFoundException e) {
-			log().error("Unable to read download cache metadata", e);
+	/**
+	 * Download the URL into the cache.  If conditional, HTTP requests carry the validators saved with the
+	 * cached copy, so an unchanged resource costs only one round trip with an empty "304 Not Modified" response.
+	 */
+	private void fetch(URL url, boolean conditional) throws IOException {
+		URLConnection connection = this.openConnection(url, url, conditional);
+		if (connection instanceof HttpURLConnection) {
+			connection = this.followRedirects((HttpURLConnection)connection, url, conditional);
+			final int status = ((HttpURLConnection)connection).getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				log().debug("Not modified: " + url);
+				return;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Unexpected response " + status + " for " + url);
+			}
+			log().info("Downloading from web: " + url);
+			this.download(url, connection);
+			this.metadata.update(url.toString(), new Date(connection.getLastModified() > 0 ? connection.getLastModified() : connection.getDate()), connection.getHeaderField("ETag"));
+		} else {
+			final long lastModified = connection.getLastModified();
+			final Date cacheDate = this.getCacheDate(url);
+			if (conditional && (lastModified > 0) && (cacheDate != null) && !(new Date(lastModified).after(cacheDate))) {
+				return;
+			}
+			this.download(url, connection);
+			this.metadata.update(url.toString(), new Date(lastModified), null);
 		}
-		return null;
 	}
 
-	@SuppressWarnings("unchecked")
-	private Map<String, Object> getCacheMetadata(URL url) {
-		final Map<String, Object> metadata = this.getCacheMetadata();
-		if (!metadata.containsKey(url.toString())) {
-			this.writeCacheMetadata(url, "uuid", UUID.randomUUID().toString());
+	/**
+	 * @param url The location to connect to, which may be a redirect target.
+	 * @param cachedURL The URL whose cached copy is being checked, under which the validators are saved.
+	 */
+	private URLConnection openConnection(URL url, URL cachedURL, boolean conditional) throws IOException {
+		final URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(this.timeout);
+		connection.setReadTimeout(this.timeout);
+		if (connection instanceof HttpURLConnection) {
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+			if (conditional) {
+				final String eTag = this.getCacheETag(cachedURL);
+				if (eTag != null) {
+					connection.setRequestProperty("If-None-Match", eTag);
+				}
+				final Date cacheDate = this.getCacheDate(cachedURL);
+				if ((cacheDate != null) && (cacheDate.getTime() > 0)) {
+					connection.setIfModifiedSince(cacheDate.getTime());
+				}
+			}
 		}
-		return (Map<String, Object>) this.getCacheMetadata()
-				.get(url.toString());
+		return connection;
 	}
 
 	/**
-	 * All edits to the metadata dictionaries should be done through this
-	 * method, which handles persistence. After editing the metadata, it should
-	 * be refetched using getCacheMetadata.
+	 * Write the response body to a temporary file which then replaces the cache file, so that a failed
+	 * download never leaves a truncated cache file behind.
 	 */
-	@SuppressWarnings("unchecked")
-	private void writeCacheMetadata(URL url, String key, Object value) {
+	private void download(URL url, URLConnection connection) throws IOException {
+		final File cacheFile = this.getCacheFile(url);
+		final File temp = new File(this.cacheFolder, cacheFile.getName() + ".download");
+		InputStream input = connection.getInputStream();
 		try {
-			final Map<String, Object> metadata = this.getCacheMetadata();
-			final String urlKey = url.toString();
-			final Map<String, Object> urlMetadata;
-			if (metadata.containsKey(urlKey)) {
-				urlMetadata = (Map<String, Object>) (metadata.get(urlKey));
-			} else {
-				urlMetadata = new HashMap<String, Object>();
-				metadata.put(urlKey, urlMetadata);
+			if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+				input = new GZIPInputStream(input);
+			}
+			final ReadableByteChannel readChannel = Channels.newChannel(input);
+			final FileChannel writeChannel = (new FileOutputStream(temp)).getChannel();
+			try {
+				final long BIG_NUM = 99999999999999l;
+				writeChannel.transferFrom(readChannel, 0, BIG_NUM);
+			} finally {
+				writeChannel.close();
 			}
-			urlMetadata.put(key, value);
-			final ObjectOutputStream output = new ObjectOutputStream(
-					new FileOutputStream(this.getCacheMetadataFile()));
-			output.writeObject(metadata);
-			output.close();
-		} catch (FileNotFoundException e) {
-			log().error("Unable to write download cache metadata", e);
 		} catch (IOException e) {
-			log().error("Unable to write download cache metadata", e);
+			temp.delete();
+			throw e;
+		} finally {
+			input.close();
 		}
+		FileReplacement.replace(temp, cacheFile);
 	}
 
-	private Date getCacheDate(URL url) {
-		return (Date) (this.getCacheMetadata(url).get("date"));
+	private HttpURLConnection followRedirects(HttpURLConnection connection, URL url, boolean conditional) throws IOException {
+		final int status = connection.getResponseCode();
+		if (status == HttpURLConnection.HTTP_MOVED_TEMP
+				|| status == HttpURLConnection.HTTP_MOVED_PERM
+				|| status == HttpURLConnection.HTTP_SEE_OTHER) {
+			return (HttpURLConnection)this.openConnection(new URL(connection.getHeaderField("Location")), url, conditional);
+		} else return connection;
+	}
+
+	private File getCacheFile(URL url) {
+		return new File(this.cacheFolder, this.getCacheFileName(url));
 	}
 
-	private void setCacheDate(URL url, Date date) {
-		this.writeCacheMetadata(url, "date", date);
+	private String getCacheFileName(URL url) {
+		return this.metadata.get(url.toString()).getFileName();
 	}
 
-	private String getCacheETag(URL url) {
-		return (String) (this.getCacheMetadata(url).get("etag"));
+	private Date getCacheDate(URL url) {
+		return this.metadata.get(url.toString()).getDate();
 	}
 
-	private void setCacheETag(URL url, String eTag) {
-		this.writeCacheMetadata(url, "etag", eTag);
+	private String getCacheETag(URL url) {
+		return this.metadata.get(url.toString()).getETag();
 	}
 
 	private Logger log() {
@@ -0,0 +1,179 @@
+package org.obo.app.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The record of what a URLProxy has cached: for each URL, the name of its cache file and the validators used to
+ * check it for changes.  The record is read once and held in memory.  Every change is saved by writing a new index
+ * file and renaming it over the old one, so a crash at any point leaves either the old or the new index intact.
+ * All methods are safe to call from several threads.
+ */
+class URLProxyMetadata {
+
+	private static final String INDEX_FILENAME = "cache_index.tab";
+	// the Java-serialized map used by earlier versions, which is migrated on first use
+	private static final String LEGACY_FILENAME = ".proxy_metadata";
+	private static final String ENCODING = "UTF-8";
+	private final File indexFile;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	public URLProxyMetadata(File cacheFolder) {
+		this.indexFile = new File(cacheFolder, INDEX_FILENAME);
+		final File legacyFile = new File(cacheFolder, LEGACY_FILENAME);
+		if (this.indexFile.exists()) {
+			this.read();
+		} else if (legacyFile.exists()) {
+			this.migrate(legacyFile);
+		}
+	}
+
+	/**
+	 * Returns the cache entry for the URL, creating one with a new, unique cache file name if it has none.
+	 */
+	public synchronized Entry get(String url) {
+		final Entry entry = this.entries.get(url);
+		if (entry != null) {
+			return entry;
+		}
+		final Entry newEntry = new Entry(UUID.randomUUID().toString(), null, null);
+		this.entries.put(url, newEntry);
+		this.write();
+		return newEntry;
+	}
+
+	/**
+	 * Record the validators for the URL's newly downloaded cache file.
+	 */
+	public synchronized void update(String url, Date date, String eTag) {
+		this.entries.put(url, new Entry(this.get(url).getFileName(), date, eTag));
+		this.write();
+	}
+
+	/**
+	 * The metadata for one cached URL.  Entries are immutable; updates replace them.
+	 */
+	public static class Entry {
+
+		private final String fileName;
+		private final Date date;
+		private final String eTag;
+
+		public Entry(String fileName, Date date, String eTag) {
+			this.fileName = fileName;
+			this.date = date;
+			this.eTag = eTag;
+		}
+
+		public String getFileName() {
+			return this.fileName;
+		}
+
+		/**
+		 * @return The Last-Modified date of the cached copy, or the date it was downloaded, or null if unknown.
+		 */
+		public Date getDate() {
+			return this.date;
+		}
+
+		public String getETag() {
+			return this.eTag;
+		}
+
+	}
+
+	private void read() {
+		try {
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.indexFile), ENCODING));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					final String[] fields = line.split("\t", -1);
+					if (fields.length != 4) {
+						log().warn("Ignoring malformed cache index line: " + line);
+						continue;
+					}
+					try {
+						final Date date = fields[2].length() > 0 ? new Date(Long.parseLong(fields[2])) : null;
+						final String eTag = fields[3].length() > 0 ? fields[3] : null;
+						this.entries.put(fields[0], new Entry(fields[1], date, eTag));
+					} catch (NumberFormatException e) {
+						log().warn("Ignoring malformed cache index line: " + line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			log().error("Unable to read download cache index", e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void migrate(File legacyFile) {
+		try {
+			final ObjectInputStream input = new ObjectInputStream(new FileInputStream(legacyFile));
+			try {
+				final Map<String, Map<String, Object>> metadata = (Map<String, Map<String, Object>>)(input.readObject());
+				for (Map.Entry<String, Map<String, Object>> item : metadata.entrySet()) {
+					final String fileName = (String)(item.getValue().get("uuid"));
+					if (fileName != null) {
+						this.entries.put(item.getKey(), new Entry(fileName, (Date)(item.getValue().get("date")), (String)(item.getValue().get("etag"))));
+					}
+				}
+			} finally {
+				input.close();
+			}
+			log().info("Migrated download cache metadata from " + legacyFile);
+		} catch (IOException e) {
+			// an empty or damaged legacy file just means those downloads are repeated
+			log().error("Unable to migrate download cache metadata", e);
+		} catch (ClassNotFoundException e) {
+			log().error("Unable to migrate download cache metadata", e);
+		} catch (ClassCastException e) {
+			log().error("Unable to migrate download cache metadata", e);
+		}
+		this.write();
+		legacyFile.delete();
+	}
+
+	private void write() {
+		final File temp = new File(this.indexFile.getParentFile(), INDEX_FILENAME + ".tmp");
+		try {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), ENCODING));
+			try {
+				for (Map.Entry<String, Entry> item : this.entries.entrySet()) {
+					final Entry entry = item.getValue();
+					writer.write(item.getKey() + "\t" + entry.getFileName() + "\t");
+					writer.write((entry.getDate() != null ? String.valueOf(entry.getDate().getTime()) : "") + "\t");
+					writer.write((entry.getETag() != null ? entry.getETag() : "") + "\n");
+				}
+			} finally {
+				writer.close();
+			}
+			FileReplacement.replace(temp, this.indexFile);
+		} catch (IOException e) {
+			log().error("Unable to write download cache index", e);
+			temp.delete();
+		}
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+}
@@ -7,27 +7,44 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JOptionPane;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bbop.dataadapter.DataAdapterException;
 import org.bbop.framework.GUIManager;
 import org.obo.annotation.base.OntologyConfiguration;
+import org.obo.annotation.base.OntologyLoader;
+import org.obo.annotation.base.OntologySnapshot;
 import org.obo.annotation.base.OntologySource;
+import org.obo.annotation.base.SecondaryIDIndex;
+import org.obo.annotation.base.TermFilterCompiler;
 import org.obo.annotation.base.TermSet;
+import org.obo.annotation.base.TermSetBuilder;
+import org.obo.annotation.base.TermSetCache;
+import org.obo.annotation.base.TermUsage;
 import org.obo.app.util.URLProxy;
-import org.obo.dataadapter.OBOAdapter;
-import org.obo.dataadapter.OBOFileAdapter;
 import org.obo.datamodel.IdentifiedObject;
 import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOObject;
 import org.obo.datamodel.OBOSession;
 import org.obo.datamodel.impl.OBOSessionImpl;
 import org.obo.filters.Filter;
 import org.oboedit.controller.SessionManager;
+import org.phenoscape.util.PhaseTimer;
 import org.phenoscape.util.ProvisionalTermUtil;
 
 /**
@@ -44,6 +61,12 @@ public class OntologyController {
 	private static final String PC_FILLERS_FILTER = "postcomposition";
 	private static final String ALL_TERMS = "allterms";
 	private static final String ALL_TERMS_WITHOUT_PROVISIONAL = "allpublicterms";
+	private static final String SNAPSHOT_FILENAME = "ontologies.snapshot";
+	private static final String TERM_SET_FOLDER = "Term Sets";
+	private static final String[][] WARMING_BATCHES = {{ENTITY_FILTER, QUALITY_FILTER}, {RELATION_FILTER, UNIT_FILTER, TAXON_FILTER, MUSEUM_FILTER, PC_FILLERS_FILTER}, {ALL_TERMS, ALL_TERMS_WITHOUT_PROVISIONAL}};
+	private static final int MAXIMUM_CONCURRENT_DOWNLOADS = 4;
+	// connect and read timeout for each ontology source, in milliseconds
+	private static final int SOURCE_TIMEOUT = 30000;
 	private File overridingFiltersFolder = new File(GUIManager.getPrefsDir(), "Filters");
 
 	private TermSet entityTermSet = null;
@@ -57,41 +80,140 @@ public class OntologyController {
 	private TermSet allTermsWithoutProvisionalSet = null;
 
 	private final OntologyConfiguration config;
+	private TermSetCache termSetCache = null;
+	private final PhaseTimer startupTimer;
+	private final Map<String, String> filterKeys = new HashMap<String, String>();
+	/**
+	 * Computes term sets and their search indexes one batch at a time, so that startup need not wait for them.
+	 */
+	private final ExecutorService termSetWarmer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, "Term set warming");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+	private final TermUsage termUsage = new TermUsage(new File(GUIManager.getPrefsDir(), "term_usage.tab"));
+	private Future<?> provisionalTermLoading = null;
 
 	public OntologyController(OntologyConfiguration configuration) {
+		this(configuration, new PhaseTimer("Startup"));
+	}
+
+	/**
+	 * @param timer Records the time taken by each phase of loading, including the term set warming which continues
+	 * in the background after construction.
+	 */
+	public OntologyController(OntologyConfiguration configuration, PhaseTimer timer) {
 		this.config = configuration;
-		final OBOFileAdapter fileAdapter = new OBOFileAdapter();
-		OBOFileAdapter.OBOAdapterConfiguration adapterConfig = new OBOFileAdapter.OBOAdapterConfiguration();
-		adapterConfig.setReadPaths(Arrays.asList(this.getPaths()));
-		adapterConfig.setBasicSave(false);
-		adapterConfig.setAllowDangling(true);
-		adapterConfig.setFollowImports(false); // this is required because OBO currently fails if it tries to follow an import and there is no network connection
+		this.startupTimer = timer;
+		PhaseTimer.Phase phase = timer.start("Check ontology sources");
+		final List<File> sources = this.getSourceFiles();
+		phase.end();
+		phase = timer.start("Restore session snapshot");
+		final OntologySnapshot snapshot = new OntologySnapshot(new File(this.getCacheFolder(), SNAPSHOT_FILENAME));
+		final OBOSession restoredSession = snapshot.load(sources);
+		phase.end();
+		if (restoredSession != null) {
+			log().info("Restored ontologies from snapshot");
+			SessionManager.getManager().setSession(restoredSession);
+		} else {
+			try {
+				phase = timer.start("Parse ontologies");
+				final OBOSession session = new OntologyLoader().load(sources);
+				phase.end();
+				phase = timer.start("Save session snapshot");
+				// the snapshot must be taken before provisional terms are added to the session
+				snapshot.save(session, sources);
+				phase.end();
+				SessionManager.getManager().setSession(session);
+			} catch (DataAdapterException e) {
+				phase.end();
+				JOptionPane.showMessageDialog(null, "An error occurred while loading ontologies: " + e.getLocalizedMessage(), "Error Loading Ontologies", JOptionPane.ERROR_MESSAGE);
+				log().fatal("Failed to load ontologies", e);
+				SessionManager.getManager().setSession(new OBOSessionImpl());
+				this.eraseOntologyCache();
+			}
+		}
+		phase = timer.start("Load term set filters");
+		this.getTermSetsByName();
+		phase.end();
+		phase = timer.start("Restore term sets");
+		this.restoreTermSets(snapshot, sources);
+		phase.end();
+		this.warmTermSets();
+	}
+
+	/**
+	 * @return The timer recording this controller's startup phases.
+	 */
+	public PhaseTimer getStartupTimer() {
+		return this.startupTimer;
+	}
+
+	/**
+	 * @return A future which completes once all term set warming and updates requested so far have finished.
+	 */
+	public Future<?> awaitTermSetWarming() {
+		return this.termSetWarmer.submit(new Runnable() {
+			@Override
+			public void run() {}
+		});
+	}
+
+	/**
+	 * Wait until the user's provisional terms have been added to the session, so that a document which uses them
+	 * finds them rather than creating dangling terms in their place.
+	 */
+	public void awaitProvisionalTerms() {
 		try {
-			SessionManager.getManager().setSession(fileAdapter.doOperation(OBOAdapter.READ_ONTOLOGY, adapterConfig, null));
-		} catch (DataAdapterException e) {
-			JOptionPane.showMessageDialog(null, "An error occurred while loading ontologies: " + e.getLocalizedMessage(), "Error Loading Ontologies", JOptionPane.ERROR_MESSAGE);
-			log().fatal("Failed to load ontologies", e);
-			SessionManager.getManager().setSession(new OBOSessionImpl());
-			this.eraseOntologyCache();
+			this.provisionalTermLoading.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log().error("Failed to load provisional terms", e.getCause());
 		}
-		this.loadProvisionalTerms();
-		this.prefetchTermSets();
 	}
 
-	private String[] getPaths() {
+	private File getCacheFolder() {
 		//TODO make proxy location configurable
-		URLProxy proxy = new URLProxy(new File(GUIManager.getPrefsDir(),"Ontology Cache"));
-		final List<String> urls = new ArrayList<String>();
-		for (OntologySource source : this.config.getSources()) {
+		return new File(GUIManager.getPrefsDir(), "Ontology Cache");
+	}
+
+	/**
+	 * Fetch all ontology sources concurrently, so that checking for updates takes as long as the
+	 * slowest source rather than the sum of all of them.  Files are returned in the configured order.
+	 */
+	private List<File> getSourceFiles() {
+		final URLProxy proxy = new URLProxy(this.getCacheFolder());
+		proxy.setTimeout(SOURCE_TIMEOUT);
+		final List<OntologySource> sources = this.config.getSources();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(sources.size(), MAXIMUM_CONCURRENT_DOWNLOADS)));
+		final List<Future<File>> downloads = new ArrayList<Future<File>>();
+		for (final OntologySource source : sources) {
+			downloads.add(executor.submit(new Callable<File>() {
+				@Override
+				public File call() throws IOException {
+					return proxy.get(source.getURL());
+				}
+			}));
+		}
+		executor.shutdown();
+		final List<File> files = new ArrayList<File>();
+		for (int i = 0; i < sources.size(); i++) {
 			try {
-				final File localFile = proxy.get(source.getURL());
-				urls.add(localFile.toURI().toString());
-			} catch (IOException e) {
+				files.add(downloads.get(i).get());
+			} catch (ExecutionException e) {
 				//TODO alert user somehow
-				log().error("Unable to read ontology at: " + source.getURL(), e);
+				log().error("Unable to read ontology at: " + sources.get(i).getURL(), e.getCause());
+			} catch (InterruptedException e) {
+				log().error("Interrupted while reading ontology at: " + sources.get(i).getURL(), e);
+				Thread.currentThread().interrupt();
 			}
 		}
-		return urls.toArray(new String[] {});
+		return files;
 	}
 
 	public OBOSession getOBOSession() {
@@ -192,25 +314,148 @@ public class OntologyController {
 	}
 
 	private TermSet makeTermSet() {
-		return new TermSet(this.getOBOSession(), SessionManager.getManager().getReasoner());
+		final TermSet terms = new TermSet(this.getOBOSession(), SessionManager.getManager().getReasoner());
+		terms.setUsage(this.getTermUsage());
+		return terms;
+	}
+
+	/**
+	 * @return The record of the user's term choices, shared by all term sets to rank search results.
+	 */
+	public TermUsage getTermUsage() {
+		return this.termUsage;
+	}
+
+	/**
+	 * Compute all term sets and their search indexes on a background thread, in order of how soon they are likely to be
+	 * needed: entities and qualities first, for phenotype editing, and the sets of all terms last.  Term sets which
+	 * are already computed or restored are skipped, and each newly computed term set is stored for the next launch.
+	 * Autocomplete fields show that a term set is loading until it is ready.  The session's objects are copied here,
+	 * on the thread which modifies the session, for the warming thread to use.  Terms added afterwards are brought
+	 * in by updateTermSets.  The user's provisional terms, which must be downloaded, are loaded on the warming thread
+	 * after the first batch, and so are brought in the same way.
+	 */
+	private void warmTermSets() {
+		final List<IdentifiedObject> objects = new ArrayList<IdentifiedObject>(this.getOBOSession().getObjects());
+		final Map<String, TermSet> termSets = this.getTermSetsByName();
+		for (int i = 0; i < WARMING_BATCHES.length; i++) {
+			final Map<String, TermSet> batch = new LinkedHashMap<String, TermSet>();
+			for (String name : WARMING_BATCHES[i]) {
+				batch.put(name, termSets.get(name));
+			}
+			this.termSetWarmer.execute(new Runnable() {
+				@Override
+				public void run() {
+					final PhaseTimer.Phase phase = startupTimer.start("Warm term sets: " + StringUtils.join(batch.keySet(), ", "));
+					warmTermSets(objects, batch);
+					phase.end();
+				}
+			});
+			if (i == 0) {
+				this.provisionalTermLoading = this.termSetWarmer.submit(new Runnable() {
+					@Override
+					public void run() {
+						final PhaseTimer.Phase phase = startupTimer.start("Load provisional terms");
+						loadProvisionalTerms();
+						phase.end();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Restore term sets saved by an earlier launch from the same ontology sources and filters.  This must be done
+	 * before provisional terms are added to the session, since those are brought up to date separately.
+	 */
+	private void restoreTermSets(OntologySnapshot snapshot, List<File> sources) {
+		try {
+			this.termSetCache = new TermSetCache(new File(this.getCacheFolder(), TERM_SET_FOLDER), snapshot.getSourceKey(sources));
+		} catch (IOException e) {
+			log().error("Unable to identify ontology sources; term sets will not be stored", e);
+			return;
+		}
+		for (Map.Entry<String, TermSet> item : this.getTermSetsByName().entrySet()) {
+			final String filterKey = this.getFilterKey(item.getKey());
+			if (filterKey != null) {
+				this.filterKeys.put(item.getKey(), filterKey);
+				if (this.termSetCache.load(item.getKey(), filterKey, item.getValue())) {
+					log().info("Restored term set: " + item.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bring every term set up to date after the given terms have been added to or changed in the session, by testing
+	 * only those terms against each term set's filter.  This is much faster than invalidating the term sets, which
+	 * recomputes them over the whole session.  The update is made on the term set warming thread, after any warming
+	 * already requested.  The session's secondary ID index is updated immediately.
+	 */
+	public Future<?> updateTermSets(Collection<? extends OBOObject> terms) {
+		SecondaryIDIndex.addTerms(this.getOBOSession(), terms);
+		final List<TermSet> termSets = this.getTermSets();
+		final List<OBOObject> changed = new ArrayList<OBOObject>(terms);
+		return this.termSetWarmer.submit(new Runnable() {
+			@Override
+			public void run() {
+				final TermFilterCompiler compiler = new TermFilterCompiler(changed);
+				for (TermSet termSet : termSets) {
+					if (termSet.getTermFilter() == null) {
+						continue;
+					}
+					termSet.getTermFilter().setReasoner(termSet.getReasoner());
+					final List<OBOObject> matches = compiler.getMatches(termSet.getTermFilter());
+					final List<OBOObject> nonMatches = new ArrayList<OBOObject>(changed);
+					nonMatches.removeAll(matches);
+					termSet.removeTerms(nonMatches);
+					termSet.addTerms(matches);
+				}
+			}
+		});
+	}
+
+	private List<TermSet> getTermSets() {
+		return new ArrayList<TermSet>(this.getTermSetsByName().values());
 	}
 
 	/**
-	 * This is just a startup "optimization" - it makes the term searches
-	 * happen while the ontology loading panel is displayed.  This reduces
-	 * the blank time between that panel disappearing and the interface being
-	 * displayed.
+	 * @return Each term set, keyed by the name of its filter, in the order in which they are warmed.
 	 */
-	private void prefetchTermSets() {
-		this.getEntityTermSet().getTerms();
-		this.getTaxonTermSet().getTerms();
-		this.getCollectionTermSet().getTerms();
-		this.getUnitTermSet().getTerms();
-		this.getRelationsTermSet().getTerms();
-		this.getQualityTermSet().getTerms();
-		this.getRelatedEntityTermSet().getTerms();
-		this.getPostCompositionFillersTermSet().getTerms();
-		this.getAllTermsSet().getTerms();
+	private Map<String, TermSet> getTermSetsByName() {
+		final Map<String, TermSet> termSets = new LinkedHashMap<String, TermSet>();
+		termSets.put(ENTITY_FILTER, this.getEntityTermSet());
+		termSets.put(QUALITY_FILTER, this.getQualityTermSet());
+		termSets.put(RELATION_FILTER, this.getRelationsTermSet());
+		termSets.put(UNIT_FILTER, this.getUnitTermSet());
+		termSets.put(TAXON_FILTER, this.getTaxonTermSet());
+		termSets.put(MUSEUM_FILTER, this.getCollectionTermSet());
+		termSets.put(PC_FILLERS_FILTER, this.getPostCompositionFillersTermSet());
+		termSets.put(ALL_TERMS, this.getAllTermsSet());
+		termSets.put(ALL_TERMS_WITHOUT_PROVISIONAL, this.getAllTermsSetWithoutProvisional());
+		return termSets;
+	}
+
+	private void warmTermSets(List<IdentifiedObject> objects, Map<String, TermSet> termSets) {
+		final TermSetBuilder builder = new TermSetBuilder(objects);
+		final List<String> built = new ArrayList<String>();
+		for (Map.Entry<String, TermSet> item : termSets.entrySet()) {
+			if (!item.getValue().isReady()) {
+				builder.add(item.getKey(), item.getValue());
+				built.add(item.getKey());
+			}
+		}
+		builder.build();
+		for (String name : built) {
+			try {
+				termSets.get(name).getSearchIndex();
+				if ((this.termSetCache != null) && this.filterKeys.containsKey(name)) {
+					this.termSetCache.save(name, this.filterKeys.get(name), termSets.get(name));
+				}
+			} catch (RuntimeException e) {
+				log().error("Failed to compute term set", e);
+			}
+		}
 	}
 
 	private Filter<IdentifiedObject> loadFilterWithName(String filterName) {
@@ -223,6 +468,25 @@ public class OntologyController {
 		}
 	}
 
+	/**
+	 * @return A key identifying the contents of the named filter, or null if it cannot be read.
+	 */
+	private String getFilterKey(String filterName) {
+		final String filename = filterName + ".xml";
+		final File filterFile = new File(this.getOverridingFiltersFolder(), filename);
+		try {
+			if (filterFile.exists()) {
+				return TermSetCache.computeFilterKey(new FileInputStream(filterFile));
+			} else {
+				final InputStream stream = this.getClass().getResourceAsStream("/org/phenoscape/filters/" + filename);
+				return (stream != null) ? TermSetCache.computeFilterKey(stream) : null;
+			}
+		} catch (IOException e) {
+			log().error("Unable to read filter: " + filterName, e);
+			return null;
+		}
+	}
+
 	private Filter<IdentifiedObject> loadFilterFromResource(String resourcePath) {
 		return this.loadFilter(this.getClass().getResourceAsStream(resourcePath));
 	}
@@ -250,6 +514,8 @@ public class OntologyController {
 			for (OBOClass term : terms) {
 				this.getOBOSession().addObject(term);	
 			}
+			// term sets and their search indexes must be updated to include the new terms
+			this.updateTermSets(terms);
 		} catch (IllegalStateException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -260,7 +526,7 @@ public class OntologyController {
 	}
 
 	private void eraseOntologyCache() {
-		final File cacheDir = new File(GUIManager.getPrefsDir(),"Ontology Cache");
+		final File cacheDir = this.getCacheFolder();
 		try {
 			FileUtils.deleteDirectory(cacheDir);
 		} catch (IOException e) {
@@ -282,6 +548,8 @@ public class OntologyController {
 		this.getRelatedEntityTermSet().invalidateTerms();
 		this.getPostCompositionFillersTermSet().invalidateTerms();
 		this.getAllTermsSet().invalidateTerms();
+		this.getAllTermsSetWithoutProvisional().invalidateTerms();
+		this.warmTermSets();
 	}
 
 }
@@ -9,8 +9,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
@@ -27,6 +29,7 @@ import javax.swing.ListSelectionModel;
 import javax.swing.WindowConstants;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableModel;
+import javax.xml.stream.XMLStreamException;
 import name.pachler.nio.file.ClosedWatchServiceException;
 import name.pachler.nio.file.FileSystems;
 import name.pachler.nio.file.Path;
@@ -41,6 +44,7 @@ import org.apache.xmlbeans.XmlException;
 import org.bbop.framework.GUIManager;
 import org.jdesktop.swingworker.SwingWorker;
 import org.nexml.schema_2009.NexmlDocument;
+import org.obo.annotation.base.OBOUtil;
 import org.obo.annotation.view.DefaultOntologyCoordinator;
 import org.obo.annotation.view.OntologyCoordinator;
 import org.obo.annotation.view.SelectionManager;
@@ -50,13 +54,16 @@ import org.obo.app.model.ObservableEventList;
 import org.obo.app.swing.BlockingProgressDialog;
 import org.obo.app.swing.ListSelectionMaintainer;
 import org.obo.app.util.EverythingEqualComparator;
+import org.obo.datamodel.Link;
 import org.obo.datamodel.LinkedObject;
 import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOSession;
 import org.obo.datamodel.impl.OBOClassImpl;
 import org.phenoscape.io.BioCreativeTabFormat;
 import org.phenoscape.io.CharacterTabReader;
 import org.phenoscape.io.CharaparserEvaluationTabFormat;
 import org.phenoscape.io.NeXMLReader;
+import org.phenoscape.io.NeXMLStreamReader;
 import org.phenoscape.io.NeXMLWriter;
 import org.phenoscape.io.PhenotypeProposalsLoader;
 import org.phenoscape.io.TabDelimitedWriter;
@@ -206,6 +213,7 @@ public class PhenexController extends DocumentController {
 
 	@Override
 	public void readData(File aFile) throws IOException {
+		this.getOntologyController().awaitProvisionalTerms();
 		try {
 			this.readNeXML(aFile);
 		} catch (XmlException e) {
@@ -215,46 +223,71 @@ public class PhenexController extends DocumentController {
 		}
 	}
 
+	/**
+	 * Open a NeXML 2009 file with the streaming reader.  If the file holds anything the DataSet does not, it is read
+	 * again with NeXMLReader, whose document is kept as the template for saving; otherwise it is saved from a new document.
+	 */
 	private void readNeXML(File aFile) throws XmlException, IOException {
-		final NeXMLReader reader = new NeXMLReader(aFile, this.getOntologyController().getOBOSession());
-		if (reader.didCreateDanglers()) {
-			final boolean result = this.runDanglerAlert(aFile, reader.getDanglersList());
+		final OBOSession session = this.getOntologyController().getOBOSession();
+		final NeXMLStreamReader streamReader;
+		try {
+			streamReader = new NeXMLStreamReader(aFile, session);
+		} catch (XMLStreamException e) {
+			throw new XmlException(e.getMessage(), e);
+		}
+		if (streamReader.isComplete()) {
+			this.checkReadTerms(aFile, streamReader.getDanglersList(), streamReader.getMigratedSecondaryIDsList(), streamReader.getReplacedIDsList());
+			this.xmlDoc = NexmlDocument.Factory.newInstance();
+			this.loadNeXMLData(streamReader.getCharactersBlockID(), streamReader.getDataSet());
+		} else {
+			final NeXMLReader reader = new NeXMLReader(aFile, session);
+			this.checkReadTerms(aFile, reader.getDanglersList(), reader.getMigratedSecondaryIDsList(), reader.getReplacedIDsList());
+			this.xmlDoc = reader.getXMLDoc();
+			this.loadNeXMLData(reader.getCharactersBlockID(), reader.getDataSet());
+		}
+	}
+
+	private void checkReadTerms(File aFile, Collection<String> danglers, Collection<String> secondaryIDs, Collection<String> replacedIDs) throws UserCancelledReadException {
+		if (!danglers.isEmpty()) {
+			final boolean result = this.runDanglerAlert(aFile, danglers);
 			if (!result) {
 				throw new UserCancelledReadException();
 			}
 		}
-		if (reader.didMigrateSecondaryIDs()) {
-			final boolean result = this.runSecondaryIDAlert(aFile, reader.getMigratedSecondaryIDsList());
+		if (!secondaryIDs.isEmpty()) {
+			final boolean result = this.runSecondaryIDAlert(aFile, secondaryIDs);
 			if (!result) {
 				throw new UserCancelledReadException();
 			}
 		}
-		if (reader.didReplaceObsoleteTerms()) {
-			final boolean result = this.runReplacedIDsAlert(aFile, reader.getReplacedIDsList());
+		if (!replacedIDs.isEmpty()) {
+			final boolean result = this.runReplacedIDsAlert(aFile, replacedIDs);
 			if (!result) {
 				throw new UserCancelledReadException();
 			}
 		}
-		this.xmlDoc = reader.getXMLDoc();
-		this.charactersBlockID = reader.getCharactersBlockID();
+	}
+
+	private void loadNeXMLData(String charactersBlockID, DataSet data) {
+		this.charactersBlockID = charactersBlockID;
 		this.dataSet.getCharacters().clear(); // TODO this is not well
 												// encapsulated
-		this.dataSet.getCharacters().addAll(reader.getDataSet().getCharacters());
+		this.dataSet.getCharacters().addAll(data.getCharacters());
 		this.getDataSet().getTaxa().clear(); // TODO this is not well
 												// encapsulated
-		this.getDataSet().getTaxa().addAll(reader.getDataSet().getTaxa());
+		this.getDataSet().getTaxa().addAll(data.getTaxa());
 		this.getDataSet().getTrees().clear(); // TODO this is not well
 												// encapsulated
-		this.getDataSet().getTrees().addAll(reader.getDataSet().getTrees());
-		this.getDataSet().setCurators(reader.getDataSet().getCurators());
-		this.getDataSet().setPublication(reader.getDataSet().getPublication());
-		this.getDataSet().setPublicationLabel(reader.getDataSet().getPublicationLabel());
-		this.getDataSet().setPublicationURI(reader.getDataSet().getPublicationURI());
-		this.getDataSet().setPublicationCitation(reader.getDataSet().getPublicationCitation());
-		this.getDataSet().setPublicationNotes(reader.getDataSet().getPublicationNotes());
-		this.getDataSet().setMatrixData(reader.getDataSet().getMatrixData());
+		this.getDataSet().getTrees().addAll(data.getTrees());
+		this.getDataSet().setCurators(data.getCurators());
+		this.getDataSet().setPublication(data.getPublication());
+		this.getDataSet().setPublicationLabel(data.getPublicationLabel());
+		this.getDataSet().setPublicationURI(data.getPublicationURI());
+		this.getDataSet().setPublicationCitation(data.getPublicationCitation());
+		this.getDataSet().setPublicationNotes(data.getPublicationNotes());
+		this.getDataSet().setMatrixData(data.getMatrixData());
 		this.getDataSet().getAssociationSupport().clear();
-		this.getDataSet().getAssociationSupport().putAll(reader.getDataSet().getAssociationSupport());
+		this.getDataSet().getAssociationSupport().putAll(data.getAssociationSupport());
 		this.fireDataChanged();
 	}
 
@@ -582,11 +615,53 @@ public class PhenexController extends DocumentController {
 	}
 
 	private void fireDataChanged() {
+		this.getOntologyController().getTermUsage().setDocumentTerms(this.collectDataSetTerms());
 		for (NewDataListener listener : this.newDataListeners) {
 			listener.reloadData();
 		}
 	}
 
+	/**
+	 * Gather the ontology terms used in the current data set, so that they can be ranked higher in term searches.
+	 * Post-compositions are broken down into their genus and differentia fillers, which are what users search for.
+	 */
+	private Collection<OBOClass> collectDataSetTerms() {
+		final Set<OBOClass> terms = new HashSet<OBOClass>();
+		for (Character character : this.getDataSet().getCharacters()) {
+			for (State state : character.getStates()) {
+				for (Phenotype phenotype : state.getPhenotypes()) {
+					this.addTermComponents(phenotype.getEntity(), terms);
+					this.addTermComponents(phenotype.getQuality(), terms);
+					this.addTermComponents(phenotype.getRelatedEntity(), terms);
+					this.addTermComponents(phenotype.getUnit(), terms);
+				}
+			}
+		}
+		for (Taxon taxon : this.getDataSet().getTaxa()) {
+			this.addTermComponents(taxon.getValidName(), terms);
+			for (Specimen specimen : taxon.getSpecimens()) {
+				this.addTermComponents(specimen.getCollectionCode(), terms);
+			}
+		}
+		return terms;
+	}
+
+	private void addTermComponents(OBOClass term, Set<OBOClass> terms) {
+		if (term == null) {
+			return;
+		}
+		if (OBOUtil.isPostCompTerm(term)) {
+			this.addTermComponents(OBOUtil.getGenusTerm(term), terms);
+			for (Link differentium : OBOUtil.getAllDifferentia(term)) {
+				if (differentium.getParent() instanceof OBOClass) {
+					this.addTermComponents((OBOClass)differentium.getParent(), terms);
+				}
+			}
+		} else {
+			terms.add(term);
+		}
+	}
+
 	private void mergeTaxa(File aFile) {
 		try {
 			final TaxonTabReader reader = new TaxonTabReader(aFile, this.getOntologyController().getOBOSession(),
@@ -657,7 +732,7 @@ public class PhenexController extends DocumentController {
 		return result == JOptionPane.YES_OPTION;
 	}
 
-	private boolean runReplacedIDsAlert(File file, Collection<String> replacedIDs) {
+	private boolean runReplacedIDsAlert(File file, Collection<String> replacedIDs) throws UserCancelledReadException {
 		final String[] options = { "Continue Opening", "Cancel" };
 		final String message = "The file \"" + file.getName()
 				+ "\" contains references to obsolete term IDs which have been automatically updated using the replaced_by tag.";
@@ -5,18 +5,24 @@ import java.io.IOException;
 import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.xml.namespace.QName;
 
 import org.apache.log4j.Logger;
 import org.apache.xmlbeans.XmlAnySimpleType;
+import org.apache.xmlbeans.XmlBeans;
+import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlException;
 import org.bioontologies.obd.schema.pheno.PhenotypeDocument;
 import org.nexml.schema_2009.AbstractBlock;
@@ -28,7 +34,6 @@ import org.nexml.schema_2009.AbstractObsRow;
 import org.nexml.schema_2009.AbstractState;
 import org.nexml.schema_2009.AbstractStates;
 import org.nexml.schema_2009.AbstractUncertainStateSet;
-import org.nexml.schema_2009.Annotated;
 import org.nexml.schema_2009.Nexml;
 import org.nexml.schema_2009.NexmlDocument;
 import org.nexml.schema_2009.StandardCells;
@@ -36,12 +41,8 @@ import org.nexml.schema_2009.StandardChar;
 import org.nexml.schema_2009.StandardFormat;
 import org.nexml.schema_2009.StandardStates;
 import org.nexml.schema_2009.Taxa;
-import org.obo.datamodel.DanglingObject;
-import org.obo.datamodel.IdentifiedObject;
 import org.obo.datamodel.OBOClass;
 import org.obo.datamodel.OBOSession;
-import org.obo.datamodel.ObsoletableObject;
-import org.obo.datamodel.impl.DanglingClassImpl;
 import org.phenoscape.io.NeXMLUtil.LiteralContents;
 import org.phenoscape.io.NeXMLUtil.OBOURISyntaxException;
 import org.phenoscape.model.Association;
@@ -55,28 +56,25 @@ import org.phenoscape.model.Specimen;
 import org.phenoscape.model.State;
 import org.phenoscape.model.Taxon;
 import org.w3c.dom.Attr;
-import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 public class NeXMLReader {
 
 	private final DataSet data = new DataSet();
 	private final NexmlDocument xmlDoc;
-	private final OBOSession session;
-	private final Set<String> danglers = new HashSet<String>();
-	private final Set<String> secondaryIDs = new HashSet<String>();
-	private final Set<String> replacedIDs = new HashSet<String>();
+	private final TermResolver resolver;
 	private String charactersBlockID = UUID.randomUUID().toString();
 	private final Map<String, State> allStates = new HashMap<String, State>();
 
 	public NeXMLReader(File aFile, OBOSession session) throws XmlException, IOException {
-		this.session = session;
+		this.resolver = new TermResolver(session);
 		this.xmlDoc = NexmlDocument.Factory.parse(aFile);
 		this.parseNeXML();
 	}
 
 	public NeXMLReader(Reader aReader, OBOSession session) throws XmlException, IOException {
-		this.session = session;
+		this.resolver = new TermResolver(session);
 		this.xmlDoc = NexmlDocument.Factory.parse(aReader);
 		this.parseNeXML();
 	}
@@ -97,36 +95,36 @@ public class NeXMLReader {
 	 * Returns true if the reader had to create dangling terms for referenced IDs not found in the OBOSession.
 	 */
 	public boolean didCreateDanglers() {
-		return !this.danglers.isEmpty();
+		return !this.resolver.getDanglersList().isEmpty();
 	}
 
 	/**
 	 * Returns the list of IDs referenced in the file that were not found in the OBOSession.
 	 */
 	public Collection<String> getDanglersList() {
-		return this.danglers;
+		return this.resolver.getDanglersList();
 	}
 
 	/**
 	 * Returns true if the reader had to find any referenced terms via a secondary ID.
 	 */
 	public boolean didMigrateSecondaryIDs() {
-		return !this.secondaryIDs.isEmpty();
+		return !this.resolver.getMigratedSecondaryIDsList().isEmpty();
 	}
 
 	/**
 	 * Returns the list of IDs referenced in the file that were found to be secondary IDs.
 	 */
 	public Collection<String> getMigratedSecondaryIDsList() {
-		return this.secondaryIDs;
+		return this.resolver.getMigratedSecondaryIDsList();
 	}
 
 	public boolean didReplaceObsoleteTerms() {
-		return !this.replacedIDs.isEmpty();
+		return !this.resolver.getReplacedIDsList().isEmpty();
 	}
 
 	public Collection<String> getReplacedIDsList() {
-		return this.replacedIDs;
+		return this.resolver.getReplacedIDsList();
 	}
 
 	private void parseNeXML() {
@@ -150,6 +148,7 @@ public class NeXMLReader {
 	private void parseStandardCells(StandardCells standardCells) {
 		if (!(standardCells.getFormat() instanceof StandardFormat)) return;
 		final StandardFormat format = (StandardFormat)(standardCells.getFormat());
+		final List<PhenotypePayload> payloads = new ArrayList<PhenotypePayload>();
 		for (AbstractChar abstractChar : format.getCharArray()) {
 			if (!(abstractChar instanceof StandardChar)) continue;
 			final StandardChar standardChar = (StandardChar)abstractChar;
@@ -160,56 +159,30 @@ public class NeXMLReader {
 				newCharacter = new Character(standardChar.getId());
 			}
 			newCharacter.setLabel(standardChar.getLabel());
-			newCharacter.setComment(this.getComment(standardChar));
-			newCharacter.setFigure(this.getFigure(standardChar));
-			newCharacter.setDiscussion(this.getDiscussion(standardChar));
-			newCharacter.setDenotes(this.getDenotes(standardChar));
+			final Map<QName, List<Object>> charMetadata = NeXMLUtil.getMetadata(standardChar);
+			newCharacter.setComment(this.getComment(charMetadata));
+			newCharacter.setFigure(this.getFigure(charMetadata));
+			newCharacter.setDiscussion(this.getDiscussion(charMetadata));
+			newCharacter.setDenotes(this.getDenotes(charMetadata));
 			final AbstractStates states = NeXMLUtil.findOrCreateStates(format, newCharacter.getStatesNexmlID());
 			if (states instanceof StandardStates) {
 				for (AbstractState abstractState : states.getStateArray()) {
 					final State newState = new State(abstractState.getId());
 					newState.setSymbol(this.readSymbol(abstractState));
 					newState.setLabel(abstractState.getLabel());
-					newState.setComment(this.getComment(abstractState));
-					newState.setFigure(this.getFigure(abstractState));
+					final Map<QName, List<Object>> stateMetadata = NeXMLUtil.getMetadata(abstractState);
+					newState.setComment(this.getComment(stateMetadata));
+					newState.setFigure(this.getFigure(stateMetadata));
 					this.allStates.put(newState.getNexmlID(), newState);
-					final Object phenotypeObj = NeXMLUtil.getFirstMetadataValue(abstractState, NeXMLUtil.PHENOTYPE_PREDICATE);
+					final Object phenotypeObj = NeXMLUtil.getFirstMetadataValue(stateMetadata, NeXMLUtil.PHENOTYPE_PREDICATE);
 					if (phenotypeObj instanceof LiteralContents) {
 						final LiteralContents literal = (LiteralContents)phenotypeObj;
-						// we need to get the last PhenoXML element that is different from the first, due to a now fixed bug which caused 
-						// phenotypes to be appended in files, instead of replaced
-						// this will allow it to read in the latest work before destroying the unnecessary elements upon save
 						final NodeList phenotypeElements = literal.getElement().getElementsByTagNameNS(NeXMLUtil.PHENOXML_NAMESPACE, "phenotype");
-						boolean first = true;
-						List<Phenotype> firstPhenotypeList = null;
-						List<Phenotype> newestPhenotypeList = null;
+						final List<String> texts = new ArrayList<String>();
 						for (int i = 0; i < phenotypeElements.getLength(); i++) {
-							final Element phenoXML = (Element)(phenotypeElements.item(i));
-							try {
-								final PhenotypeDocument xmlPhen = org.bioontologies.obd.schema.pheno.PhenotypeDocument.Factory.parse(phenoXML);
-								final PhenoXMLAdapter adapter = new PhenoXMLAdapter(this.session);
-								final List<Phenotype> phenotypes = adapter.parsePhenotype(xmlPhen.getPhenotype());
-								if (first) {
-									first = false;
-									firstPhenotypeList = phenotypes;
-									newestPhenotypeList = phenotypes;
-								} else {
-									if (!phenotypes.equals(firstPhenotypeList)) {
-										newestPhenotypeList = phenotypes;
-									}
-								}
-								this.danglers.addAll(adapter.getDanglersList());
-								this.secondaryIDs.addAll(adapter.getMigratedSecondaryIDsList());
-								this.replacedIDs.addAll(adapter.getReplacedIDsList());
-							} catch (XmlException e) {
-								log().error("Failed to parse OBO phenotype", e);
-							}
+							texts.add(toXMLText(phenotypeElements.item(i)));
 						}
-						if (newestPhenotypeList != null) {
-							for (Phenotype phenotype : newestPhenotypeList) {
-								newState.addPhenotype(phenotype);
-							}
-						}   
+						payloads.add(new PhenotypePayload(newState, texts));
 					}
 					newCharacter.addState(newState);
 				}
@@ -222,6 +195,59 @@ public class NeXMLReader {
 			}
 			this.data.addCharacter(newCharacter);
 		}
+		this.decodePhenotypes(payloads);
+	}
+
+	/**
+	 * Decode the phenotypes of all states on the fork-join pool, then add them to their states in document order.
+	 * The payloads are text copied out of the document beforehand, since XMLBeans serializes all access to a
+	 * document's nodes and the workers would otherwise wait on one another.
+	 */
+	private void decodePhenotypes(List<PhenotypePayload> payloads) {
+		if (payloads.isEmpty()) return;
+		ForkJoinPool.commonPool().invoke(new DecodeTask(payloads, 0, payloads.size()));
+		for (PhenotypePayload payload : payloads) {
+			for (Phenotype phenotype : payload.phenotypes) {
+				payload.state.addPhenotype(phenotype);
+			}
+		}
+	}
+
+	private List<Phenotype> decodeNewestPhenotypes(List<String> phenotypeTexts) {
+		// we need to get the last PhenoXML element that is different from the first, due to a now fixed bug which caused 
+		// phenotypes to be appended in files, instead of replaced
+		// this will allow it to read in the latest work before destroying the unnecessary elements upon save
+		boolean first = true;
+		List<Phenotype> firstPhenotypeList = null;
+		List<Phenotype> newestPhenotypeList = Collections.emptyList();
+		for (String phenoXML : phenotypeTexts) {
+			try {
+				final PhenotypeDocument xmlPhen = PhenotypeDocument.Factory.parse(phenoXML);
+				final PhenoXMLAdapter adapter = new PhenoXMLAdapter(this.resolver);
+				final List<Phenotype> phenotypes = adapter.parsePhenotype(xmlPhen.getPhenotype());
+				if (first) {
+					first = false;
+					firstPhenotypeList = phenotypes;
+					newestPhenotypeList = phenotypes;
+				} else {
+					if (!phenotypes.equals(firstPhenotypeList)) {
+						newestPhenotypeList = phenotypes;
+					}
+				}
+			} catch (XmlException e) {
+				log().error("Failed to parse OBO phenotype", e);
+			}
+		}
+		return newestPhenotypeList;
+	}
+
+	private static String toXMLText(Node node) {
+		final XmlCursor cursor = XmlBeans.nodeToCursor(node);
+		try {
+			return cursor.xmlText();
+		} finally {
+			cursor.dispose();
+		}
 	}
 
 	private MultipleState createMultiState(AbstractUncertainStateSet set, MODE mode) {
@@ -290,9 +316,10 @@ public class NeXMLReader {
 	}
 
 	private void parseMetadata(Nexml nexml) {
-		final Object curatorsObj = NeXMLUtil.getFirstMetadataValue(nexml, NeXMLUtil.CURATORS_PREDICATE);
+		final Map<QName, List<Object>> metadata = NeXMLUtil.getMetadata(nexml);
+		final Object curatorsObj = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.CURATORS_PREDICATE);
 		this.data.setCurators(stringOrNull(curatorsObj));
-		final Object pubSourceObj = NeXMLUtil.getFirstMetadataValue(nexml, NeXMLUtil.PUBLICATION_SOURCE_PREDICATE);
+		final Object pubSourceObj = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.PUBLICATION_SOURCE_PREDICATE);
 		if (pubSourceObj instanceof Map<?,?>) {
 			@SuppressWarnings("unchecked")
 			final Map<QName, List<Object>> map = (Map<QName, List<Object>>)pubSourceObj;
@@ -309,7 +336,7 @@ public class NeXMLReader {
 				this.data.setPublicationURI(stringOrNull(NeXMLUtil.first(uriList)));
 			}
 		}
-		final Object pubNotesObj = NeXMLUtil.getFirstMetadataValue(nexml, NeXMLUtil.DC_DESCRIPTION_PREDICATE);
+		final Object pubNotesObj = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.DC_DESCRIPTION_PREDICATE);
 		this.data.setPublicationNotes(stringOrNull(pubNotesObj));
 	}
 
@@ -318,7 +345,8 @@ public class NeXMLReader {
 		for (org.nexml.schema_2009.Taxon xmlTaxon : taxa.getOtuArray()) {
 			final Taxon newTaxon = new Taxon(xmlTaxon.getId());
 			newTaxon.setPublicationName((xmlTaxon.getLabel() == null || xmlTaxon.getLabel().equals("")) ? null : xmlTaxon.getLabel());
-			final Object validNameObj = NeXMLUtil.getFirstMetadataValue(xmlTaxon, NeXMLUtil.VALID_NAME_PREDICATE);
+			final Map<QName, List<Object>> metadata = NeXMLUtil.getMetadata(xmlTaxon);
+			final Object validNameObj = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.VALID_NAME_PREDICATE);
 			if (validNameObj != null) {
 				try {
 					final String validNameID = NeXMLUtil.oboID(new URI(validNameObj.toString()));
@@ -329,10 +357,10 @@ public class NeXMLReader {
 					log().error("Value for taxon ID is not a valid URI", e);
 				}
 			}
-			newTaxon.setComment(this.getComment(xmlTaxon));
-			newTaxon.setFigure(this.getFigure(xmlTaxon));
-			newTaxon.setMatrixTaxonName(this.getMatrixTaxon(xmlTaxon));
-			final List<Object> specimens = NeXMLUtil.getMetadataValues(xmlTaxon, NeXMLUtil.SPECIMEN_PREDICATE);
+			newTaxon.setComment(this.getComment(metadata));
+			newTaxon.setFigure(this.getFigure(metadata));
+			newTaxon.setMatrixTaxonName(this.getMatrixTaxon(metadata));
+			final List<Object> specimens = NeXMLUtil.getMetadataValues(metadata, NeXMLUtil.SPECIMEN_PREDICATE);
 			for (Object specimenData : specimens) {
 				if (specimenData instanceof Map<?,?>) {
 					final Map<QName, List<Object>> map = (Map<QName, List<Object>>)specimenData;
@@ -365,18 +393,18 @@ public class NeXMLReader {
 		}
 	}
 
-	private String getComment(Annotated node) {
-		final Object comment = NeXMLUtil.getFirstMetadataValue(node, NeXMLUtil.COMMENT_PREDICATE);
+	private String getComment(Map<QName, List<Object>> metadata) {
+		final Object comment = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.COMMENT_PREDICATE);
 		return stringOrNull(comment);
 	}
 
-	private String getDiscussion(Annotated node) {
-		final Object comment = NeXMLUtil.getFirstMetadataValue(node, NeXMLUtil.DISCUSSION_PREDICATE);
+	private String getDiscussion(Map<QName, List<Object>> metadata) {
+		final Object comment = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.DISCUSSION_PREDICATE);
 		return stringOrNull(comment);
 	}
 	
-	private URI getDenotes(Annotated node) {
-		final String term = stringOrNull(NeXMLUtil.getFirstMetadataValue(node, NeXMLUtil.DENOTES_PREDICATE));
+	private URI getDenotes(Map<QName, List<Object>> metadata) {
+		final String term = stringOrNull(NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.DENOTES_PREDICATE));
 		if (term != null) {
 			return URI.create(term);
 		} else {
@@ -384,65 +412,18 @@ public class NeXMLReader {
 		}
 	}
 
-	private String getFigure(Annotated node) {
-		final Object figure = NeXMLUtil.getFirstMetadataValue(node, NeXMLUtil.FIGURE_PREDICATE);
+	private String getFigure(Map<QName, List<Object>> metadata) {
+		final Object figure = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.FIGURE_PREDICATE);
 		return stringOrNull(figure);
 	}
 
-	private String getMatrixTaxon(Annotated node) {
-		final Object matrixName = NeXMLUtil.getFirstMetadataValue(node, NeXMLUtil.MATRIX_NAME_PREDICATE);
+	private String getMatrixTaxon(Map<QName, List<Object>> metadata) {
+		final Object matrixName = NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.MATRIX_NAME_PREDICATE);
 		return stringOrNull(matrixName);
 	}
 
 	private OBOClass getTerm(String id) {
-		log().debug("Term id: " + id);
-		if (id.equals("http://purl.bioontology.org/ontology/provisional/d0267b99-ff52-4a4c-bd31-ff6dbf4dafcc")) {
-			log().debug("Provisional term");
-		}
-		final IdentifiedObject term = this.session.getObject(id);
-		if (term instanceof OBOClass) {
-			final OBOClass oboClass = (OBOClass)term;
-			if (oboClass.isObsolete()) {
-				if (!oboClass.getReplacedBy().isEmpty()) {
-					final ObsoletableObject replacement = oboClass.getReplacedBy().iterator().next();
-					if ((replacement instanceof OBOClass) && (!(replacement instanceof DanglingObject))) {
-						this.replacedIDs.add(id);
-						return (OBOClass)replacement;
-					} else {
-						return oboClass;
-					}
-				} else {
-					return oboClass;
-				}
-			} else {
-				return oboClass;	
-			}
-		} else {
-			final OBOClass altTerm = this.findTermByAltID(id);
-			if (altTerm != null) {
-				return altTerm;
-			} else {
-				log().warn("Term not found; creating dangler for " + id);
-				this.danglers.add(id);
-				final OBOClass dangler = new DanglingClassImpl(id.trim());
-				return dangler;
-			}
-		}
-	}
-
-	private OBOClass findTermByAltID(String id) {
-		log().debug("Called alt_id search");
-		final Collection<IdentifiedObject> terms = this.session.getObjects();
-		for (IdentifiedObject object : terms) {
-			if (object instanceof OBOClass) {
-				final OBOClass term = (OBOClass)object;
-				if (term.getSecondaryIDs().contains(id)) {
-					this.secondaryIDs.add(id);
-					return term;
-				}
-			}
-		}
-		return null;
+		return this.resolver.getTerm(id);
 	}
 
 	private String stringOrNull(Object obj) {
@@ -462,4 +443,49 @@ public class NeXMLReader {
 		return Logger.getLogger(this.getClass());
 	}
 
+	private static class PhenotypePayload {
+
+		private final State state;
+		private final List<String> texts;
+		private List<Phenotype> phenotypes;
+
+		public PhenotypePayload(State state, List<String> texts) {
+			this.state = state;
+			this.texts = texts;
+		}
+
+	}
+
+	/**
+	 * Decodes a range of phenotype payloads, splitting it between workers while it is large.  Terms are resolved
+	 * through the reader's resolver, which is shared by all workers so that each ID still resolves to one object.
+	 */
+	private class DecodeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private static final int PAYLOADS_PER_TASK = 16;
+		private final List<PhenotypePayload> payloads;
+		private final int start;
+		private final int end;
+
+		public DecodeTask(List<PhenotypePayload> payloads, int start, int end) {
+			this.payloads = payloads;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if ((this.end - this.start) <= PAYLOADS_PER_TASK) {
+				for (PhenotypePayload payload : this.payloads.subList(this.start, this.end)) {
+					payload.phenotypes = decodeNewestPhenotypes(payload.texts);
+				}
+			} else {
+				final int middle = (this.start + this.end) >>> 1;
+				invokeAll(new DecodeTask(this.payloads, this.start, middle), new DecodeTask(this.payloads, middle, this.end));
+			}
+		}
+
+	}
+
 }
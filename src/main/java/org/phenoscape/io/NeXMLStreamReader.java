@@ -0,0 +1,1061 @@
+package org.phenoscape.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+import org.obo.annotation.base.OBOUtil;
+import org.obo.annotation.base.OBOUtil.Differentium;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOSession;
+import org.phenoscape.io.NeXMLUtil.OBOURISyntaxException;
+import org.phenoscape.model.Association;
+import org.phenoscape.model.AssociationSupport;
+import org.phenoscape.model.Character;
+import org.phenoscape.model.DataSet;
+import org.phenoscape.model.MultipleState;
+import org.phenoscape.model.MultipleState.MODE;
+import org.phenoscape.model.Phenotype;
+import org.phenoscape.model.Specimen;
+import org.phenoscape.model.State;
+import org.phenoscape.model.Taxon;
+
+/**
+ * Reads a NeXML file in a single pass over its StAX events, building the DataSet directly instead of first parsing
+ * the whole file, and each embedded PhenoXML phenotype, into XMLBeans documents.  The DataSet, and the IDs reported
+ * as dangling, secondary or replaced, are the same as those from NeXMLReader.  Only what is needed later in the pass
+ * is kept: the otus blocks, until the taxa of the characters block are known, and the states of the characters block,
+ * until its chars refer to them.  The matrix is read one cell at a time.
+ * <p>
+ * Since no document is kept, parts of the file which the DataSet does not hold, such as trees or foreign metadata,
+ * cannot be written back out.  The reader notes whether it met any of these; if it did not, the file is complete and
+ * can be saved by writing the DataSet into a new document.  Otherwise use NeXMLReader, whose document keeps them.
+ */
+public class NeXMLStreamReader {
+
+	private static final String NEXML_NAMESPACE = "http://www.nexml.org/2009";
+	private static final Set<QName> NEXML_PREDICATES = predicates(NeXMLUtil.CURATORS_PREDICATE, NeXMLUtil.PUBLICATION_SOURCE_PREDICATE, NeXMLUtil.DC_DESCRIPTION_PREDICATE);
+	private static final Set<QName> OTU_PREDICATES = predicates(NeXMLUtil.VALID_NAME_PREDICATE, NeXMLUtil.SPECIMEN_PREDICATE, NeXMLUtil.COMMENT_PREDICATE, NeXMLUtil.FIGURE_PREDICATE, NeXMLUtil.MATRIX_NAME_PREDICATE);
+	private static final Set<QName> CHAR_PREDICATES = predicates(NeXMLUtil.DENOTES_PREDICATE, NeXMLUtil.COMMENT_PREDICATE, NeXMLUtil.FIGURE_PREDICATE, NeXMLUtil.DISCUSSION_PREDICATE);
+	private static final Set<QName> STATE_PREDICATES = predicates(NeXMLUtil.COMMENT_PREDICATE, NeXMLUtil.FIGURE_PREDICATE, NeXMLUtil.PHENOTYPE_PREDICATE);
+	private static final Set<QName> CELL_PREDICATES = predicates(NeXMLUtil.ENTAILED_BY_PREDICATE);
+	private final DataSet data = new DataSet();
+	private final TermResolver resolver;
+	private XMLStreamReader in;
+	private String charactersBlockID = UUID.randomUUID().toString();
+	private final Map<String, State> allStates = new HashMap<String, State>();
+	private final Map<String, List<Otu>> otusBlocks = new HashMap<String, List<Otu>>();
+	private boolean complete = true;
+
+	public NeXMLStreamReader(File aFile, OBOSession session) throws XMLStreamException, IOException {
+		this.resolver = new TermResolver(session);
+		final InputStream stream = new BufferedInputStream(new FileInputStream(aFile));
+		try {
+			this.parseNeXML(createInputFactory().createXMLStreamReader(stream));
+		} finally {
+			stream.close();
+		}
+	}
+
+	public NeXMLStreamReader(Reader aReader, OBOSession session) throws XMLStreamException {
+		this.resolver = new TermResolver(session);
+		this.parseNeXML(createInputFactory().createXMLStreamReader(aReader));
+	}
+
+	public DataSet getDataSet() {
+		return this.data;
+	}
+
+	public String getCharactersBlockID() {
+		return this.charactersBlockID;
+	}
+
+	/**
+	 * Returns true if the DataSet holds everything in the file that NeXMLWriter would keep from a template document,
+	 * so that the file can be saved from a new document without losing anything but generated IDs.
+	 */
+	public boolean isComplete() {
+		return this.complete;
+	}
+
+	/**
+	 * Returns true if the reader had to create dangling terms for referenced IDs not found in the OBOSession.
+	 */
+	public boolean didCreateDanglers() {
+		return !this.resolver.getDanglersList().isEmpty();
+	}
+
+	/**
+	 * Returns the list of IDs referenced in the file that were not found in the OBOSession.
+	 */
+	public Collection<String> getDanglersList() {
+		return this.resolver.getDanglersList();
+	}
+
+	/**
+	 * Returns true if the reader had to find any referenced terms via a secondary ID.
+	 */
+	public boolean didMigrateSecondaryIDs() {
+		return !this.resolver.getMigratedSecondaryIDsList().isEmpty();
+	}
+
+	/**
+	 * Returns the list of IDs referenced in the file that were found to be secondary IDs.
+	 */
+	public Collection<String> getMigratedSecondaryIDsList() {
+		return this.resolver.getMigratedSecondaryIDsList();
+	}
+
+	public boolean didReplaceObsoleteTerms() {
+		return !this.resolver.getReplacedIDsList().isEmpty();
+	}
+
+	public Collection<String> getReplacedIDsList() {
+		return this.resolver.getReplacedIDsList();
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	private void parseNeXML(XMLStreamReader reader) throws XMLStreamException {
+		this.in = reader;
+		try {
+			while (this.in.next() != XMLStreamConstants.START_ELEMENT) {
+				if (this.in.getEventType() == XMLStreamConstants.END_DOCUMENT) {
+					throw new XMLStreamException("Document has no root element");
+				}
+			}
+			if (!this.isNeXML("nexml")) {
+				throw new XMLStreamException("Root element is not a NeXML 2009 nexml element: " + this.in.getName(), this.in.getLocation());
+			}
+			this.checkAttributes("version", "generator", "xsi:schemaLocation");
+			final Map<QName, List<Object>> metadata = new HashMap<QName, List<Object>>();
+			boolean foundCells = false;
+			String otusID = null;
+			while (this.nextChild()) {
+				if (this.isNeXML("meta")) {
+					this.readMeta(metadata);
+				} else if (this.isNeXML("otus")) {
+					this.checkAttributes("id");
+					this.readOtus();
+				} else if (this.isNeXML("characters") && !foundCells && this.isType("StandardCells")) {
+					this.checkAttributes("id", "otus", "xsi:type");
+					foundCells = true;
+					this.charactersBlockID = this.attribute("id");
+					otusID = this.attribute("otus");
+					this.readStandardCells();
+				} else if (this.isNeXML("trees")) {
+					// Phenex does not read trees, so only an empty trees block is complete
+					this.checkAttributes("id", "otus");
+					this.skipChildren();
+				} else {
+					this.skipUnknownElement();
+				}
+			}
+			this.checkPredicates(metadata, NEXML_PREDICATES);
+			this.parseMetadata(metadata);
+			if ((this.otusBlocks.size() > 1) || (!this.otusBlocks.isEmpty() && !this.otusBlocks.containsKey(otusID))) {
+				this.incomplete("otus block not used by the characters block");
+			}
+			if (foundCells) {
+				final List<Otu> otus = this.otusBlocks.get(otusID);
+				this.parseTaxa((otus != null) ? otus : Collections.<Otu>emptyList());
+			}
+		} finally {
+			this.in.close();
+		}
+	}
+
+	private void readOtus() throws XMLStreamException {
+		final String id = this.attribute("id");
+		final List<Otu> otus = new ArrayList<Otu>();
+		while (this.nextChild()) {
+			if (this.isNeXML("otu")) {
+				this.checkAttributes("id", "label", "about");
+				final Otu otu = new Otu(this.attribute("id"), this.attribute("label"));
+				this.readMetadataOnly(otu.metadata);
+				this.checkPredicates(otu.metadata, OTU_PREDICATES);
+				otus.add(otu);
+			} else {
+				this.skipUnknownElement();
+			}
+		}
+		// as in NeXMLUtil.findOrCreateTaxa, the first block with an ID is used
+		if ((id != null) && !this.otusBlocks.containsKey(id)) {
+			this.otusBlocks.put(id, otus);
+		} else {
+			this.incomplete("otus block without a unique ID");
+		}
+	}
+
+	private void readStandardCells() throws XMLStreamException {
+		boolean readFormat = false;
+		boolean readMatrix = false;
+		while (this.nextChild()) {
+			if (this.isNeXML("format") && !readFormat) {
+				this.checkAttributes();
+				readFormat = true;
+				this.readFormat();
+			} else if (this.isNeXML("matrix") && !readMatrix) {
+				this.checkAttributes();
+				readMatrix = true;
+				this.readMatrix();
+			} else {
+				this.skipUnknownElement();
+			}
+		}
+	}
+
+	private void readFormat() throws XMLStreamException {
+		final Map<String, StatesBlock> statesBlocks = new HashMap<String, StatesBlock>();
+		while (this.nextChild()) {
+			if (this.isNeXML("states")) {
+				this.checkAttributes("id");
+				final StatesBlock states = this.readStates();
+				// as in NeXMLUtil.findOrCreateStates, the first block with an ID is used
+				if ((states.id != null) && !statesBlocks.containsKey(states.id)) {
+					statesBlocks.put(states.id, states);
+				}
+			} else if (this.isNeXML("char")) {
+				this.checkAttributes("id", "label", "about", "states");
+				this.readChar(statesBlocks);
+			} else {
+				this.skipUnknownElement();
+			}
+		}
+	}
+
+	private StatesBlock readStates() throws XMLStreamException {
+		final StatesBlock states = new StatesBlock(this.attribute("id"));
+		while (this.nextChild()) {
+			if (this.isNeXML("state")) {
+				this.checkAttributes("id", "label", "about", "symbol");
+				final StateElement state = new StateElement(this.attribute("id"), this.attribute("symbol"), this.attribute("label"));
+				this.readMetadataOnly(state.metadata);
+				this.checkPredicates(state.metadata, STATE_PREDICATES);
+				states.states.add(state);
+			} else if (this.isNeXML("uncertain_state_set")) {
+				states.uncertainSets.add(this.readStateSet());
+			} else if (this.isNeXML("polymorphic_state_set")) {
+				states.polymorphicSets.add(this.readStateSet());
+			} else {
+				this.skipUnknownElement();
+			}
+		}
+		return states;
+	}
+
+	private StateSetElement readStateSet() throws XMLStreamException {
+		this.checkAttributes("id", "symbol");
+		final StateSetElement set = new StateSetElement(this.attribute("id"));
+		while (this.nextChild()) {
+			if (this.isNeXML("member")) {
+				this.checkAttributes("state");
+				set.memberIDs.add(this.attribute("state"));
+				this.skipChildren();
+			} else {
+				this.skipUnknownElement();
+			}
+		}
+		return set;
+	}
+
+	private void readChar(Map<String, StatesBlock> statesBlocks) throws XMLStreamException {
+		final String id = this.attribute("id");
+		final String statesID = this.attribute("states");
+		final String label = this.attribute("label");
+		final Map<QName, List<Object>> metadata = new HashMap<QName, List<Object>>();
+		this.readMetadataOnly(metadata);
+		this.checkPredicates(metadata, CHAR_PREDICATES);
+		final Character newCharacter;
+		if (statesID != null) {
+			newCharacter = new Character(id, statesID);
+		} else {
+			newCharacter = new Character(id);
+		}
+		newCharacter.setLabel(label);
+		newCharacter.setComment(this.getComment(metadata));
+		newCharacter.setFigure(this.getFigure(metadata));
+		newCharacter.setDiscussion(this.getDiscussion(metadata));
+		newCharacter.setDenotes(this.getDenotes(metadata));
+		final StatesBlock states = statesBlocks.get(newCharacter.getStatesNexmlID());
+		if (states != null) {
+			for (StateElement stateElement : states.states) {
+				final State newState = new State(stateElement.id);
+				newState.setSymbol(stateElement.symbol);
+				newState.setLabel(stateElement.label);
+				newState.setComment(this.getComment(stateElement.metadata));
+				newState.setFigure(this.getFigure(stateElement.metadata));
+				this.allStates.put(newState.getNexmlID(), newState);
+				final Object phenotypeObj = firstValue(stateElement.metadata, NeXMLUtil.PHENOTYPE_PREDICATE);
+				if (phenotypeObj instanceof LiteralText) {
+					// as NeXMLReader does, use the last phenotype element which differs from the first, to recover from
+					// a since fixed bug which appended phenotypes to files instead of replacing them
+					boolean first = true;
+					List<Phenotype> firstPhenotypeList = null;
+					List<Phenotype> newestPhenotypeList = null;
+					for (List<PhenotypeCharacterElement> phenotypeElement : ((LiteralText)phenotypeObj).phenotypes) {
+						final List<Phenotype> phenotypes = this.createPhenotypes(phenotypeElement);
+						if (first) {
+							first = false;
+							firstPhenotypeList = phenotypes;
+							newestPhenotypeList = phenotypes;
+						} else if (!phenotypes.equals(firstPhenotypeList)) {
+							newestPhenotypeList = phenotypes;
+						}
+					}
+					if (newestPhenotypeList != null) {
+						for (Phenotype phenotype : newestPhenotypeList) {
+							newState.addPhenotype(phenotype);
+						}
+					}
+				}
+				newCharacter.addState(newState);
+			}
+			for (StateSetElement set : states.uncertainSets) {
+				this.createMultiState(set, MODE.UNCERTAIN);
+			}
+			for (StateSetElement set : states.polymorphicSets) {
+				this.createMultiState(set, MODE.POLYMORPHIC);
+			}
+		}
+		this.data.addCharacter(newCharacter);
+	}
+
+	private MultipleState createMultiState(StateSetElement set, MODE mode) {
+		final Set<State> memberStates = new HashSet<State>();
+		for (String memberID : set.memberIDs) {
+			memberStates.add(this.allStates.get(memberID));
+		}
+		final MultipleState state = new MultipleState(set.id, memberStates, mode);
+		this.allStates.put(state.getNexmlID(), state);
+		return state;
+	}
+
+	private void readMatrix() throws XMLStreamException {
+		final Map<String, Map<String, State>> matrixMap = new HashMap<String, Map<String, State>>();
+		while (this.nextChild()) {
+			if (this.isNeXML("row")) {
+				this.checkAttributes("id", "otu");
+				final String otuID = this.attribute("otu");
+				final Map<String, State> currentTaxonMap = new HashMap<String, State>();
+				if (otuID != null) {
+					matrixMap.put(otuID, currentTaxonMap);
+				}
+				while (this.nextChild()) {
+					if (this.isNeXML("cell") && (otuID != null)) {
+						this.checkAttributes("char", "state");
+						this.readCell(otuID, currentTaxonMap);
+					} else {
+						this.skipUnknownElement();
+					}
+				}
+			} else {
+				this.skipUnknownElement();
+			}
+		}
+		this.data.setMatrixData(matrixMap);
+	}
+
+	private void readCell(String otuID, Map<String, State> currentTaxonMap) throws XMLStreamException {
+		final String characterID = this.attribute("char");
+		final String stateID = this.attribute("state");
+		final Map<QName, List<Object>> metadata = new HashMap<QName, List<Object>>();
+		this.readMetadataOnly(metadata);
+		this.checkPredicates(metadata, CELL_PREDICATES);
+		final State state = this.allStates.get(stateID);
+		if (characterID != null && state != null) {
+			currentTaxonMap.put(characterID, state);
+			for (Object supportMeta : values(metadata, NeXMLUtil.ENTAILED_BY_PREDICATE)) {
+				if (supportMeta instanceof Map<?,?>) {
+					@SuppressWarnings("unchecked")
+					final Map<QName, List<Object>> map = (Map<QName, List<Object>>)supportMeta;
+					if (map.containsKey(NeXMLUtil.DC_IDENTIFIER) && map.containsKey(NeXMLUtil.DC_DESCRIPTION_PREDICATE) && map.containsKey(NeXMLUtil.DC_SOURCE_PREDICATE)) {
+						final String identifier = stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.DC_IDENTIFIER)));
+						final String description = stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.DC_DESCRIPTION_PREDICATE)));
+						final String source = stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.DC_SOURCE_PREDICATE)));
+						final boolean direct = Boolean.parseBoolean(stringOrNull(firstValue(map, NeXMLUtil.IS_DIRECT_PREDICATE)));
+						final AssociationSupport associationSupport = new AssociationSupport(description, source, direct);
+						final Association association = new Association(otuID, characterID, identifier);
+						Set<AssociationSupport> supports = this.data.getAssociationSupport().get(association);
+						if (supports == null) {
+							supports = new HashSet<AssociationSupport>();
+							this.data.getAssociationSupport().put(association, supports);
+						}
+						supports.add(associationSupport);
+					}
+				}
+			}
+		}
+	}
+
+	private void parseMetadata(Map<QName, List<Object>> metadata) {
+		this.data.setCurators(stringOrNull(firstValue(metadata, NeXMLUtil.CURATORS_PREDICATE)));
+		final Object pubSourceObj = firstValue(metadata, NeXMLUtil.PUBLICATION_SOURCE_PREDICATE);
+		if (pubSourceObj instanceof Map<?,?>) {
+			@SuppressWarnings("unchecked")
+			final Map<QName, List<Object>> map = (Map<QName, List<Object>>)pubSourceObj;
+			if (map.containsKey(NeXMLUtil.PUBLICATION_LABEL_PREDICATE)) {
+				this.data.setPublicationLabel(stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.PUBLICATION_LABEL_PREDICATE))));
+			}
+			if (map.containsKey(NeXMLUtil.PUBLICATION_CITATION_PREDICATE)) {
+				this.data.setPublicationCitation(stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.PUBLICATION_CITATION_PREDICATE))));
+			}
+			if (map.containsKey(NeXMLUtil.PUBLICATION_URI_PREDICATE)) {
+				this.data.setPublicationURI(stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.PUBLICATION_URI_PREDICATE))));
+			}
+		}
+		this.data.setPublicationNotes(stringOrNull(firstValue(metadata, NeXMLUtil.DC_DESCRIPTION_PREDICATE)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void parseTaxa(List<Otu> otus) {
+		for (Otu otu : otus) {
+			final Taxon newTaxon = new Taxon(otu.id);
+			newTaxon.setPublicationName((otu.label == null || otu.label.equals("")) ? null : otu.label);
+			final Object validNameObj = firstValue(otu.metadata, NeXMLUtil.VALID_NAME_PREDICATE);
+			if (validNameObj != null) {
+				try {
+					final String validNameID = NeXMLUtil.oboID(new URI(validNameObj.toString()));
+					newTaxon.setValidName(this.resolver.getTerm(validNameID));
+				} catch (OBOURISyntaxException e) {
+					log().error("Value for taxon ID is not a valid OBO URI", e);
+				} catch (URISyntaxException e) {
+					log().error("Value for taxon ID is not a valid URI", e);
+				}
+			}
+			newTaxon.setComment(this.getComment(otu.metadata));
+			newTaxon.setFigure(this.getFigure(otu.metadata));
+			newTaxon.setMatrixTaxonName(stringOrNull(firstValue(otu.metadata, NeXMLUtil.MATRIX_NAME_PREDICATE)));
+			for (Object specimenData : values(otu.metadata, NeXMLUtil.SPECIMEN_PREDICATE)) {
+				if (specimenData instanceof Map<?,?>) {
+					final Map<QName, List<Object>> map = (Map<QName, List<Object>>)specimenData;
+					final Specimen newSpecimen = newTaxon.newSpecimen();
+					if (map.containsKey(NeXMLUtil.COLLECTION_PREDICATE)) {
+						try {
+							final String collectionIDURI = stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.COLLECTION_PREDICATE)));
+							if (collectionIDURI != null) {
+								final String collectionID = NeXMLUtil.oboID(new URI(collectionIDURI));
+								newSpecimen.setCollectionCode(this.resolver.getTerm(collectionID));
+							}
+						} catch (OBOURISyntaxException e) {
+							log().error("Value for collection ID is not a valid OBO URI", e);
+						} catch (URISyntaxException e) {
+							log().error("Value for collection ID is not a valid URI", e);
+						}
+					}
+					if (map.containsKey(NeXMLUtil.ACCESSION_PREDICATE)) {
+						newSpecimen.setCatalogID(stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.ACCESSION_PREDICATE))));
+					}
+					if (map.containsKey(NeXMLUtil.COMMENT_PREDICATE)) {
+						newSpecimen.setComment(stringOrNull(NeXMLUtil.first(map.get(NeXMLUtil.COMMENT_PREDICATE))));
+					}
+				}
+			}
+			this.data.addTaxon(newTaxon);
+		}
+	}
+
+	private String getComment(Map<QName, List<Object>> metadata) {
+		return stringOrNull(firstValue(metadata, NeXMLUtil.COMMENT_PREDICATE));
+	}
+
+	private String getDiscussion(Map<QName, List<Object>> metadata) {
+		return stringOrNull(firstValue(metadata, NeXMLUtil.DISCUSSION_PREDICATE));
+	}
+
+	private URI getDenotes(Map<QName, List<Object>> metadata) {
+		final String term = stringOrNull(firstValue(metadata, NeXMLUtil.DENOTES_PREDICATE));
+		if (term != null) {
+			return URI.create(term);
+		} else {
+			return null;
+		}
+	}
+
+	private String getFigure(Map<QName, List<Object>> metadata) {
+		return stringOrNull(firstValue(metadata, NeXMLUtil.FIGURE_PREDICATE));
+	}
+
+	private List<Phenotype> createPhenotypes(List<PhenotypeCharacterElement> phenotypeCharacters) {
+		final List<Phenotype> phenotypes = new ArrayList<Phenotype>();
+		for (PhenotypeCharacterElement pc : phenotypeCharacters) {
+			final Phenotype newPhenotype = new Phenotype();
+			if (pc.entity != null) {
+				newPhenotype.setEntity(this.getTerm(pc.entity));
+			}
+			if (pc.hasQuality) {
+				if (pc.quality != null) {
+					newPhenotype.setQuality(this.getTerm(pc.quality));
+				}
+				if (pc.relatedEntity != null) {
+					newPhenotype.setRelatedEntity(this.getTerm(pc.relatedEntity));
+				}
+				if (pc.count != null) {
+					newPhenotype.setCount(pc.count);
+				}
+				if (pc.measurement != null) {
+					newPhenotype.setMeasurement(pc.measurement);
+					if (pc.unit != null) {
+						newPhenotype.setUnit(this.getTerm(pc.unit));
+					}
+				}
+			}
+			if (pc.description != null) {
+				newPhenotype.setComment(pc.description);
+			}
+			phenotypes.add(newPhenotype);
+		}
+		return phenotypes;
+	}
+
+	private OBOClass getTerm(TyperefElement typeref) {
+		final OBOClass genus = this.resolver.getTerm(typeref.about);
+		if (typeref.qualifiers.isEmpty()) {
+			return genus;
+		}
+		final List<Differentium> differentia = new ArrayList<Differentium>();
+		for (QualifierElement qualifier : typeref.qualifiers) {
+			final Differentium differentium = new Differentium();
+			differentium.setRelation(this.resolver.getRelation(qualifier.relation));
+			differentium.setTerm(this.getTerm(qualifier.filler));
+			differentia.add(differentium);
+		}
+		return OBOUtil.createPostComposition(genus, differentia);
+	}
+
+	/**
+	 * Read the contents of a NeXML meta element into the map of metadata values of the element it annotates.  Values
+	 * are kept as NeXMLUtil.getMetadataValues returns them, except that the contents of a literal are a LiteralText.
+	 * NeXMLWriter replaces the metadata it knows as a whole, so only predicates matter for completeness.
+	 */
+	private void readMeta(Map<QName, List<Object>> metadata) throws XMLStreamException {
+		if (this.isType("ResourceMeta")) {
+			final QName rel = this.qNameAttribute("rel");
+			final String href = this.attribute("href");
+			final Map<QName, List<Object>> nested = new HashMap<QName, List<Object>>();
+			boolean hasNested = false;
+			while (this.nextChild()) {
+				if (this.isNeXML("meta")) {
+					hasNested = true;
+					this.readMeta(nested);
+				} else {
+					this.skipElement();
+				}
+			}
+			if (rel == null) {
+				this.incomplete("meta without a predicate");
+			} else {
+				if (href != null) {
+					addValue(metadata, rel, href);
+				}
+				if (hasNested) {
+					addValue(metadata, rel, nested);
+				}
+			}
+		} else if (this.isType("LiteralMeta")) {
+			final QName property = this.qNameAttribute("property");
+			final String content = this.attribute("content");
+			final LiteralText literal = this.readLiteral(NeXMLUtil.PHENOTYPE_PREDICATE.equals(property));
+			if (property == null) {
+				this.incomplete("meta without a predicate");
+			} else {
+				if (content != null) {
+					addValue(metadata, property, content);
+				}
+				if (literal != null) {
+					addValue(metadata, property, literal);
+				}
+			}
+		} else {
+			this.skipUnknownElement();
+		}
+	}
+
+	/**
+	 * Read the meta children of the current element, skipping any other children.
+	 */
+	private void readMetadataOnly(Map<QName, List<Object>> metadata) throws XMLStreamException {
+		while (this.nextChild()) {
+			if (this.isNeXML("meta")) {
+				this.readMeta(metadata);
+			} else {
+				this.skipUnknownElement();
+			}
+		}
+	}
+
+	/**
+	 * @return The text of the current literal meta element, or null if it has no content at all.
+	 */
+	private LiteralText readLiteral(boolean readPhenotypes) throws XMLStreamException {
+		final StringBuffer text = new StringBuffer();
+		final List<List<PhenotypeCharacterElement>> phenotypes = new ArrayList<List<PhenotypeCharacterElement>>();
+		boolean hasContent = false;
+		int depth = 0;
+		while (true) {
+			final int event = this.in.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == 0) {
+					break;
+				}
+				depth--;
+				continue;
+			}
+			hasContent = true;
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (readPhenotypes && this.isPhenoXML("phenotype")) {
+					phenotypes.add(this.readPhenotype());
+				} else {
+					depth++;
+				}
+			} else if ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA) || (event == XMLStreamConstants.SPACE)) {
+				text.append(this.in.getText());
+			}
+		}
+		return hasContent ? new LiteralText(text.toString(), phenotypes) : null;
+	}
+
+	private List<PhenotypeCharacterElement> readPhenotype() throws XMLStreamException {
+		final List<PhenotypeCharacterElement> characters = new ArrayList<PhenotypeCharacterElement>();
+		while (this.nextChild()) {
+			if (this.isPhenoXML("phenotype_character")) {
+				characters.add(this.readPhenotypeCharacter());
+			} else {
+				this.skipElement();
+			}
+		}
+		return characters;
+	}
+
+	private PhenotypeCharacterElement readPhenotypeCharacter() throws XMLStreamException {
+		final PhenotypeCharacterElement pc = new PhenotypeCharacterElement();
+		boolean readBearer = false;
+		boolean readDescription = false;
+		while (this.nextChild()) {
+			if (this.isPhenoXML("bearer") && !readBearer) {
+				readBearer = true;
+				pc.entity = this.readFirstTyperef();
+			} else if (this.isPhenoXML("quality") && !pc.hasQuality) {
+				// we only load the first quality for now
+				pc.hasQuality = true;
+				this.readQuality(pc);
+			} else if (this.isPhenoXML("description") && !readDescription) {
+				readDescription = true;
+				pc.description = this.readText();
+			} else {
+				this.skipElement();
+			}
+		}
+		return pc;
+	}
+
+	private void readQuality(PhenotypeCharacterElement pc) throws XMLStreamException {
+		final String count = this.attribute("count");
+		if (count != null) {
+			try {
+				pc.count = new BigInteger(count.trim()).intValue();
+			} catch (NumberFormatException e) {
+				log().error("Quality count is not an integer: " + count);
+			}
+		}
+		boolean readTyperef = false;
+		boolean readRelatedEntity = false;
+		boolean readMeasurement = false;
+		while (this.nextChild()) {
+			if (this.isPhenoXML("typeref") && !readTyperef) {
+				readTyperef = true;
+				pc.quality = this.readTyperef();
+			} else if (this.isPhenoXML("related_entity") && !readRelatedEntity) {
+				readRelatedEntity = true;
+				pc.relatedEntity = this.readFirstTyperef();
+			} else if (this.isPhenoXML("measurement") && !readMeasurement) {
+				readMeasurement = true;
+				final String value = this.attribute("value");
+				pc.measurement = 0.0f;
+				if (value != null) {
+					try {
+						pc.measurement = Float.parseFloat(value.trim());
+					} catch (NumberFormatException e) {
+						log().error("Measurement value is not a number: " + value);
+					}
+				}
+				while (this.nextChild()) {
+					if (this.isPhenoXML("unit") && (pc.unit == null)) {
+						pc.unit = this.readFirstTyperef();
+					} else {
+						this.skipElement();
+					}
+				}
+			} else {
+				this.skipElement();
+			}
+		}
+	}
+
+	/**
+	 * @return The first typeref child of the current element, or null if there is none.
+	 */
+	private TyperefElement readFirstTyperef() throws XMLStreamException {
+		TyperefElement typeref = null;
+		while (this.nextChild()) {
+			if (this.isPhenoXML("typeref") && (typeref == null)) {
+				typeref = this.readTyperef();
+			} else {
+				this.skipElement();
+			}
+		}
+		return typeref;
+	}
+
+	private TyperefElement readTyperef() throws XMLStreamException {
+		final TyperefElement typeref = new TyperefElement(this.attribute("about"));
+		while (this.nextChild()) {
+			if (this.isPhenoXML("qualifier")) {
+				final String relation = this.attribute("relation");
+				TyperefElement filler = null;
+				while (this.nextChild()) {
+					if (this.isPhenoXML("holds_in_relation_to") && (filler == null)) {
+						filler = this.readFirstTyperef();
+					} else {
+						this.skipElement();
+					}
+				}
+				if ((relation != null) && (filler != null)) {
+					typeref.qualifiers.add(new QualifierElement(relation, filler));
+				}
+			} else {
+				this.skipElement();
+			}
+		}
+		return typeref;
+	}
+
+	/**
+	 * @return All the text within the current element.
+	 */
+	private String readText() throws XMLStreamException {
+		final StringBuffer text = new StringBuffer();
+		int depth = 0;
+		while (true) {
+			final int event = this.in.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == 0) {
+					return text.toString();
+				}
+				depth--;
+			} else if ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA) || (event == XMLStreamConstants.SPACE)) {
+				text.append(this.in.getText());
+			}
+		}
+	}
+
+	/**
+	 * Move to the next child element of the current element.
+	 * @return False if the current element has no more children, in which case the reader is at its end tag.
+	 */
+	private boolean nextChild() throws XMLStreamException {
+		while (true) {
+			final int event = this.in.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Move to the end tag of the current element, skipping all its contents.
+	 */
+	private void skipElement() throws XMLStreamException {
+		int depth = 0;
+		while (true) {
+			final int event = this.in.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == 0) {
+					return;
+				}
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Skip an element which Phenex does not read, noting that the file is not complete.
+	 */
+	private void skipUnknownElement() throws XMLStreamException {
+		this.incomplete("element " + this.in.getName());
+		this.skipElement();
+	}
+
+	/**
+	 * Skip the children of an element which should have none, noting that the file is not complete if it has any.
+	 */
+	private void skipChildren() throws XMLStreamException {
+		while (this.nextChild()) {
+			this.skipUnknownElement();
+		}
+	}
+
+	/**
+	 * Note that the file is not complete if the current element has an attribute not among those named, where an
+	 * attribute in the XML Schema instance namespace is named with the prefix "xsi:".
+	 */
+	private void checkAttributes(String... names) {
+		final List<String> known = Arrays.asList(names);
+		for (int i = 0; i < this.in.getAttributeCount(); i++) {
+			final String namespace = this.in.getAttributeNamespace(i);
+			final String name;
+			if ((namespace == null) || namespace.equals(XMLConstants.NULL_NS_URI)) {
+				name = this.in.getAttributeLocalName(i);
+			} else if (namespace.equals(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI)) {
+				name = "xsi:" + this.in.getAttributeLocalName(i);
+			} else {
+				name = null;
+			}
+			if (!known.contains(name)) {
+				this.incomplete("attribute " + this.in.getAttributeName(i) + " of " + this.in.getName());
+			}
+		}
+	}
+
+	private void checkPredicates(Map<QName, List<Object>> metadata, Set<QName> known) {
+		for (QName predicate : metadata.keySet()) {
+			if (!known.contains(predicate)) {
+				this.incomplete("metadata " + predicate);
+			}
+		}
+	}
+
+	private void incomplete(String reason) {
+		if (this.complete) {
+			log().debug("File has content which will not be kept: " + reason);
+		}
+		this.complete = false;
+	}
+
+	private boolean isNeXML(String localName) {
+		return NEXML_NAMESPACE.equals(this.in.getNamespaceURI()) && localName.equals(this.in.getLocalName());
+	}
+
+	private boolean isPhenoXML(String localName) {
+		return NeXMLUtil.PHENOXML_NAMESPACE.equals(this.in.getNamespaceURI()) && localName.equals(this.in.getLocalName());
+	}
+
+	/**
+	 * @return Whether the current element's xsi:type is the given NeXML type.
+	 */
+	private boolean isType(String localName) {
+		final String type = this.in.getAttributeValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "type");
+		final QName typeName = (type != null) ? this.resolveQName(type) : null;
+		return (typeName != null) && NEXML_NAMESPACE.equals(typeName.getNamespaceURI()) && localName.equals(typeName.getLocalPart());
+	}
+
+	private String attribute(String localName) {
+		return this.in.getAttributeValue(null, localName);
+	}
+
+	private QName qNameAttribute(String localName) {
+		final String value = this.attribute(localName);
+		return (value != null) ? this.resolveQName(value) : null;
+	}
+
+	private QName resolveQName(String prefixedName) {
+		final String name = prefixedName.trim();
+		final int colon = name.indexOf(':');
+		final String prefix = (colon < 0) ? XMLConstants.DEFAULT_NS_PREFIX : name.substring(0, colon);
+		final String namespace = this.in.getNamespaceURI(prefix);
+		if ((namespace == null) && (colon >= 0)) {
+			log().error("Undeclared namespace prefix: " + name);
+			return null;
+		}
+		return new QName((namespace != null) ? namespace : XMLConstants.NULL_NS_URI, name.substring(colon + 1), prefix);
+	}
+
+	private static Set<QName> predicates(QName... predicates) {
+		return Collections.unmodifiableSet(new HashSet<QName>(Arrays.asList(predicates)));
+	}
+
+	private static void addValue(Map<QName, List<Object>> metadata, QName predicate, Object value) {
+		List<Object> values = metadata.get(predicate);
+		if (values == null) {
+			values = new ArrayList<Object>();
+			metadata.put(predicate, values);
+		}
+		values.add(value);
+	}
+
+	private static List<Object> values(Map<QName, List<Object>> metadata, QName predicate) {
+		final List<Object> values = metadata.get(predicate);
+		return (values != null) ? values : Collections.emptyList();
+	}
+
+	private static Object firstValue(Map<QName, List<Object>> metadata, QName predicate) {
+		final List<Object> values = metadata.get(predicate);
+		return (values != null) ? NeXMLUtil.first(values) : null;
+	}
+
+	private static String stringOrNull(Object obj) {
+		if (obj == null) {
+			return null;
+		} else {
+			final String string = obj.toString();
+			if (string.trim().length() < 1) {
+				return null;
+			} else {
+				return string;
+			}
+		}
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+	/**
+	 * The contents of a literal meta element: its text, and its PhenoXML phenotypes if it describes a phenotype.
+	 */
+	private static class LiteralText {
+
+		private final String text;
+		private final List<List<PhenotypeCharacterElement>> phenotypes;
+
+		public LiteralText(String text, List<List<PhenotypeCharacterElement>> phenotypes) {
+			this.text = text;
+			this.phenotypes = phenotypes;
+		}
+
+		@Override
+		public String toString() {
+			return this.text;
+		}
+
+	}
+
+	private static class Otu {
+
+		private final String id;
+		private final String label;
+		private final Map<QName, List<Object>> metadata = new HashMap<QName, List<Object>>();
+
+		public Otu(String id, String label) {
+			this.id = id;
+			this.label = label;
+		}
+
+	}
+
+	private static class StatesBlock {
+
+		private final String id;
+		private final List<StateElement> states = new ArrayList<StateElement>();
+		private final List<StateSetElement> uncertainSets = new ArrayList<StateSetElement>();
+		private final List<StateSetElement> polymorphicSets = new ArrayList<StateSetElement>();
+
+		public StatesBlock(String id) {
+			this.id = id;
+		}
+
+	}
+
+	private static class StateElement {
+
+		private final String id;
+		private final String symbol;
+		private final String label;
+		private final Map<QName, List<Object>> metadata = new HashMap<QName, List<Object>>();
+
+		public StateElement(String id, String symbol, String label) {
+			this.id = id;
+			this.symbol = symbol;
+			this.label = label;
+		}
+
+	}
+
+	private static class StateSetElement {
+
+		private final String id;
+		private final List<String> memberIDs = new ArrayList<String>();
+
+		public StateSetElement(String id) {
+			this.id = id;
+		}
+
+	}
+
+	/**
+	 * The parts of a PhenoXML phenotype_character which Phenex reads, with terms not yet resolved.
+	 */
+	private static class PhenotypeCharacterElement {
+
+		private TyperefElement entity;
+		private boolean hasQuality = false;
+		private TyperefElement quality;
+		private TyperefElement relatedEntity;
+		private Integer count;
+		private Float measurement;
+		private TyperefElement unit;
+		private String description;
+
+	}
+
+	private static class TyperefElement {
+
+		private final String about;
+		private final List<QualifierElement> qualifiers = new ArrayList<QualifierElement>();
+
+		public TyperefElement(String about) {
+			this.about = about;
+		}
+
+	}
+
+	private static class QualifierElement {
+
+		private final String relation;
+		private final TyperefElement filler;
+
+		public QualifierElement(String relation, TyperefElement filler) {
+			this.relation = relation;
+			this.filler = filler;
+		}
+
+	}
+
+}
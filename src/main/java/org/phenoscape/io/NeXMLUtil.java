@@ -4,6 +4,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -132,28 +133,11 @@ public class NeXMLUtil {
     }
 
     public static List<Meta> findMetadata(Annotatable node, QName predicate) {
-        final List<Meta> metas = new ArrayList<Meta>();
-        for (Meta meta : node.getMetaArray()) {
-            if (meta instanceof ResourceMeta) {
-                if (((ResourceMeta)meta).getRel().equals(predicate)) {
-                    metas.add(meta);
-                }
-            } else if (meta instanceof LiteralMeta) {
-                if (((LiteralMeta)meta).getProperty().equals(predicate)) {
-                    metas.add(meta);
-                }
-            }
-        }
-        return metas;
+        return new ArrayList<Meta>(node.getMetas(predicate));
     }
 
     public static Meta findFirstMetadata(Annotatable node, QName predicate) {
-        final List<Meta> metas = findMetadata(node, predicate);
-        if (metas.isEmpty()) {
-            return null;
-        } else {
-            return metas.get(0);
-        }
+        return first(node.getMetas(predicate));
     }
     
     public static void addMetadata(Annotatable node, QName predicate, String value) {
@@ -161,6 +145,7 @@ public class NeXMLUtil {
         final Meta tempMeta = node.addNewMeta();
         final LiteralMeta literalMeta = (LiteralMeta)(tempMeta.changeType(LiteralMeta.type));
         literalMeta.setProperty(predicate);
+        node.indexMeta(literalMeta);
         setTextContent((Element)(literalMeta.getDomNode()), value);
     }
   
@@ -184,6 +169,7 @@ public class NeXMLUtil {
             literalMeta = (LiteralMeta)(tempMeta.changeType(LiteralMeta.type));
         }
         literalMeta.setProperty(predicate);
+        node.indexMeta(literalMeta);
         if (literalMeta.isSetContent()) {
             literalMeta.unsetContent();    
         }
@@ -196,6 +182,7 @@ public class NeXMLUtil {
         final Meta tempMeta = node.addNewMeta();
         final LiteralMeta literalMeta = (LiteralMeta)(tempMeta.changeType(LiteralMeta.type));
         literalMeta.setProperty(predicate);
+        node.indexMeta(literalMeta);
         final Node importedNode = literalMeta.getDomNode().getOwnerDocument().importNode(value, true);
         literalMeta.getDomNode().appendChild(importedNode);
     }
@@ -220,6 +207,7 @@ public class NeXMLUtil {
             literalMeta = (LiteralMeta)(tempMeta.changeType(LiteralMeta.type));
         }
         literalMeta.setProperty(predicate);
+        node.indexMeta(literalMeta);
         if (literalMeta.isSetContent()) {
             literalMeta.unsetContent();    
         }
@@ -233,6 +221,7 @@ public class NeXMLUtil {
         final Meta tempMeta = node.addNewMeta();
         final ResourceMeta resourceMeta = (ResourceMeta)(tempMeta.changeType(ResourceMeta.type));
         resourceMeta.setRel(predicate);
+        node.indexMeta(resourceMeta);
         resourceMeta.setHref(value.toString());
     }
 
@@ -256,6 +245,7 @@ public class NeXMLUtil {
             resourceMeta = (ResourceMeta)(tempMeta.changeType(ResourceMeta.type));
         }
         resourceMeta.setRel(predicate);
+        node.indexMeta(resourceMeta);
         resourceMeta.setMetaArray(null);
         resourceMeta.setHref(value.toString());
     }
@@ -266,6 +256,7 @@ public class NeXMLUtil {
         final Meta tempMeta = node.addNewMeta();
         final ResourceMeta resourceMeta = (ResourceMeta)(tempMeta.changeType(ResourceMeta.type));
         resourceMeta.setRel(predicate);
+        node.indexMeta(resourceMeta);
         resourceMeta.setMetaArray(new Meta[] {});
         final Annotatable annotatableMeta = new Annotatable(resourceMeta);
         for (Entry<QName, Object> item : blankNodeValue.entrySet()) {
@@ -302,6 +293,7 @@ public class NeXMLUtil {
             resourceMeta = (ResourceMeta)(tempMeta.changeType(ResourceMeta.type));
         }
         resourceMeta.setRel(predicate);
+        node.indexMeta(resourceMeta);
         if (resourceMeta.isSetHref()) {
             resourceMeta.unsetHref();    
         }
@@ -338,7 +330,7 @@ public class NeXMLUtil {
     }
 
     public static void removeMeta(Annotatable node, Meta meta) {
-        final List<Meta> metas = new ArrayList<Meta>(Arrays.asList(node.getMetaArray()));
+        final List<Meta> metas = Arrays.asList(node.getMetaArray());
         node.removeMeta(metas.indexOf(meta));
     }
 
@@ -347,30 +339,9 @@ public class NeXMLUtil {
      */
     public static List<Object> getMetadataValues(Annotated node, QName predicate) {
         final List<Object> values = new ArrayList<Object>();
-        final Annotatable annotable = new Annotatable(node);
-        final List<Meta> metas = findMetadata(annotable, predicate);
-        for (Meta meta : metas) {
-            if (meta instanceof ResourceMeta) {
-                final ResourceMeta resource = (ResourceMeta)meta;
-                if (resource.getRel().equals(predicate)) {
-                    if (resource.isSetHref()) {
-                        values.add(resource.getHref());
-                    }
-                    if (resource.getMetaArray().length > 0) {
-                        values.add(translate(Arrays.asList(resource.getMetaArray())));
-                    }
-                }
-            } else if (meta instanceof LiteralMeta) {
-                final LiteralMeta literal = (LiteralMeta)meta;
-                if (literal.getProperty().equals(predicate)) {
-                    if (literal.isSetContent()) {
-                        values.add(literal.getContent());
-                    }
-                    final Element element = (Element)(literal.getDomNode()); 
-                    if (element.hasChildNodes()) {
-                        values.add(new LiteralContents(element));
-                    }
-                }
+        for (Meta meta : node.getMetaArray()) {
+            if (predicate.equals(getPredicate(meta))) {
+                addValues(meta, values);
             }
         }
         return values;
@@ -388,6 +359,29 @@ public class NeXMLUtil {
         }
     }
     
+    /**
+     * Translates all the metadata of a node at once, so that a reader looking up several predicates on the node 
+     * only goes through its metas one time.  Values are as returned by getMetadataValues.
+     */
+    public static Map<QName, List<Object>> getMetadata(Annotated node) {
+        return translate(Arrays.asList(node.getMetaArray()));
+    }
+
+    /**
+     * Returns the values for the predicate in metadata from getMetadata, or an empty list if there are none.
+     */
+    public static List<Object> getMetadataValues(Map<QName, List<Object>> metadata, QName predicate) {
+        final List<Object> values = metadata.get(predicate);
+        return (values != null) ? values : Collections.emptyList();
+    }
+
+    /**
+     * Returns the first value for the predicate in metadata from getMetadata, or null if there is none.
+     */
+    public static Object getFirstMetadataValue(Map<QName, List<Object>> metadata, QName predicate) {
+        return first(getMetadataValues(metadata, predicate));
+    }
+
     /**
      * Objects in list could be String, Map<QName, List<Object>, or LiteralContents
      */
@@ -398,27 +392,31 @@ public class NeXMLUtil {
             if (!map.containsKey(predicate)) {
                 map.put(predicate, new ArrayList<Object>());
             }
-            if (meta instanceof ResourceMeta) {
-                final ResourceMeta resource = (ResourceMeta)meta;
-                if (resource.isSetHref()) {
-                    map.get(predicate).add(resource.getHref());
-                }
-                if (resource.getMetaArray().length > 0) {
-                    map.get(predicate).add(translate(Arrays.asList(resource.getMetaArray())));
-                }
-            } else if (meta instanceof LiteralMeta) {
-                final LiteralMeta literal = (LiteralMeta)meta;
-                if (literal.isSetContent()) {
-                    map.get(predicate).add(literal.getContent());
-                }
-                final Element element = (Element)(literal.getDomNode()); 
-                if (element.hasChildNodes()) {
-                    map.get(predicate).add(new LiteralContents(element));
-                }
-            }
+            addValues(meta, map.get(predicate));
         }
         return map;
     }
+
+    private static void addValues(Meta meta, List<Object> values) {
+        if (meta instanceof ResourceMeta) {
+            final ResourceMeta resource = (ResourceMeta)meta;
+            if (resource.isSetHref()) {
+                values.add(resource.getHref());
+            }
+            if (resource.getMetaArray().length > 0) {
+                values.add(translate(Arrays.asList(resource.getMetaArray())));
+            }
+        } else if (meta instanceof LiteralMeta) {
+            final LiteralMeta literal = (LiteralMeta)meta;
+            if (literal.isSetContent()) {
+                values.add(literal.getContent());
+            }
+            final Element element = (Element)(literal.getDomNode()); 
+            if (element.hasChildNodes()) {
+                values.add(new LiteralContents(element));
+            }
+        }
+    }
     
     public static QName getPredicate(Meta meta) {
         if (meta instanceof ResourceMeta) {
@@ -517,9 +515,17 @@ public class NeXMLUtil {
         
     }
 
+    /**
+     * Wraps a node which can hold metadata.  The node's metas are indexed by predicate the first time they are 
+     * looked up, so that setting several predicates on one node does not search through its metas each time.  
+     * Metadata added through NeXMLUtil is indexed as it is added; the index is rebuilt if metas are inserted or 
+     * replaced through this wrapper.  Changes made to the node other than through this wrapper are not seen, so a 
+     * wrapper should only be kept while the node is being worked on.
+     */
     public static class Annotatable {
 
         private final Object node;
+        private Map<QName, List<Meta>> metasByPredicate = null;
 
         public Annotatable(Annotated node) {
             this.node = node;
@@ -533,6 +539,37 @@ public class NeXMLUtil {
             return this.node;
         }
 
+        /**
+         * Returns the metas with the given predicate, in document order.
+         */
+        public List<Meta> getMetas(QName predicate) {
+            if (this.metasByPredicate == null) {
+                this.metasByPredicate = new HashMap<QName, List<Meta>>();
+                for (Meta meta : this.getMetaArray()) {
+                    this.indexMeta(meta);
+                }
+            }
+            final List<Meta> metas = this.metasByPredicate.get(predicate);
+            return (metas != null) ? Collections.unmodifiableList(metas) : Collections.<Meta>emptyList();
+        }
+
+        /**
+         * Adds a meta to the index once its predicate has been set.
+         */
+        void indexMeta(Meta meta) {
+            if (this.metasByPredicate == null) return;
+            final QName predicate = getPredicate(meta);
+            if (predicate == null) return;
+            List<Meta> metas = this.metasByPredicate.get(predicate);
+            if (metas == null) {
+                metas = new ArrayList<Meta>();
+                this.metasByPredicate.put(predicate, metas);
+            }
+            if (!metas.contains(meta)) {
+                metas.add(meta);
+            }
+        }
+
         public Meta addNewMeta() {
             if (this.node instanceof Annotated) {
                 return ((Annotated)this.node).addNewMeta();
@@ -558,6 +595,7 @@ public class NeXMLUtil {
         }
 
         public Meta insertNewMeta(int index) {
+            this.metasByPredicate = null;
             if (this.node instanceof Annotated) {
                 return ((Annotated)this.node).insertNewMeta(index);
             } else {
@@ -566,6 +604,13 @@ public class NeXMLUtil {
         }
 
         public void removeMeta(int index) {
+            if (this.metasByPredicate != null) {
+                final Meta meta = this.getMetaArray(index);
+                final List<Meta> metas = this.metasByPredicate.get(getPredicate(meta));
+                if (metas != null) {
+                    metas.remove(meta);
+                }
+            }
             if (this.node instanceof Annotated) {
                 ((Annotated)this.node).removeMeta(index);
             } else {
@@ -574,6 +619,7 @@ public class NeXMLUtil {
         }
 
         public void setMetaArray(int index, Meta meta) {
+            this.metasByPredicate = null;
             if (this.node instanceof Annotated) {
                 ((Annotated)this.node).setMetaArray(index, meta);
             } else {
@@ -582,6 +628,7 @@ public class NeXMLUtil {
         }
 
         public void setMetaArray(Meta[] metas) {
+            this.metasByPredicate = null;
             if (this.node instanceof Annotated) {
                 ((Annotated)this.node).setMetaArray(metas);
             } else {
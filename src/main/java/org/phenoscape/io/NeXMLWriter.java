@@ -46,7 +46,6 @@ import org.nexml.schema_2009.AbstractPolymorphicStateSet;
 import org.nexml.schema_2009.AbstractState;
 import org.nexml.schema_2009.AbstractStates;
 import org.nexml.schema_2009.AbstractUncertainStateSet;
-import org.nexml.schema_2009.Annotated;
 import org.nexml.schema_2009.IntTree;
 import org.nexml.schema_2009.NexmlDocument;
 import org.nexml.schema_2009.StandardCells;
@@ -299,10 +298,11 @@ public class NeXMLWriter {
 					existingChars, character.getNexmlID());
 			newCharacters.add(xmlChar);
 			xmlChar.setLabel(character.getLabel());
-			this.writeDenotes(xmlChar, character.getDenotes());
-			this.writeComment(xmlChar, character.getComment());
-			this.writeFigure(xmlChar, character.getFigure());
-			this.writeDiscussion(xmlChar, character.getDiscussion());
+			final Annotatable annotatableChar = new Annotatable(xmlChar);
+			this.writeDenotes(annotatableChar, character.getDenotes());
+			this.writeComment(annotatableChar, character.getComment());
+			this.writeFigure(annotatableChar, character.getFigure());
+			this.writeDiscussion(annotatableChar, character.getDiscussion());
 			final AbstractStates statesBlock = this
 					.findOrCreateStatesBlockWithID(existingStatesList,
 							character.getStatesNexmlID());
@@ -325,11 +325,12 @@ public class NeXMLWriter {
 						existingStates, state.getNexmlID());
 				newStates.add(xmlState);
 				xmlState.setLabel(state.getLabel());
-				this.writeComment(xmlState, state.getComment());
-				this.writeFigure(xmlState, state.getFigure());
+				final Annotatable annotatableState = new Annotatable(xmlState);
+				this.writeComment(annotatableState, state.getComment());
+				this.writeFigure(annotatableState, state.getFigure());
 				this.writeSymbol(xmlState,
 						state.getSymbol() != null ? state.getSymbol() : "0");
-				this.writePhenotypes(xmlState, state);
+				this.writePhenotypes(annotatableState, state);
 			}
 			usableStatesBlock.setStateArray(newStates
 					.toArray(new AbstractState[] {}));
@@ -403,11 +404,12 @@ public class NeXMLWriter {
 					existingOTUs, taxon.getNexmlID());
 			newOTUs.add(otu);
 			otu.setLabel(taxon.getPublicationName());
-			this.writeOBOID(otu, taxon);
-			this.writeSpecimens(otu, taxon);
-			this.writeComment(otu, taxon.getComment());
-			this.writeFigure(otu, taxon.getFigure());
-			this.writeMatrixTaxon(otu, taxon.getMatrixTaxonName());
+			final Annotatable annotatableOTU = new Annotatable(otu);
+			this.writeOBOID(annotatableOTU, taxon);
+			this.writeSpecimens(annotatableOTU, taxon);
+			this.writeComment(annotatableOTU, taxon.getComment());
+			this.writeFigure(annotatableOTU, taxon.getFigure());
+			this.writeMatrixTaxon(annotatableOTU, taxon.getMatrixTaxonName());
 			this.otuIDsByTaxon.put(taxon, taxon.getNexmlID());
 		}
 		taxaBlock.setOtuArray(newOTUs
@@ -639,8 +641,7 @@ public class NeXMLWriter {
 		return stateIDs.equals(setStateIDs);
 	}
 
-	private void writeOBOID(org.nexml.schema_2009.Taxon otu, Taxon taxon) {
-		final Annotatable annotatableOTU = new Annotatable(otu);
+	private void writeOBOID(Annotatable annotatableOTU, Taxon taxon) {
 		if (taxon.getValidName() == null) {
 			NeXMLUtil.unsetMetadata(annotatableOTU,
 					NeXMLUtil.VALID_NAME_PREDICATE);
@@ -651,8 +652,7 @@ public class NeXMLWriter {
 		}
 	}
 
-	private void writeSpecimens(org.nexml.schema_2009.Taxon otu, Taxon taxon) {
-		final Annotatable annotatableOTU = new Annotatable(otu);
+	private void writeSpecimens(Annotatable annotatableOTU, Taxon taxon) {
 		NeXMLUtil.unsetMetadata(annotatableOTU, NeXMLUtil.SPECIMEN_PREDICATE);
 		for (Specimen specimen : taxon.getSpecimens()) {
 			final Map<QName, Object> specimenData = new HashMap<QName, Object>();
@@ -673,8 +673,7 @@ public class NeXMLWriter {
 		}
 	}
 
-	private void writeDenotes(Annotated node, URI term) {
-		final Annotatable annotatableNode = new Annotatable(node);
+	private void writeDenotes(Annotatable annotatableNode, URI term) {
 		if (term == null) {
 			NeXMLUtil.unsetMetadata(annotatableNode, NeXMLUtil.DENOTES_PREDICATE);
 		} else {
@@ -682,8 +681,7 @@ public class NeXMLWriter {
 		}
 	}
 
-	private void writeComment(Annotated node, String comment) {
-		final Annotatable annotatableNode = new Annotatable(node);
+	private void writeComment(Annotatable annotatableNode, String comment) {
 		if ((comment == null) || (comment.equals(""))) {
 			NeXMLUtil.unsetMetadata(annotatableNode,
 					NeXMLUtil.COMMENT_PREDICATE);
@@ -693,8 +691,7 @@ public class NeXMLWriter {
 		}
 	}
 
-	private void writeFigure(Annotated node, String figure) {
-		final Annotatable annotatableNode = new Annotatable(node);
+	private void writeFigure(Annotatable annotatableNode, String figure) {
 		if ((figure == null) || (figure.equals(""))) {
 			NeXMLUtil
 			.unsetMetadata(annotatableNode, NeXMLUtil.FIGURE_PREDICATE);
@@ -704,8 +701,7 @@ public class NeXMLWriter {
 		}
 	}
 
-	private void writeDiscussion(Annotated node, String discussion) {
-		final Annotatable annotatableNode = new Annotatable(node);
+	private void writeDiscussion(Annotatable annotatableNode, String discussion) {
 		if ((discussion == null) || (discussion.equals(""))) {
 			NeXMLUtil.unsetMetadata(annotatableNode,
 					NeXMLUtil.DISCUSSION_PREDICATE);
@@ -715,9 +711,8 @@ public class NeXMLWriter {
 		}
 	}
 
-	private void writeMatrixTaxon(org.nexml.schema_2009.Taxon otu,
+	private void writeMatrixTaxon(Annotatable annotatableOTU,
 			String matrixTaxon) {
-		final Annotatable annotatableOTU = new Annotatable(otu);
 		if ((matrixTaxon == null) || (matrixTaxon.equals(""))) {
 			NeXMLUtil.unsetMetadata(annotatableOTU,
 					NeXMLUtil.MATRIX_NAME_PREDICATE);
@@ -727,8 +722,7 @@ public class NeXMLWriter {
 		}
 	}
 
-	private void writePhenotypes(AbstractState xmlState, State state) {
-		final Annotatable annotatableState = new Annotatable(xmlState);
+	private void writePhenotypes(Annotatable annotatableState, State state) {
 		if (state.getPhenotypes().isEmpty()) {
 			NeXMLUtil.unsetMetadata(annotatableState,
 					NeXMLUtil.PHENOTYPE_PREDICATE);
@@ -3,11 +3,8 @@ package org.phenoscape.io;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-import org.apache.log4j.Logger;
 import org.bioontologies.obd.schema.pheno.BearerDocument.Bearer;
 import org.bioontologies.obd.schema.pheno.DescriptionDocument.Description;
 import org.bioontologies.obd.schema.pheno.MeasurementDocument.Measurement;
@@ -20,50 +17,50 @@ import org.bioontologies.obd.schema.pheno.TyperefDocument.Typeref;
 import org.bioontologies.obd.schema.pheno.UnitDocument.Unit;
 import org.obo.annotation.base.OBOUtil;
 import org.obo.annotation.base.OBOUtil.Differentium;
-import org.obo.datamodel.DanglingObject;
-import org.obo.datamodel.IdentifiedObject;
 import org.obo.datamodel.Link;
 import org.obo.datamodel.LinkedObject;
 import org.obo.datamodel.OBOClass;
 import org.obo.datamodel.OBOProperty;
 import org.obo.datamodel.OBOSession;
-import org.obo.datamodel.ObsoletableObject;
-import org.obo.datamodel.impl.DanglingClassImpl;
-import org.obo.datamodel.impl.DanglingPropertyImpl;
 
 public class PhenoXMLAdapter {
 
-    private final Set<String> danglers = new HashSet<String>();
-    private final Set<String> secondaryIDs = new HashSet<String>();
-    private final Set<String> replacedIDs = new HashSet<String>();
-    private final OBOSession session;
+    private final TermResolver resolver;
 
     public PhenoXMLAdapter(OBOSession session) {
-        this.session = session;
+        this(new TermResolver(session));
+    }
+
+    /**
+     * @param resolver Resolves the term IDs referenced by phenotypes.  Adapters created while loading one file should
+     * share a resolver, so that each ID is only resolved once.
+     */
+    public PhenoXMLAdapter(TermResolver resolver) {
+        this.resolver = resolver;
     }
 
     public boolean didCreateDanglers() {
-        return !this.danglers.isEmpty();
+        return !this.getDanglersList().isEmpty();
     }
 
     public Collection<String> getDanglersList() {
-        return this.danglers;
+        return this.resolver.getDanglersList();
     }
 
     public boolean didMigrateSecondaryIDs() {
-        return !this.secondaryIDs.isEmpty();
+        return !this.getMigratedSecondaryIDsList().isEmpty();
     }
 
     public Collection<String> getMigratedSecondaryIDsList() {
-        return this.secondaryIDs;
+        return this.resolver.getMigratedSecondaryIDsList();
     }
     
     public boolean didReplaceObsoleteTerms() {
-    	return !this.replacedIDs.isEmpty();
+    	return !this.getReplacedIDsList().isEmpty();
     }
     
     public Collection<String> getReplacedIDsList() {
-    	return this.replacedIDs;
+    	return this.resolver.getReplacedIDsList();
     }
 
     public static PhenotypeCharacter createPhenotypeCharacter(org.phenoscape.model.Phenotype phenoCharacter) {
@@ -172,12 +169,12 @@ public class PhenoXMLAdapter {
     }
 
     private OBOClass getTermForTyperef(Typeref tr) {
-        final OBOClass genus = this.getTerm(tr.getAbout());
+        final OBOClass genus = this.resolver.getTerm(tr.getAbout());
         if (tr.sizeOfQualifierArray() > 0) {
             // need to create post-comp
             final List<Differentium> differentia = new ArrayList<Differentium>();
             for (Qualifier qualifier : tr.getQualifierList()) {
-                final OBOProperty relation = this.getRelation(qualifier.getRelation());
+                final OBOProperty relation = this.resolver.getRelation(qualifier.getRelation());
                 final OBOClass term = this.getTermForTyperef(qualifier.getHoldsInRelationTo().getTyperef());
                 final Differentium differentium = new Differentium();
                 differentium.setRelation(relation);
@@ -190,70 +187,4 @@ public class PhenoXMLAdapter {
         }
     }
 
-    private OBOClass getTerm(String id) {
-		log().debug("Term id: " + id);
-		if (id.equals("http://purl.bioontology.org/ontology/provisional/d0267b99-ff52-4a4c-bd31-ff6dbf4dafcc")) {
-			log().debug("Provisional term");
-		}
-		final IdentifiedObject term = this.session.getObject(id);
-		if (term instanceof OBOClass) {
-			final OBOClass oboClass = (OBOClass)term;
-			if (oboClass.isObsolete()) {
-				if (!oboClass.getReplacedBy().isEmpty()) {
-					final ObsoletableObject replacement = oboClass.getReplacedBy().iterator().next();
-					if ((replacement instanceof OBOClass) && (!(replacement instanceof DanglingObject))) {
-						this.replacedIDs.add(id);
-						return (OBOClass)replacement;
-					} else {
-						return oboClass;
-					}
-				} else {
-					return oboClass;
-				}
-			} else {
-				return oboClass;	
-			}
-		} else {
-			final OBOClass altTerm = this.findTermByAltID(id);
-			if (altTerm != null) {
-				return altTerm;
-			} else {
-				log().warn("Term not found; creating dangler for " + id);
-				this.danglers.add(id);
-				final OBOClass dangler = new DanglingClassImpl(id.trim());
-				return dangler;
-			}
-		}
-	}
-
-    private OBOClass findTermByAltID(String id) {
-        final Collection<IdentifiedObject> terms = this.session.getObjects();
-        for (IdentifiedObject object : terms) {
-            if (object instanceof OBOClass) {
-                final OBOClass term = (OBOClass)object;
-                if (term.getSecondaryIDs().contains(id)) {
-                    this.secondaryIDs.add(id);
-                    return term;
-                }
-            }
-        }
-        return null;
-    }
-
-    private OBOProperty getRelation(String id) {
-        final IdentifiedObject relation = this.session.getObject(id);
-        if (relation instanceof OBOProperty) {
-            return (OBOProperty)relation;
-        } else {
-            log().warn("Property not found; creating dangler for " + id);
-            this.danglers.add(id);
-            final OBOProperty dangler = new DanglingPropertyImpl(id);
-            return dangler;
-        }
-    }
-
-    private static Logger log() {
-        return Logger.getLogger(PhenoXMLAdapter.class);
-    }
-
 }
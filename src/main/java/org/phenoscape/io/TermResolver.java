@@ -0,0 +1,175 @@
+package org.phenoscape.io;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.obo.annotation.base.SecondaryIDIndex;
+import org.obo.datamodel.DanglingObject;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOProperty;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.ObsoletableObject;
+import org.obo.datamodel.impl.DanglingClassImpl;
+import org.obo.datamodel.impl.DanglingPropertyImpl;
+
+/**
+ * Resolves the term and relation IDs referenced by a data file to objects in the OBOSession.  A resolver is meant to
+ * be used for the whole of one file load, so that each distinct ID is resolved only once: obsolete terms are replaced
+ * by their replacement, secondary IDs are migrated to their terms, and IDs which cannot be found become danglers,
+ * with the same dangling object returned every time the ID is referenced.  The IDs which were replaced, migrated or
+ * left dangling are recorded so that the user can be told about them.
+ * <p>
+ * A resolver may be used by several threads at once.  If two threads resolve the same ID together, both are given
+ * the object resolved first.  The recorded IDs are kept sorted, so that they do not depend on the order in which
+ * the threads got to them.
+ */
+public class TermResolver {
+
+	private final OBOSession session;
+	private final ConcurrentMap<String, Resolution<OBOClass>> terms = new ConcurrentHashMap<String, Resolution<OBOClass>>();
+	private final ConcurrentMap<String, Resolution<OBOProperty>> relations = new ConcurrentHashMap<String, Resolution<OBOProperty>>();
+	private final Set<String> danglers = Collections.synchronizedSortedSet(new TreeSet<String>());
+	private final Set<String> secondaryIDs = Collections.synchronizedSortedSet(new TreeSet<String>());
+	private final Set<String> replacedIDs = Collections.synchronizedSortedSet(new TreeSet<String>());
+
+	private static enum Outcome { FOUND, REPLACED, SECONDARY, DANGLING };
+
+	public TermResolver(OBOSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * @return The class to use for the given ID: the class with that ID, its replacement if it is obsolete and has
+	 * one, the class with that secondary ID, or else a dangling class.
+	 */
+	public OBOClass getTerm(String id) {
+		final Resolution<OBOClass> cached = this.terms.get(id);
+		if (cached != null) {
+			return cached.object;
+		}
+		final Resolution<OBOClass> resolution = this.resolveTerm(id);
+		final Resolution<OBOClass> earlier = this.terms.putIfAbsent(id, resolution);
+		if (earlier != null) {
+			return earlier.object;
+		}
+		this.record(id, resolution.outcome);
+		return resolution.object;
+	}
+
+	/**
+	 * @return The class to use for the given ID as {@link #getTerm(String)} finds it, except that a class with the
+	 * ID is returned even if it is obsolete.
+	 */
+	public OBOClass getUnreplacedTerm(String id) {
+		final IdentifiedObject term = this.session.getObject(id);
+		if (term instanceof OBOClass) {
+			return (OBOClass)term;
+		}
+		return this.getTerm(id);
+	}
+
+	/**
+	 * @return The relation with the given ID, or else a dangling relation.
+	 */
+	public OBOProperty getRelation(String id) {
+		final Resolution<OBOProperty> cached = this.relations.get(id);
+		if (cached != null) {
+			return cached.object;
+		}
+		final Resolution<OBOProperty> resolution = this.resolveRelation(id);
+		final Resolution<OBOProperty> earlier = this.relations.putIfAbsent(id, resolution);
+		if (earlier != null) {
+			return earlier.object;
+		}
+		this.record(id, resolution.outcome);
+		return resolution.object;
+	}
+
+	/**
+	 * Returns the IDs which were not found in the OBOSession.
+	 */
+	public Collection<String> getDanglersList() {
+		return this.danglers;
+	}
+
+	/**
+	 * Returns the IDs which were found to be secondary IDs.
+	 */
+	public Collection<String> getMigratedSecondaryIDsList() {
+		return this.secondaryIDs;
+	}
+
+	/**
+	 * Returns the IDs of obsolete terms which were replaced by other terms.
+	 */
+	public Collection<String> getReplacedIDsList() {
+		return this.replacedIDs;
+	}
+
+	private Resolution<OBOClass> resolveTerm(String id) {
+		final IdentifiedObject term = this.session.getObject(id);
+		if (term instanceof OBOClass) {
+			final OBOClass oboClass = (OBOClass)term;
+			if (oboClass.isObsolete() && !oboClass.getReplacedBy().isEmpty()) {
+				final ObsoletableObject replacement = oboClass.getReplacedBy().iterator().next();
+				if ((replacement instanceof OBOClass) && (!(replacement instanceof DanglingObject))) {
+					return new Resolution<OBOClass>((OBOClass)replacement, Outcome.REPLACED);
+				}
+			}
+			return new Resolution<OBOClass>(oboClass, Outcome.FOUND);
+		}
+		final OBOClass altTerm = SecondaryIDIndex.getTerm(this.session, id);
+		if (altTerm != null) {
+			return new Resolution<OBOClass>(altTerm, Outcome.SECONDARY);
+		}
+		return new Resolution<OBOClass>(new DanglingClassImpl(id.trim()), Outcome.DANGLING);
+	}
+
+	private Resolution<OBOProperty> resolveRelation(String id) {
+		final IdentifiedObject relation = this.session.getObject(id);
+		if (relation instanceof OBOProperty) {
+			return new Resolution<OBOProperty>((OBOProperty)relation, Outcome.FOUND);
+		}
+		return new Resolution<OBOProperty>(new DanglingPropertyImpl(id), Outcome.DANGLING);
+	}
+
+	private void record(String id, Outcome outcome) {
+		switch (outcome) {
+		case REPLACED:
+			this.replacedIDs.add(id);
+			break;
+		case SECONDARY:
+			this.secondaryIDs.add(id);
+			break;
+		case DANGLING:
+			log().warn("ID not found; creating dangler for " + id);
+			this.danglers.add(id);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+	private static class Resolution<T> {
+
+		private final T object;
+		private final Outcome outcome;
+
+		public Resolution(T object, Outcome outcome) {
+			this.object = object;
+			this.outcome = outcome;
+		}
+
+	}
+
+}
@@ -5,10 +5,8 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
@@ -31,11 +29,10 @@ import org.nexml.x10.StandardChar;
 import org.nexml.x10.StandardFormat;
 import org.nexml.x10.StandardStates;
 import org.nexml.x10.Taxa;
-import org.obo.datamodel.IdentifiedObject;
 import org.obo.datamodel.OBOClass;
 import org.obo.datamodel.OBOSession;
-import org.obo.datamodel.impl.DanglingClassImpl;
 import org.phenoscape.io.PhenoXMLAdapter;
+import org.phenoscape.io.TermResolver;
 import org.phenoscape.model.Character;
 import org.phenoscape.model.DataSet;
 import org.phenoscape.model.Phenotype;
@@ -50,20 +47,18 @@ public class NeXMLReader_1_0 {
 
     private final DataSet data = new DataSet();
     private final NexmlDocument xmlDoc;
-    private final OBOSession session;
-    private final Set<String> danglers = new HashSet<String>();
-    private final Set<String> secondaryIDs = new HashSet<String>();
+    private final TermResolver resolver;
     private String charactersBlockID = UUID.randomUUID().toString();
     private final Map<String, State> allStates = new HashMap<String, State>();
 
     public NeXMLReader_1_0(File aFile, OBOSession session) throws XmlException, IOException {
-        this.session = session;
+        this.resolver = new TermResolver(session);
         this.xmlDoc = NexmlDocument.Factory.parse(aFile);
         this.parseNeXML();
     }
 
     public NeXMLReader_1_0(Reader aReader, OBOSession session) throws XmlException, IOException {
-        this.session = session;
+        this.resolver = new TermResolver(session);
         this.xmlDoc = NexmlDocument.Factory.parse(aReader);
         this.parseNeXML();
     }
@@ -84,28 +79,42 @@ public class NeXMLReader_1_0 {
      * Returns true if the reader had to create dangling terms for referenced IDs not found in the OBOSession.
      */
     public boolean didCreateDanglers() {
-        return !this.danglers.isEmpty();
+        return !this.resolver.getDanglersList().isEmpty();
     }
 
     /**
      * Returns the list of IDs referenced in the file that were not found in the OBOSession.
      */
     public Collection<String> getDanglersList() {
-        return this.danglers;
+        return this.resolver.getDanglersList();
     }
 
     /**
      * Returns true if the reader had to find any referenced terms via a secondary ID.
      */
     public boolean didMigrateSecondaryIDs() {
-        return !this.secondaryIDs.isEmpty();
+        return !this.resolver.getMigratedSecondaryIDsList().isEmpty();
     }
 
     /**
      * Returns the list of IDs referenced in the file that were found to be secondary IDs.
      */
     public Collection<String> getMigratedSecondaryIDsList() {
-        return this.secondaryIDs;
+        return this.resolver.getMigratedSecondaryIDsList();
+    }
+
+    /**
+     * Returns true if the reader replaced any referenced obsolete terms with their replacements.
+     */
+    public boolean didReplaceObsoleteTerms() {
+        return !this.resolver.getReplacedIDsList().isEmpty();
+    }
+
+    /**
+     * Returns the list of IDs referenced in the file that were obsolete terms replaced by other terms.
+     */
+    public Collection<String> getReplacedIDsList() {
+        return this.resolver.getReplacedIDsList();
     }
 
     private void parseNeXML() {
@@ -157,13 +166,11 @@ public class NeXMLReader_1_0 {
                     if (phenoXML != null) {
                         try {
                             PhenotypeDocument xmlPhen = org.bioontologies.obd.schema.pheno.PhenotypeDocument.Factory.parse(phenoXML);
-                            PhenoXMLAdapter adapter = new PhenoXMLAdapter(this.session);
+                            PhenoXMLAdapter adapter = new PhenoXMLAdapter(this.resolver);
                             List<Phenotype> phenotypes = adapter.parsePhenotype(xmlPhen.getPhenotype());
                             for (Phenotype phenotype : phenotypes) {
                                 newState.addPhenotype(phenotype);
                             }
-                            this.danglers.addAll(adapter.getDanglersList());
-                            this.secondaryIDs.addAll(adapter.getMigratedSecondaryIDsList());
                         } catch (XmlException e) {
                             log().error("Failed to parse OBO phenotype", e);
                         }
@@ -275,35 +282,8 @@ public class NeXMLReader_1_0 {
     }
 
     private OBOClass getTerm(String id) {
-        final IdentifiedObject term = this.session.getObject(id);
-        if (term instanceof OBOClass) {
-            return (OBOClass)term;
-        } else {
-            final OBOClass altTerm = this.findTermByAltID(id);
-            if (altTerm != null) {
-                return altTerm;
-            } else {
-                log().warn("Term not found; creating dangler for " + id);
-                this.danglers.add(id);
-                final OBOClass dangler = new DanglingClassImpl(id.trim());
-                return dangler;
-            }
-        }
-    }
-
-    private OBOClass findTermByAltID(String id) {
-        log().debug("Called alt_id search");
-        final Collection<IdentifiedObject> terms = this.session.getObjects();
-        for (IdentifiedObject object : terms) {
-            if (object instanceof OBOClass) {
-                final OBOClass term = (OBOClass)object;
-                if (term.getSecondaryIDs().contains(id)) {
-                    this.secondaryIDs.add(id);
-                    return term;
-                }
-            }
-        }
-        return null;
+        // taxa and specimens keep obsolete terms, as this reader always has
+        return this.resolver.getUnreplacedTerm(id);
     }
 
     private Logger log() {
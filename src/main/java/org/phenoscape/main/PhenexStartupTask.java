@@ -34,6 +34,7 @@ import org.oboedit.gui.factory.SearchResultsComponentFactory;
 import org.oboedit.gui.tasks.DefaultGUIStartupTask;
 import org.phenoscape.controller.OntologyController;
 import org.phenoscape.controller.PhenexController;
+import org.phenoscape.util.PhaseTimer;
 import org.phenoscape.view.AnnotationCheckerComponentFactory;
 import org.phenoscape.view.CharacterMatrixComponentFactory;
 import org.phenoscape.view.CharacterTableComponentFactory;
@@ -58,6 +59,7 @@ public class PhenexStartupTask extends DefaultGUIStartupTask {
 
 	private PhenexController controller;
 	private UserOntologyConfiguration ontologyConfiguration;
+	private final PhaseTimer startupTimer = new PhaseTimer("Startup");
 
 	@Override
 	protected Collection<GUIComponentFactory<?>> getDefaultComponentFactories() {
@@ -120,11 +122,12 @@ public class PhenexStartupTask extends DefaultGUIStartupTask {
 	@Override
 	protected void configureSystem() {
 		super.configureSystem();
+		this.startupTimer.register();
 		this.ontologyConfiguration = new UserOntologyConfiguration();
 		final SwingWorker<OntologyController, Void> ontologyLoader = new SwingWorker<OntologyController, Void>() {
 			@Override
 			protected OntologyController doInBackground() {
-				return new OntologyController(ontologyConfiguration);
+				return new OntologyController(ontologyConfiguration, startupTimer);
 			}
 		};
 		// you would expect that displaying the progress dialog would make the splash screen go away, but it doesn't
@@ -135,7 +138,10 @@ public class PhenexStartupTask extends DefaultGUIStartupTask {
 		dialog.setLocationRelativeTo(null);
 		dialog.run();
 		try {
-			this.controller = new PhenexController(ontologyLoader.get());
+			final OntologyController ontologyController = ontologyLoader.get();
+			final PhaseTimer.Phase phase = this.startupTimer.start("Create controller");
+			this.controller = new PhenexController(ontologyController);
+			phase.end();
 		} catch (InterruptedException e) {
 			log().fatal("Failed to create ontology controller", e);
 			GUIManager.exit(1);
@@ -223,6 +229,8 @@ public class PhenexStartupTask extends DefaultGUIStartupTask {
 	protected void doOtherInstallations() {
 		super.doOtherInstallations();
 		new SelectionBridge(this.controller.getOntologyCoordinator().getSelectionManager()).install();
+		// phases timed before the log view was installed are repeated here so that they appear in it
+		log().info("Startup phases so far:\n" + this.startupTimer.getSummary());
 	}
 
 	@Override
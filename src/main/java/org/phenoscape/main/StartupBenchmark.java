@@ -0,0 +1,89 @@
+package org.phenoscape.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.bbop.framework.GUIManager;
+import org.obo.annotation.base.OntologyConfiguration;
+import org.obo.annotation.base.OntologySource;
+import org.phenoscape.controller.OntologyController;
+import org.phenoscape.util.PhaseTimer;
+
+/**
+ * Measures Phenex startup without the user interface, by constructing an OntologyController over a fixed set of local
+ * ontology files and waiting for its term sets to be warmed.  The first run starts with an empty preferences folder,
+ * as on a first launch; later runs reuse it, as on a relaunch with unchanged ontologies.  The time of each startup
+ * phase is reported for every run.
+ * <p>
+ * Usage: StartupBenchmark [--runs N] [--max-millis N] ontology.obo [ontology.obo ...]
+ * <p>
+ * With --max-millis, the benchmark exits with status 2 if the last run took longer than the given time to become
+ * fully ready, so that it can be used to catch regressions.
+ */
+public class StartupBenchmark {
+
+	private static final int DEFAULT_RUNS = 3;
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		int runs = DEFAULT_RUNS;
+		long maxMillis = -1;
+		final List<OntologySource> sources = new ArrayList<OntologySource>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--runs") && (i + 1 < args.length)) {
+				runs = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--max-millis") && (i + 1 < args.length)) {
+				maxMillis = Long.parseLong(args[++i]);
+			} else {
+				sources.add(createSource(new File(args[i])));
+			}
+		}
+		if (sources.isEmpty() || (runs < 1)) {
+			System.err.println("Usage: StartupBenchmark [--runs N] [--max-millis N] ontology.obo [ontology.obo ...]");
+			System.exit(1);
+		}
+		final OntologyConfiguration configuration = new OntologyConfiguration() {
+			@Override
+			public List<OntologySource> getSources() {
+				return sources;
+			}
+		};
+		final File prefsFolder = File.createTempFile("phenex-benchmark", "");
+		prefsFolder.delete();
+		prefsFolder.mkdirs();
+		GUIManager.setPrefsDir(prefsFolder);
+		long lastMillis = 0;
+		try {
+			for (int run = 1; run <= runs; run++) {
+				final PhaseTimer timer = new PhaseTimer(run == 1 ? "First launch" : "Relaunch " + (run - 1));
+				final long start = System.nanoTime();
+				final OntologyController controller = new OntologyController(configuration, timer);
+				final long constructed = System.nanoTime();
+				controller.awaitTermSetWarming().get();
+				lastMillis = (System.nanoTime() - start) / 1000000;
+				log().info(String.format("%s: controller ready in %d ms, term sets ready in %d ms%n%s", timer.getName(), (constructed - start) / 1000000, lastMillis, timer.getSummary()));
+			}
+		} finally {
+			FileUtils.deleteDirectory(prefsFolder);
+		}
+		if ((maxMillis >= 0) && (lastMillis > maxMillis)) {
+			log().error(String.format("Startup took %d ms, more than the allowed %d ms", lastMillis, maxMillis));
+			System.exit(2);
+		}
+		System.exit(0);
+	}
+
+	private static OntologySource createSource(File file) throws MalformedURLException {
+		return new OntologySource(file.getName(), file.toURI().toURL());
+	}
+
+	private static Logger log() {
+		return Logger.getLogger(StartupBenchmark.class);
+	}
+
+}
@@ -0,0 +1,125 @@
+package org.phenoscape.main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.bbop.dataadapter.DataAdapterException;
+import org.obo.annotation.base.TermSearchIndex;
+import org.obo.dataadapter.OBOAdapter;
+import org.obo.dataadapter.OBOFileAdapter;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.Synonym;
+import org.obo.util.TermUtil;
+
+/**
+ * Measures per-keystroke autocomplete latency over a set of ontology files, comparing a linear
+ * scan of every term label against the TermSearchIndex.  Pass the OBO files to load (e.g. the cached
+ * UBERON, PATO and VTO files) as arguments.
+ */
+public class TermSearchBenchmark {
+
+	private static final List<String> MISSPELLED_QUERIES = Arrays.asList("pectorral fin", "basihyl", "antorior process", "dorsel fin spine");
+	private static final List<String> TYPED_QUERIES = Arrays.asList("pectoral fin ray", "anterior process", "basihyal", "round", "dorsal fin spine", "increased size");
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws DataAdapterException {
+		if (args.length == 0) {
+			System.err.println("Usage: TermSearchBenchmark ontology.obo [ontology.obo ...]");
+			System.exit(1);
+		}
+		final List<String> paths = new ArrayList<String>();
+		for (String arg : args) {
+			paths.add(new File(arg).toURI().toString());
+		}
+		final OBOFileAdapter fileAdapter = new OBOFileAdapter();
+		final OBOFileAdapter.OBOAdapterConfiguration adapterConfig = new OBOFileAdapter.OBOAdapterConfiguration();
+		adapterConfig.setReadPaths(paths);
+		adapterConfig.setBasicSave(false);
+		adapterConfig.setAllowDangling(true);
+		adapterConfig.setFollowImports(false);
+		final OBOSession session = fileAdapter.doOperation(OBOAdapter.READ_ONTOLOGY, adapterConfig, null);
+		final Collection<OBOObject> terms = new ArrayList<OBOObject>();
+		for (OBOClass term : TermUtil.getTerms(session)) {
+			terms.add(term);
+		}
+		final long buildStart = System.nanoTime();
+		final TermSearchIndex index = new TermSearchIndex(terms);
+		log().info(String.format("Indexed %d labels of %d terms in %.1f ms", index.size(), terms.size(), millis(System.nanoTime() - buildStart)));
+		for (int round = 0; round < ROUNDS; round++) {
+			// the first rounds serve as JIT warmup; only the last is reported
+			final boolean report = round == (ROUNDS - 1);
+			for (String query : TYPED_QUERIES) {
+				long scanTotal = 0;
+				long scanMax = 0;
+				long indexTotal = 0;
+				long indexMax = 0;
+				TermSearchIndex.Result previous = null;
+				for (int length = 1; length <= query.length(); length++) {
+					final String keystroke = query.substring(0, length);
+					final long scanStart = System.nanoTime();
+					scan(terms, keystroke);
+					final long scanTime = System.nanoTime() - scanStart;
+					final long indexStart = System.nanoTime();
+					// each keystroke extends the last, so the index can refine the previous result as TermSearcher does
+					previous = index.search(keystroke, previous);
+					final long indexTime = System.nanoTime() - indexStart;
+					scanTotal += scanTime;
+					scanMax = Math.max(scanMax, scanTime);
+					indexTotal += indexTime;
+					indexMax = Math.max(indexMax, indexTime);
+				}
+				if (report) {
+					log().info(String.format("\"%s\": linear scan mean %.2f ms (max %.2f ms); index mean %.3f ms (max %.3f ms)", query, millis(scanTotal / query.length()), millis(scanMax), millis(indexTotal / query.length()), millis(indexMax)));
+				}
+			}
+		}
+		benchmarkFuzzy(index);
+	}
+
+	private static void benchmarkFuzzy(TermSearchIndex index) {
+		for (int round = 0; round < ROUNDS; round++) {
+			for (String query : MISSPELLED_QUERIES) {
+				final long start = System.nanoTime();
+				final int[] hits = index.searchFuzzy(query, 50, Long.MAX_VALUE);
+				final long time = System.nanoTime() - start;
+				if (round == (ROUNDS - 1)) {
+					log().info(String.format("\"%s\": %d fuzzy matches in %.2f ms%s", query, hits.length, millis(time), hits.length > 0 ? ", best: " + index.getLabel(hits[0]) : ""));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The matching work TermSearcher did before the index existed.
+	 */
+	private static int scan(Collection<OBOObject> terms, String input) {
+		final String lowerInput = input.toLowerCase();
+		int matches = 0;
+		for (OBOObject term : terms) {
+			if ((term.getName() != null) && (term.getName().toLowerCase().indexOf(lowerInput) > -1)) {
+				matches++;
+			}
+			for (Synonym synonym : term.getSynonyms()) {
+				if ((synonym.getText() != null) && (synonym.getText().toLowerCase().indexOf(lowerInput) > -1)) {
+					matches++;
+				}
+			}
+		}
+		return matches;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+	private static Logger log() {
+		return Logger.getLogger(TermSearchBenchmark.class);
+	}
+
+}
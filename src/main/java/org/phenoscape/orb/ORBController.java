@@ -104,7 +104,7 @@ public class ORBController {
 		final JSONObject json = new JSONObject(IOUtils.toString(response.getEntity().getContent(), "utf-8"));
 		final OBOClass newTerm = ProvisionalTermUtil.createClassForProvisionalTerm(json, session);
 		session.addObject(newTerm);
-		this.controller.getOntologyController().invalidateAllTermSets();
+		this.controller.getOntologyController().updateTermSets(Collections.singleton(newTerm));
 		this.controller.getOntologyCoordinator().getSelectionManager().selectTerm(this, newTerm, false);
 		return newTerm;
 	}
@@ -9,14 +9,10 @@ import java.util.Set;
 import org.obo.annotation.base.OBOUtil;
 import org.obo.annotation.view.TermRenderer;
 import org.obo.datamodel.Link;
-import org.obo.datamodel.LinkedObject;
 import org.obo.datamodel.OBOClass;
 import org.obo.datamodel.OBOObject;
-import org.obo.datamodel.OBOProperty;
 import org.obo.datamodel.OBOSession;
 import org.obo.datamodel.TermSubset;
-import org.obo.filters.LinkFilter;
-import org.obo.filters.LinkFilterImpl;
 import org.obo.util.TermUtil;
 import org.phenoscape.model.Character;
 import org.phenoscape.model.Phenotype;
@@ -148,9 +144,8 @@ public class AnnotationConsistencyChecker {
 			return true;
 		} else {
 			final OBOClass size = (OBOClass)(session.getObject(SIZE));
-			final LinkFilter filter = new LinkFilterImpl((OBOProperty)(session.getObject("OBO_REL:is_a")));
-			final Collection<LinkedObject> sizes = TermUtil.getDescendants(size, true, filter);
-			return sizes.contains(quality);
+			// ancestry is followed from the quality, since post-compositions are not linked as children of their genus
+			return (size != null) && (quality.equals(size) || TermUtil.hasIsAAncestor(quality, size));
 		}
 	}
 
@@ -0,0 +1,126 @@
+package org.phenoscape.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Records how long each phase of a multi-step process, such as startup, takes.  Each phase is logged when it
+ * finishes, and the timings can be read through JMX once the timer is registered.  Phases may be timed from several
+ * threads; phases which overlap, such as background work, are recorded separately and are all included in the total.
+ */
+public class PhaseTimer implements PhaseTimerMBean {
+
+	private final String name;
+	private final List<String> names = new ArrayList<String>();
+	private final List<Long> durations = new ArrayList<Long>();
+
+	/**
+	 * @param name The name of the process being timed, used in log messages and the JMX object name.
+	 */
+	public PhaseTimer(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Start timing a phase.  The phase is recorded when {@link Phase#end()} is called on the result.
+	 */
+	public Phase start(String phase) {
+		return new Phase(phase);
+	}
+
+	/**
+	 * Record a phase whose duration was measured elsewhere.
+	 */
+	public void record(String phase, long nanos) {
+		final long millis = nanos / 1000000;
+		synchronized (this) {
+			this.names.add(phase);
+			this.durations.add(millis);
+		}
+		log().info(String.format("%s phase \"%s\" took %d ms", this.name, phase, millis));
+	}
+
+	@Override
+	public synchronized String[] getPhaseNames() {
+		return this.names.toArray(new String[this.names.size()]);
+	}
+
+	@Override
+	public synchronized long[] getPhaseMillis() {
+		final long[] millis = new long[this.durations.size()];
+		for (int i = 0; i < millis.length; i++) {
+			millis[i] = this.durations.get(i);
+		}
+		return millis;
+	}
+
+	@Override
+	public synchronized long getTotalMillis() {
+		long total = 0;
+		for (Long millis : this.durations) {
+			total += millis;
+		}
+		return total;
+	}
+
+	@Override
+	public synchronized String getSummary() {
+		final StringBuilder summary = new StringBuilder();
+		for (int i = 0; i < this.names.size(); i++) {
+			summary.append(String.format("%8d ms  %s%n", this.durations.get(i), this.names.get(i)));
+		}
+		summary.append(String.format("%8d ms  total", this.getTotalMillis()));
+		return summary.toString();
+	}
+
+	/**
+	 * Make this timer's attributes available to JMX clients such as JConsole, under the domain "org.phenoscape".
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("org.phenoscape", "type", ObjectName.quote(this.name)));
+		} catch (JMException e) {
+			log().error("Unable to register timer with JMX: " + this.name, e);
+		}
+	}
+
+	/**
+	 * A phase which has been started and not yet recorded.
+	 */
+	public class Phase {
+
+		private final String phase;
+		private final long start = System.nanoTime();
+		private boolean ended = false;
+
+		private Phase(String phase) {
+			this.phase = phase;
+		}
+
+		/**
+		 * Record this phase as finished now.  Only the first call has any effect.
+		 */
+		public void end() {
+			if (!this.ended) {
+				this.ended = true;
+				record(this.phase, System.nanoTime() - this.start);
+			}
+		}
+
+	}
+
+	private Logger log() {
+		return Logger.getLogger(this.getClass());
+	}
+
+}
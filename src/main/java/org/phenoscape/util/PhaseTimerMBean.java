@@ -0,0 +1,28 @@
+package org.phenoscape.util;
+
+/**
+ * The attributes of a PhaseTimer exposed through JMX.
+ */
+public interface PhaseTimerMBean {
+
+	/**
+	 * @return The names of the finished phases, in the order they finished.
+	 */
+	public String[] getPhaseNames();
+
+	/**
+	 * @return The duration in milliseconds of each finished phase, in the same order as the names.
+	 */
+	public long[] getPhaseMillis();
+
+	/**
+	 * @return The sum of the durations of the finished phases, in milliseconds.
+	 */
+	public long getTotalMillis();
+
+	/**
+	 * @return One line per finished phase, with its duration.
+	 */
+	public String getSummary();
+
+}
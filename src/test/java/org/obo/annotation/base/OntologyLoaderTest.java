@@ -0,0 +1,107 @@
+package org.obo.annotation.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.bbop.dataadapter.DataAdapterException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.dataadapter.OBOAdapter;
+import org.obo.dataadapter.OBOFileAdapter;
+import org.obo.datamodel.DanglingObject;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.Link;
+import org.obo.datamodel.LinkedObject;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.ObsoletableObject;
+
+public class OntologyLoaderTest {
+
+    private static final String ANATOMY = "format-version: 1.2\ndefault-namespace: anatomy\nsubsetdef: slim \"a slim\"\n\n" +
+            "[Term]\nid: TAO:0000001\nname: root\n\n" +
+            "[Term]\nid: TAO:0000002\nname: fin\nis_a: TAO:0000001\nrelationship: part_of TAO:0000001\nrelationship: has_quality PATO:0000001\n\n" +
+            "[Term]\nid: TAO:0000003\nname: old fin\nis_obsolete: true\nreplaced_by: TAO:0000002\nconsider: PATO:0000002\n";
+    private static final String QUALITY = "format-version: 1.2\ndefault-namespace: quality\nsubsetdef: slim \"a slim\"\n\n" +
+            "[Term]\nid: PATO:0000001\nname: quality\nsubset: slim\n\n" +
+            "[Term]\nid: PATO:0000002\nname: shape\nis_a: PATO:0000001\nrelationship: inheres_in TAO:0000002\nrelationship: towards UNDEFINED:0000001\n";
+    private static final String RELATIONS = "format-version: 1.2\ndefault-namespace: relations\n\n" +
+            "[Typedef]\nid: part_of\nname: part of\nis_transitive: true\n\n" +
+            "[Typedef]\nid: has_quality\nname: has quality\n\n" +
+            "[Typedef]\nid: inheres_in\nname: inheres in\n\n" +
+            "[Typedef]\nid: towards\nname: towards\n";
+
+    @Test
+    public void parallelLoadMatchesSingleParse() throws DataAdapterException, IOException {
+        final File folder = File.createTempFile("loader", "");
+        folder.delete();
+        folder.mkdirs();
+        try {
+            final List<File> sources = new ArrayList<File>();
+            sources.add(write(folder, "anatomy.obo", ANATOMY));
+            sources.add(write(folder, "quality.obo", QUALITY));
+            sources.add(write(folder, "relations.obo", RELATIONS));
+            final OBOSession expected = parse(sources);
+            final OBOSession loaded = new OntologyLoader(3).load(sources);
+            Assert.assertEquals(OntologySnapshotTest.describe(expected), OntologySnapshotTest.describe(loaded));
+            Assert.assertFalse(loaded.getObject("TAO:0000001") instanceof DanglingObject);
+            Assert.assertFalse(loaded.getObject("part_of") instanceof DanglingObject);
+            Assert.assertTrue("A reference defined nowhere stays dangling", loaded.getObject("UNDEFINED:0000001") instanceof DanglingObject);
+            Assert.assertNotNull(loaded.getCategory("slim"));
+            for (IdentifiedObject object : loaded.getObjects()) {
+                if (object instanceof LinkedObject) {
+                    for (Link link : ((LinkedObject)object).getParents()) {
+                        Assert.assertSame(link.toString(), loaded.getObject(link.getParent().getID()), link.getParent());
+                        Assert.assertSame(link.toString(), loaded.getObject(link.getType().getID()), link.getType());
+                        Assert.assertTrue(link.toString(), link.getParent().getChildren().contains(link));
+                    }
+                }
+            }
+            final ObsoletableObject obsolete = (ObsoletableObject)loaded.getObject("TAO:0000003");
+            Assert.assertSame(loaded.getObject("TAO:0000002"), obsolete.getReplacedBy().iterator().next());
+            Assert.assertSame(loaded.getObject("PATO:0000002"), obsolete.getConsiderReplacements().iterator().next());
+        } finally {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+
+    @Test
+    public void fileDependingOnAnotherIsReadInOnePass() throws DataAdapterException, IOException {
+        final File folder = File.createTempFile("loader", "");
+        folder.delete();
+        folder.mkdirs();
+        try {
+            final List<File> sources = new ArrayList<File>();
+            sources.add(write(folder, "anatomy.obo", ANATOMY));
+            sources.add(write(folder, "quality.obo", QUALITY.replace("subsetdef: slim \"a slim\"\n", "")));
+            sources.add(write(folder, "relations.obo", RELATIONS));
+            final OBOSession loaded = new OntologyLoader(3).load(sources);
+            Assert.assertEquals(OntologySnapshotTest.describe(parse(sources)), OntologySnapshotTest.describe(loaded));
+        } finally {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+
+    private static File write(File folder, String name, String contents) throws IOException {
+        final File file = new File(folder, name);
+        FileUtils.writeStringToFile(file, contents);
+        return file;
+    }
+
+    private static OBOSession parse(List<File> sources) throws DataAdapterException {
+        final List<String> paths = new ArrayList<String>();
+        for (File source : sources) {
+            paths.add(source.getPath());
+        }
+        final OBOFileAdapter fileAdapter = new OBOFileAdapter();
+        final OBOFileAdapter.OBOAdapterConfiguration config = new OBOFileAdapter.OBOAdapterConfiguration();
+        config.setReadPaths(paths);
+        config.setBasicSave(false);
+        config.setAllowDangling(true);
+        config.setFollowImports(false);
+        return fileAdapter.doOperation(OBOAdapter.READ_ONTOLOGY, config, null);
+    }
+
+}
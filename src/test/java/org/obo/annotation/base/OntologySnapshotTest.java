@@ -0,0 +1,95 @@
+package org.obo.annotation.base;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.bbop.dataadapter.DataAdapterException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.dataadapter.OBOAdapter;
+import org.obo.dataadapter.OBOFileAdapter;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.Link;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.OBORestriction;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.Synonym;
+
+public class OntologySnapshotTest {
+
+    @Test
+    public void snapshotMatchesParsedSession() throws DataAdapterException, IOException {
+        final File folder = createTempFolder();
+        try {
+            final File source = new File(folder, "test.obo");
+            FileUtils.copyFile(new File("testfiles/normal_test_ontology.obo"), source);
+            final List<File> sources = Collections.singletonList(source);
+            final OntologySnapshot snapshot = new OntologySnapshot(new File(folder, "session.snapshot"));
+            Assert.assertNull("There is no snapshot before one is saved", snapshot.load(sources));
+            final OBOSession parsed = parse(source);
+            snapshot.save(parsed, sources);
+            final OBOSession restored = snapshot.load(sources);
+            Assert.assertNotNull(restored);
+            Assert.assertEquals(describe(parsed), describe(restored));
+            Assert.assertEquals(parsed.getDefaultNamespace(), restored.getDefaultNamespace());
+            final FileWriter writer = new FileWriter(source, true);
+            writer.write("\n");
+            writer.close();
+            Assert.assertNull("A changed source invalidates the snapshot", snapshot.load(sources));
+        } finally {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+
+    /**
+     * Summarizes everything about each object that Phenex uses, for comparing sessions.
+     */
+    static Set<String> describe(OBOSession session) {
+        final Set<String> descriptions = new TreeSet<String>();
+        for (IdentifiedObject object : session.getObjects()) {
+            final StringBuilder description = new StringBuilder(object.getID() + " " + object.getName() + " " + object.getNamespace());
+            if (object instanceof OBOObject) {
+                final OBOObject term = (OBOObject)object;
+                description.append(" def=" + term.getDefinition() + " " + new TreeSet<Object>(term.getDefDbxrefs()));
+                description.append(" comment=" + term.getComment() + " obsolete=" + term.isObsolete());
+                description.append(" alt=" + new TreeSet<String>(term.getSecondaryIDs()));
+                for (Synonym synonym : term.getSynonyms()) {
+                    description.append(" syn=" + synonym.getText() + "/" + synonym.getScope() + "/" + synonym.getSynonymType());
+                }
+                final Set<String> links = new TreeSet<String>();
+                for (Link link : term.getParents()) {
+                    links.add(link.getType().getID() + ">" + (link.getParent() != null ? link.getParent().getID() : null) + "/" + ((OBORestriction)link).getCompletes());
+                }
+                description.append(" links=" + links);
+                description.append(" children=" + term.getChildren().size());
+            }
+            descriptions.add(description.toString());
+        }
+        return descriptions;
+    }
+
+    private static OBOSession parse(File source) throws DataAdapterException {
+        final OBOFileAdapter fileAdapter = new OBOFileAdapter();
+        final OBOFileAdapter.OBOAdapterConfiguration config = new OBOFileAdapter.OBOAdapterConfiguration();
+        config.setReadPaths(Arrays.asList(new String[] {source.getPath()}));
+        config.setBasicSave(false);
+        config.setAllowDangling(true);
+        config.setFollowImports(false);
+        return fileAdapter.doOperation(OBOAdapter.READ_ONTOLOGY, config, null);
+    }
+
+    private static File createTempFolder() throws IOException {
+        final File folder = File.createTempFile("snapshot", "");
+        folder.delete();
+        folder.mkdirs();
+        return folder;
+    }
+
+}
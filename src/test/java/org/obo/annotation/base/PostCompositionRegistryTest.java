@@ -0,0 +1,73 @@
+package org.obo.annotation.base;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.annotation.base.OBOUtil.Differentium;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOProperty;
+import org.obo.datamodel.impl.DanglingClassImpl;
+import org.obo.datamodel.impl.OBOClassImpl;
+import org.obo.datamodel.impl.OBOPropertyImpl;
+
+public class PostCompositionRegistryTest {
+
+    private final OBOClass finRay = new OBOClassImpl("fin ray", "TAO:0001115");
+    private final OBOClass pectoralFin = new OBOClassImpl("pectoral fin", "TAO:0000151");
+    private final OBOClass left = new OBOClassImpl("left", "PATO:0000366");
+    private final OBOProperty partOf = new OBOPropertyImpl("OBO_REL:part_of", "part_of");
+    private final OBOProperty inheresIn = new OBOPropertyImpl("OBO_REL:inheres_in", "inheres_in");
+
+    @Test
+    public void equivalentCompositionsAreShared() {
+        final OBOClass composition = OBOUtil.createPostComposition(this.finRay, Arrays.asList(differentium(this.partOf, this.pectoralFin), differentium(this.inheresIn, this.left)));
+        final OBOClass reordered = OBOUtil.createPostComposition(this.finRay, Arrays.asList(differentium(this.inheresIn, this.left), differentium(this.partOf, this.pectoralFin)));
+        Assert.assertSame("Differentia order should not matter", composition, reordered);
+        Assert.assertEquals(composition.getID(), reordered.getID());
+        Assert.assertTrue(OBOUtil.isPostCompTerm(composition));
+        Assert.assertSame(this.finRay, OBOUtil.getGenusTerm(composition));
+        Assert.assertNotSame(composition, OBOUtil.createPostComposition(this.finRay, Collections.singletonList(differentium(this.partOf, this.pectoralFin))));
+    }
+
+    @Test
+    public void compositionsOfOtherObjectsAreNotShared() {
+        final OBOClass composition = OBOUtil.createPostComposition(this.finRay, Collections.singletonList(differentium(this.partOf, this.pectoralFin)));
+        final OBOClass dangler = new DanglingClassImpl(this.pectoralFin.getID());
+        final OBOClass danglingComposition = OBOUtil.createPostComposition(this.finRay, Collections.singletonList(differentium(this.partOf, dangler)));
+        Assert.assertEquals(composition.getID(), danglingComposition.getID());
+        Assert.assertNotSame("A composition should refer to the terms it was made from", composition, danglingComposition);
+        Assert.assertSame(dangler, OBOUtil.getAllDifferentia(danglingComposition).get(0).getParent());
+    }
+
+    @Test
+    public void unusedCompositionsAreCollected() throws InterruptedException {
+        final PostCompositionRegistry registry = PostCompositionRegistry.getShared();
+        final OBOClass genus = new OBOClassImpl("fin ray", "TAO:0001116");
+        final List<Differentium> differentia = Collections.singletonList(differentium(this.partOf, this.pectoralFin));
+        OBOClass composition = OBOUtil.createPostComposition(genus, differentia);
+        final String id = composition.getID();
+        Assert.assertSame(composition, registry.get(id, genus, differentia));
+        Assert.assertTrue("The genus does not link to the composition", genus.getChildren().isEmpty());
+        final WeakReference<OBOClass> reference = new WeakReference<OBOClass>(composition);
+        composition = null;
+        for (int i = 0; (i < 50) && (reference.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull("A composition whose terms are still in use can be collected", reference.get());
+        Assert.assertNull(registry.get(id, genus, differentia));
+        Assert.assertNotNull(genus.getID());
+    }
+
+    private static Differentium differentium(OBOProperty relation, OBOClass term) {
+        final Differentium differentium = new Differentium();
+        differentium.setRelation(relation);
+        differentium.setTerm(term);
+        return differentium;
+    }
+
+}
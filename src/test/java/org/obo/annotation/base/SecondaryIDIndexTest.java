@@ -0,0 +1,62 @@
+package org.obo.annotation.base;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.impl.OBOSessionImpl;
+
+public class SecondaryIDIndexTest {
+
+    @Test
+    public void termsAreFoundBySecondaryID() {
+        final OBOSession session = new OBOSessionImpl();
+        final OBOClass fin = addClass(session, "TAO:0000108");
+        fin.addSecondaryID("TAO:0001111");
+        fin.addSecondaryID("ZFA:0000108");
+        addClass(session, "TAO:0000040");
+        Assert.assertSame(fin, SecondaryIDIndex.getTerm(session, "TAO:0001111"));
+        Assert.assertSame(fin, SecondaryIDIndex.getTerm(session, "ZFA:0000108"));
+        Assert.assertNull("Primary IDs are not secondary IDs", SecondaryIDIndex.getTerm(session, "TAO:0000040"));
+        Assert.assertNull(SecondaryIDIndex.getTerm(session, "TAO:9999999"));
+        Assert.assertNull("Each session has its own index", SecondaryIDIndex.getTerm(new OBOSessionImpl(), "TAO:0001111"));
+    }
+
+    @Test
+    public void addedTermsAreIndexed() {
+        final OBOSession session = new OBOSessionImpl();
+        final OBOClass fin = addClass(session, "TAO:0000108");
+        fin.addSecondaryID("TAO:0001111");
+        Assert.assertNull(SecondaryIDIndex.getTerm(session, "PROVISIONAL:2"));
+        final OBOClass provisional = addClass(session, "PROVISIONAL:1");
+        provisional.addSecondaryID("PROVISIONAL:2");
+        provisional.addSecondaryID("TAO:0001111");
+        SecondaryIDIndex.addTerms(session, Collections.singleton(provisional));
+        Assert.assertSame(provisional, SecondaryIDIndex.getTerm(session, "PROVISIONAL:2"));
+        Assert.assertSame("An indexed secondary ID keeps its term", fin, SecondaryIDIndex.getTerm(session, "TAO:0001111"));
+    }
+
+    @Test
+    public void indexedSessionCanBeCollected() throws InterruptedException {
+        OBOSession session = new OBOSessionImpl();
+        addClass(session, "TAO:0000108").addSecondaryID("TAO:0001111");
+        Assert.assertNotNull(SecondaryIDIndex.getTerm(session, "TAO:0001111"));
+        final WeakReference<OBOSession> reference = new WeakReference<OBOSession>(session);
+        session = null;
+        for (int i = 0; (i < 50) && (reference.get() != null); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull("The index does not keep its session alive", reference.get());
+    }
+
+    private static OBOClass addClass(OBOSession session, String id) {
+        final OBOClass term = (OBOClass)session.getObjectFactory().createObject(id, OBOClass.OBO_CLASS, false);
+        session.addObject(term);
+        return term;
+    }
+
+}
@@ -0,0 +1,137 @@
+package org.obo.annotation.base;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.Namespace;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.OBOProperty;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.ObjectFactory;
+import org.obo.datamodel.TermSubset;
+import org.obo.datamodel.impl.OBOSessionImpl;
+import org.obo.filters.AncestorSearchAspect;
+import org.obo.filters.CompoundFilter;
+import org.obo.filters.CompoundFilterImpl;
+import org.obo.filters.EqualsComparison;
+import org.obo.filters.Filter;
+import org.obo.filters.IDSearchCriterion;
+import org.obo.filters.IsClassCriterion;
+import org.obo.filters.IsObsoleteCriterion;
+import org.obo.filters.NamespaceSearchCriterion;
+import org.obo.filters.ObjectFilterImpl;
+import org.obo.filters.SearchComparison;
+import org.obo.filters.SearchCriterion;
+import org.obo.filters.StartsWithComparison;
+import org.obo.filters.SubsetSearchCriterion;
+import org.obo.query.QueryEngine;
+import org.obo.query.impl.FilterQuery;
+import org.obo.query.impl.SearchHit;
+
+public class TermFilterCompilerTest {
+
+    private OBOSession session;
+    private TermFilterCompiler compiler;
+
+    @Before
+    public void createSession() {
+        this.session = new OBOSessionImpl();
+        final ObjectFactory factory = this.session.getObjectFactory();
+        final Namespace anatomy = new Namespace("anatomy");
+        final Namespace quality = new Namespace("quality");
+        this.session.addNamespace(anatomy);
+        this.session.addNamespace(quality);
+        final TermSubset slim = factory.createSubset("slim", "a slim");
+        this.session.addSubset(slim);
+        final OBOClass root = this.addClass("TAO:0000001", anatomy);
+        final OBOClass fin = this.addClass("TAO:0000002", anatomy);
+        fin.addParent(factory.createOBORestriction(fin, OBOProperty.IS_A, root, false));
+        fin.addCategory(slim);
+        fin.addSecondaryID("ZFA:0000002");
+        final OBOClass obsolete = this.addClass("TAO:0000003", anatomy);
+        obsolete.setObsolete(true);
+        obsolete.addCategory(slim);
+        this.addClass("PATO:0000001", quality);
+        final OBOProperty property = (OBOProperty)factory.createObject("part_of", OBOClass.OBO_PROPERTY, false);
+        property.setNamespace(quality);
+        this.session.addObject(property);
+        this.compiler = new TermFilterCompiler(this.session.getObjects());
+    }
+
+    @Test
+    public void compiledTestsMatchFilterQuery() {
+        this.assertMatchesQuery(createFilter(new IsClassCriterion(), null, null, false), 4);
+        this.assertMatchesQuery(createFilter(new IsObsoleteCriterion(), null, null, true), 4);
+        this.assertMatchesQuery(createFilter(new NamespaceSearchCriterion(), new EqualsComparison(), "ANATOMY", false), 3);
+        this.assertMatchesQuery(createFilter(new NamespaceSearchCriterion(), new StartsWithComparison(), "qual", true), 3);
+        this.assertMatchesQuery(createFilter(new SubsetSearchCriterion(), new EqualsComparison(), "slim", false), 2);
+        this.assertMatchesQuery(createFilter(new IDSearchCriterion(), new StartsWithComparison(), "tao:", false), 3);
+        this.assertMatchesQuery(createFilter(new IDSearchCriterion(), new EqualsComparison(), "ZFA:0000002", false), 1);
+        this.assertMatchesQuery(createFilter(new IDSearchCriterion(true), new StartsWithComparison(), "TAO:", false), 2);
+    }
+
+    @Test
+    public void compoundFiltersMatchFilterQuery() {
+        final CompoundFilter and = new CompoundFilterImpl(CompoundFilter.AND);
+        and.addFilter(createFilter(new NamespaceSearchCriterion(), new EqualsComparison(), "anatomy", false));
+        and.addFilter(createFilter(new IsObsoleteCriterion(), null, null, true));
+        final CompoundFilter or = new CompoundFilterImpl(CompoundFilter.OR);
+        or.addFilter(and);
+        or.addFilter(createFilter(new IDSearchCriterion(), new EqualsComparison(), "PATO:0000001", false));
+        this.assertMatchesQuery(castFilter(or), 3);
+        this.assertMatchesQuery(castFilter(new CompoundFilterImpl(CompoundFilter.AND)), 5);
+    }
+
+    @Test
+    public void uncompilableTestsAreEvaluatedByFilter() {
+        final ObjectFilterImpl ancestor = createFilter(new IDSearchCriterion(), new EqualsComparison(), "TAO:0000001", false);
+        ancestor.setAspect(new AncestorSearchAspect());
+        final CompoundFilter and = new CompoundFilterImpl(CompoundFilter.AND);
+        and.addFilter(ancestor);
+        and.addFilter(createFilter(new SubsetSearchCriterion(), new EqualsComparison(), "slim", false));
+        this.assertMatchesQuery(castFilter(and), 1);
+    }
+
+    private void assertMatchesQuery(Filter<IdentifiedObject> filter, int expectedCount) {
+        final QueryEngine engine = new QueryEngine(this.session);
+        final Collection<SearchHit<IdentifiedObject>> hits = engine.query(new FilterQuery<IdentifiedObject>(filter, IdentifiedObject.class, null));
+        final List<IdentifiedObject> queried = new ArrayList<IdentifiedObject>();
+        for (SearchHit<IdentifiedObject> hit : hits) {
+            queried.add(hit.getHit());
+        }
+        final List<OBOObject> compiled = this.compiler.getMatches(filter);
+        Assert.assertEquals(filter.toString(), expectedCount, queried.size());
+        Assert.assertTrue(filter.toString(), compiled.containsAll(queried));
+        Assert.assertEquals(filter.toString(), queried.size(), compiled.size());
+    }
+
+    private OBOClass addClass(String id, Namespace namespace) {
+        final OBOClass term = (OBOClass)this.session.getObjectFactory().createObject(id, OBOClass.OBO_CLASS, false);
+        term.setNamespace(namespace);
+        this.session.addObject(term);
+        return term;
+    }
+
+    private static ObjectFilterImpl createFilter(SearchCriterion<?, ?> criterion, SearchComparison comparison, String value, boolean negate) {
+        final ObjectFilterImpl filter = new ObjectFilterImpl();
+        filter.setCriterion(criterion);
+        if (comparison != null) {
+            filter.setComparison(comparison);
+        }
+        filter.setValue(value);
+        filter.setNegate(negate);
+        return filter;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Filter<IdentifiedObject> castFilter(Filter<?> filter) {
+        return (Filter<IdentifiedObject>)filter;
+    }
+
+}
@@ -0,0 +1,152 @@
+package org.obo.annotation.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.impl.OBOClassImpl;
+import org.obo.datamodel.impl.SynonymImpl;
+
+public class TermSearchIndexTest {
+
+    private TermSearchIndex index;
+
+    @Before
+    public void buildIndex() {
+        final List<OBOObject> terms = new ArrayList<OBOObject>();
+        terms.add(new OBOClassImpl("pectoral fin", "UBERON:0000151"));
+        terms.add(new OBOClassImpl("pectoral fin ray", "UBERON:4000175"));
+        terms.add(new OBOClassImpl("dorsal fin", "UBERON:0003097"));
+        final OBOClassImpl round = new OBOClassImpl("round", "PATO:0000411");
+        round.addSynonym(new SynonymImpl("Circular"));
+        terms.add(round);
+        terms.add(new OBOClassImpl("Fin Ray", "UBERON:0002000"));
+        this.index = new TermSearchIndex(terms);
+    }
+
+    @Test
+    public void startsWithBeforeContainedIn() {
+        final TermSearchIndex.Result result = this.index.search("FIN RAY");
+        Assert.assertEquals("One label starts with the query", 1, result.getStartsWith().length);
+        Assert.assertEquals("Label matching ignores case", "Fin Ray", this.index.getLabel(result.getStartsWith()[0]));
+        Assert.assertEquals("One label contains the query", 1, result.getContainedIn().length);
+        Assert.assertEquals("pectoral fin ray", this.index.getLabel(result.getContainedIn()[0]));
+    }
+
+    @Test
+    public void resultsAreInLabelOrder() {
+        final TermSearchIndex.Result result = this.index.search("fin");
+        final List<String> labels = new ArrayList<String>();
+        for (int entry : result.getContainedIn()) {
+            labels.add(this.index.getLabel(entry));
+        }
+        Assert.assertEquals("[dorsal fin, pectoral fin, pectoral fin ray]", labels.toString());
+    }
+
+    @Test
+    public void shortQueriesAndSynonyms() {
+        final TermSearchIndex.Result result = this.index.search("ci");
+        Assert.assertEquals(1, result.getStartsWith().length);
+        final int entry = result.getStartsWith()[0];
+        Assert.assertTrue("Hit should be flagged as a synonym", this.index.isSynonym(entry));
+        Assert.assertEquals("PATO:0000411", this.index.getTerm(entry).getID());
+        Assert.assertEquals("Empty input matches every label", this.index.size(), this.index.search("").getStartsWith().length);
+    }
+
+    @Test
+    public void noMatches() {
+        final TermSearchIndex.Result result = this.index.search("fin rays");
+        Assert.assertEquals(0, result.getStartsWith().length + result.getContainedIn().length);
+    }
+
+    @Test
+    public void refiningMatchesFullSearch() {
+        TermSearchIndex.Result previous = null;
+        for (String input : new String[] {"f", "fi", "fin", "fin ", "fin r", "fin ra", "fin", "d", "do"}) {
+            final TermSearchIndex.Result refined = this.index.search(input, previous);
+            final TermSearchIndex.Result full = this.index.search(input);
+            Assert.assertArrayEquals("Refined starts-with hits for " + input, full.getStartsWith(), refined.getStartsWith());
+            Assert.assertArrayEquals("Refined contained-in hits for " + input, full.getContainedIn(), refined.getContainedIn());
+            previous = refined;
+        }
+    }
+
+    @Test
+    public void exactLabels() {
+        final int[] name = this.index.findExact("round");
+        Assert.assertEquals(1, name.length);
+        Assert.assertFalse(this.index.isSynonym(name[0]));
+        final int[] synonym = this.index.findExact("Circular");
+        Assert.assertEquals(1, synonym.length);
+        Assert.assertEquals("PATO:0000411", this.index.getTerm(synonym[0]).getID());
+        Assert.assertEquals("Exact lookup is case sensitive", 0, this.index.findExact("circular").length);
+    }
+
+    @Test
+    public void termEntries() {
+        final OBOObject round = this.index.getTerm(this.index.findExact("round")[0]);
+        Assert.assertEquals("[Circular, round]", labels(this.index, this.index.getEntries(round)).toString());
+        Assert.assertEquals(0, this.index.getEntries(new OBOClassImpl("anal fin", "UBERON:4000163")).length);
+        final TermSearchIndex.Result result = this.index.search("fin ray");
+        for (int entry = 0; entry < this.index.size(); entry++) {
+            Assert.assertEquals(Arrays.binarySearch(result.getStartsWith(), entry) > -1, result.isStartsWith(entry));
+            Assert.assertEquals(Arrays.binarySearch(result.getContainedIn(), entry) > -1, result.isContainedIn(entry));
+        }
+        final TermSearchIndex derived = this.index.withChanges(Collections.singleton(round), Collections.<OBOObject>emptyList());
+        Assert.assertEquals("Hidden terms have no entries", 0, derived.getEntries(round).length);
+    }
+
+    @Test
+    public void fuzzyMatches() {
+        final List<String> labels = new ArrayList<String>();
+        for (int entry : this.index.searchFuzzy("pectorral fin", 10, Long.MAX_VALUE)) {
+            labels.add(this.index.getLabel(entry));
+        }
+        Assert.assertEquals("[pectoral fin, pectoral fin ray]", labels.toString());
+        Assert.assertEquals("Short input is not fuzzy matched", 0, this.index.searchFuzzy("dorsl", 10, Long.MAX_VALUE).length);
+        for (int entry : this.index.searchFuzzy("dorsal fin", 10, Long.MAX_VALUE)) {
+            Assert.assertFalse("Exact matches are left to the substring search", this.index.getLabel(entry).contains("dorsal fin"));
+        }
+    }
+
+    @Test
+    public void derivedIndexMatchesRebuiltIndex() {
+        final OBOObject anal = new OBOClassImpl("anal fin", "UBERON:4000163");
+        final OBOObject renamed = new OBOClassImpl("pelvic fin", "UBERON:0000151");
+        final OBOObject removed = this.index.getTerm(this.index.findExact("dorsal fin")[0]);
+        final TermSearchIndex derived = this.index.withChanges(Collections.singleton(removed), Arrays.asList(anal, renamed));
+        final List<OBOObject> terms = new ArrayList<OBOObject>(this.index.getTerms());
+        terms.remove(removed);
+        terms.removeAll(Arrays.asList(anal, renamed));
+        terms.addAll(Arrays.asList(anal, renamed));
+        final TermSearchIndex rebuilt = new TermSearchIndex(terms);
+        TermSearchIndex.Result previous = null;
+        for (String input : new String[] {"", "f", "fin", "fin r", "pe", "pec", "pel", "anal", "circ"}) {
+            final TermSearchIndex.Result result = derived.search(input, previous);
+            Assert.assertEquals("Starts-with hits for " + input, labels(rebuilt, rebuilt.search(input).getStartsWith()), labels(derived, result.getStartsWith()));
+            Assert.assertEquals("Contained-in hits for " + input, labels(rebuilt, rebuilt.search(input).getContainedIn()), labels(derived, result.getContainedIn()));
+            previous = result;
+        }
+        Assert.assertEquals(0, derived.findExact("pectoral fin").length);
+        Assert.assertEquals("UBERON:0000151", derived.getTerm(derived.findExact("pelvic fin")[0]).getID());
+        Assert.assertEquals(labels(rebuilt, rebuilt.searchFuzzy("pectorral fin", 10, Long.MAX_VALUE)), labels(derived, derived.searchFuzzy("pectorral fin", 10, Long.MAX_VALUE)));
+        Assert.assertEquals("The original index is unchanged", 1, this.index.findExact("dorsal fin").length);
+        final TermSearchIndex twiceDerived = derived.withChanges(Collections.singleton(anal), Collections.<OBOObject>emptyList());
+        Assert.assertEquals("[pectoral fin ray, pelvic fin]", labels(twiceDerived, twiceDerived.search("pe").getStartsWith()).toString());
+        Assert.assertEquals(0, twiceDerived.search("anal").size());
+    }
+
+    private static List<String> labels(TermSearchIndex index, int[] entries) {
+        final List<String> labels = new ArrayList<String>();
+        for (int entry : entries) {
+            labels.add(index.getLabel(entry));
+        }
+        return labels;
+    }
+
+}
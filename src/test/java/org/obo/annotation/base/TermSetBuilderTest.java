@@ -0,0 +1,56 @@
+package org.obo.annotation.base;
+
+import java.beans.XMLDecoder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bbop.dataadapter.DataAdapterException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.dataadapter.OBOAdapter;
+import org.obo.dataadapter.OBOFileAdapter;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.OBOSession;
+import org.obo.filters.Filter;
+
+public class TermSetBuilderTest {
+
+    private static final String[] FILTERS = {"entities", "qualities", "relations", "units", "taxa", "museums", "postcomposition", "allterms", "allpublicterms"};
+
+    @Test
+    public void singlePassMatchesSeparateQueries() throws DataAdapterException {
+        final OBOFileAdapter fileAdapter = new OBOFileAdapter();
+        final OBOFileAdapter.OBOAdapterConfiguration config = new OBOFileAdapter.OBOAdapterConfiguration();
+        config.setReadPaths(Arrays.asList(new String[] {"testfiles/normal_test_ontology.obo"}));
+        config.setBasicSave(false);
+        config.setAllowDangling(true);
+        config.setFollowImports(false);
+        final OBOSession session = fileAdapter.doOperation(OBOAdapter.READ_ONTOLOGY, config, null);
+        final TermSetBuilder builder = new TermSetBuilder(session.getObjects());
+        final Map<String, TermSet> built = new LinkedHashMap<String, TermSet>();
+        for (String name : FILTERS) {
+            final TermSet termSet = new TermSet(session, null);
+            termSet.setTermFilter(loadFilter(name));
+            builder.add(name, termSet);
+            built.put(name, termSet);
+        }
+        builder.build();
+        for (String name : FILTERS) {
+            final TermSet queried = new TermSet(session, null);
+            queried.setTermFilter(loadFilter(name));
+            Assert.assertEquals("Terms for " + name, new HashSet<Object>(queried.getTerms()), new HashSet<Object>(built.get(name).getTerms()));
+        }
+        Assert.assertFalse(built.get("allterms").getTerms().isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Filter<IdentifiedObject> loadFilter(String name) {
+        final XMLDecoder decoder = new XMLDecoder(TermSetBuilderTest.class.getResourceAsStream("/org/phenoscape/filters/" + name + ".xml"));
+        final Filter<IdentifiedObject> filter = (Filter<IdentifiedObject>)decoder.readObject();
+        decoder.close();
+        return filter;
+    }
+
+}
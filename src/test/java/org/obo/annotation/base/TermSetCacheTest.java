@@ -0,0 +1,85 @@
+package org.obo.annotation.base;
+
+import java.beans.XMLDecoder;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.bbop.dataadapter.DataAdapterException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.dataadapter.OBOAdapter;
+import org.obo.dataadapter.OBOFileAdapter;
+import org.obo.datamodel.IdentifiedObject;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.impl.OBOClassImpl;
+import org.obo.filters.Filter;
+
+public class TermSetCacheTest {
+
+    @Test
+    public void restoredTermSetMatchesSavedTermSet() throws DataAdapterException, IOException {
+        final OBOSession session = loadSession();
+        final File folder = File.createTempFile("termsets", "");
+        folder.delete();
+        try {
+            final TermSetCache cache = new TermSetCache(folder, "sources-1");
+            final OBOObject provisional = new OBOClassImpl("provisional term", "PROVISIONAL:1");
+            final List<OBOObject> terms = new ArrayList<OBOObject>(createTermSet(session).getTerms());
+            terms.add(provisional);
+            final TermSet saved = createTermSet(session);
+            saved.setTerms(terms, new TermSearchIndex(terms));
+            cache.save("allterms", "filter-1", saved);
+
+            final TermSet restored = createTermSet(session);
+            Assert.assertFalse("A changed filter is not restored", cache.load("allterms", "filter-2", restored));
+            Assert.assertFalse("Changed sources are not restored", new TermSetCache(folder, "sources-2").load("allterms", "filter-1", restored));
+            Assert.assertFalse(restored.isReady());
+            Assert.assertTrue(cache.load("allterms", "filter-1", restored));
+            Assert.assertTrue("The search index is restored with the terms", restored.isReady());
+            final TermSet computed = createTermSet(session);
+            Assert.assertEquals(new HashSet<OBOObject>(computed.getTerms()), new HashSet<OBOObject>(restored.getTerms()));
+            Assert.assertFalse("Terms no longer in the session are left out", restored.getTerms().contains(provisional));
+            for (String input : new String[] {"a", "fin", "bone", "provisional"}) {
+                Assert.assertArrayEquals(input, labels(computed.getSearchIndex(), computed.getSearchIndex().search(input).getStartsWith()), labels(restored.getSearchIndex(), restored.getSearchIndex().search(input).getStartsWith()));
+                Assert.assertArrayEquals(input, labels(computed.getSearchIndex(), computed.getSearchIndex().search(input).getContainedIn()), labels(restored.getSearchIndex(), restored.getSearchIndex().search(input).getContainedIn()));
+            }
+        } finally {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+
+    private static TermSet createTermSet(OBOSession session) {
+        final TermSet termSet = new TermSet(session, null);
+        final XMLDecoder decoder = new XMLDecoder(TermSetCacheTest.class.getResourceAsStream("/org/phenoscape/filters/allterms.xml"));
+        @SuppressWarnings("unchecked")
+        final Filter<IdentifiedObject> filter = (Filter<IdentifiedObject>)decoder.readObject();
+        decoder.close();
+        termSet.setTermFilter(filter);
+        return termSet;
+    }
+
+    private static String[] labels(TermSearchIndex index, int[] entries) {
+        final String[] labels = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            labels[i] = index.getLabel(entries[i]);
+        }
+        return labels;
+    }
+
+    private static OBOSession loadSession() throws DataAdapterException {
+        final OBOFileAdapter fileAdapter = new OBOFileAdapter();
+        final OBOFileAdapter.OBOAdapterConfiguration config = new OBOFileAdapter.OBOAdapterConfiguration();
+        config.setReadPaths(Arrays.asList(new String[] {"testfiles/normal_test_ontology.obo"}));
+        config.setBasicSave(false);
+        config.setAllowDangling(true);
+        config.setFollowImports(false);
+        return fileAdapter.doOperation(OBOAdapter.READ_ONTOLOGY, config, null);
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.obo.annotation.base;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.datamodel.OBOObject;
+import org.obo.datamodel.impl.OBOClassImpl;
+import org.obo.datamodel.impl.OBOSessionImpl;
+import org.obo.filters.CompoundFilterImpl;
+
+public class TermSetTest {
+
+    @Test
+    public void readinessFollowsSearchIndex() {
+        final TermSet termSet = new TermSet(new OBOSessionImpl(), null);
+        termSet.setTermFilter(new CompoundFilterImpl());
+        final CompletableFuture<TermSet> readiness = termSet.getReadiness().toCompletableFuture();
+        Assert.assertFalse(termSet.isReady());
+        Assert.assertFalse("Asking for readiness does not compute the terms", readiness.isDone());
+        termSet.getSearchIndex();
+        Assert.assertTrue(termSet.isReady());
+        Assert.assertSame(termSet, readiness.getNow(null));
+        termSet.invalidateTerms();
+        Assert.assertFalse(termSet.isReady());
+        Assert.assertFalse("Invalidated terms are awaited again", termSet.getReadiness().toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void termsAreUpdatedIncrementally() {
+        final TermSet termSet = new TermSet(new OBOSessionImpl(), null);
+        termSet.setTermFilter(new CompoundFilterImpl());
+        final OBOObject term = new OBOClassImpl("provisional fin", "PROVISIONAL:1");
+        termSet.addTerms(Collections.singleton(term));
+        Assert.assertFalse("Terms not yet computed are left to be computed", termSet.getTerms().contains(term));
+        termSet.getSearchIndex();
+        termSet.addTerms(Collections.singleton(term));
+        Assert.assertTrue(termSet.getTerms().contains(term));
+        Assert.assertTrue("The search index stays ready", termSet.isReady());
+        Assert.assertEquals(1, termSet.getSearchIndex().findExact("provisional fin").length);
+        termSet.addTerms(Collections.singleton(term));
+        Assert.assertEquals("Adding a term again replaces it", 1, Collections.frequency(termSet.getTerms(), term));
+        termSet.removeTerms(Collections.singleton(term));
+        Assert.assertFalse(termSet.getTerms().contains(term));
+        Assert.assertEquals(0, termSet.getSearchIndex().findExact("provisional fin").length);
+    }
+
+}
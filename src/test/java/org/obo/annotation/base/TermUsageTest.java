@@ -0,0 +1,71 @@
+package org.obo.annotation.base;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.datamodel.impl.OBOClassImpl;
+
+public class TermUsageTest {
+
+    @Test
+    public void usesArePersistedAndScored() throws IOException {
+        final File storage = File.createTempFile("term_usage", ".tab");
+        storage.delete();
+        try {
+            final TermUsage usage = new TermUsage(storage);
+            final OBOClassImpl fin = new OBOClassImpl("pectoral fin", "UBERON:0000151");
+            final OBOClassImpl round = new OBOClassImpl("round", "PATO:0000411");
+            usage.recordUse(fin);
+            usage.recordUse(fin);
+            usage.recordUse(round);
+            Assert.assertFalse("Uses are written in the background, not as they are recorded", storage.exists());
+            usage.flush();
+            final Map<String, Double> scores = new TermUsage(storage).getScores();
+            Assert.assertEquals("Only used terms are scored", 2, scores.size());
+            Assert.assertTrue("More frequently used terms score higher", scores.get("UBERON:0000151") > scores.get("PATO:0000411"));
+        } finally {
+            storage.delete();
+        }
+    }
+
+    @Test
+    public void documentTermsAreBoosted() throws IOException {
+        final File storage = File.createTempFile("term_usage", ".tab");
+        storage.delete();
+        try {
+            final TermUsage usage = new TermUsage(storage);
+            usage.setDocumentTerms(Collections.singleton(new OBOClassImpl("dorsal fin", "UBERON:0003097")));
+            Assert.assertTrue(usage.getScores().get("UBERON:0003097") > 0);
+            Assert.assertFalse("Document terms are not persisted", storage.exists());
+        } finally {
+            storage.delete();
+        }
+    }
+
+    @Test
+    public void longUnusedTermsAreDropped() throws IOException {
+        final File storage = File.createTempFile("term_usage", ".tab");
+        try {
+            final Writer writer = new FileWriter(storage);
+            writer.write("TAO:0000001\t3\t0\n");
+            writer.write("TAO:0000002\t3\t" + System.currentTimeMillis() + "\n");
+            writer.close();
+            final TermUsage usage = new TermUsage(storage);
+            usage.recordUse(new OBOClassImpl("round", "PATO:0000411"));
+            usage.flush();
+            final Map<String, Double> scores = new TermUsage(storage).getScores();
+            Assert.assertFalse("Terms not used for years should be dropped", scores.containsKey("TAO:0000001"));
+            Assert.assertTrue(scores.containsKey("TAO:0000002"));
+            Assert.assertTrue(scores.containsKey("PATO:0000411"));
+        } finally {
+            storage.delete();
+        }
+    }
+
+}
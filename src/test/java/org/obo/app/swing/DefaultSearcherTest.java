@@ -0,0 +1,71 @@
+package org.obo.app.swing;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.odell.glazedlists.BasicEventList;
+import ca.odell.glazedlists.EventList;
+
+public class DefaultSearcherTest {
+
+    private static final List<String> CHOICES = Arrays.asList("specimen 10", "specimen 2", "specimen 1", "type specimen", "holotype", "paratype specimen");
+
+    @Test
+    public void limitedHitsAreBestFirst() throws InterruptedException {
+        final DefaultSearcher<String> searcher = new DefaultSearcher<String>(CHOICES, String.class);
+        Assert.assertEquals("[specimen 1, specimen 2, specimen 10, paratype specimen, type specimen]", matchTexts(searcher.search("spec", Integer.MAX_VALUE)).toString());
+        Assert.assertEquals("[specimen 1, specimen 2]", matchTexts(searcher.search("spec", 2)).toString());
+        Assert.assertEquals("[specimen 1, specimen 2, specimen 10, paratype specimen]", matchTexts(searcher.search("spec", 4)).toString());
+    }
+
+    @Test
+    public void extendedInputMatchesFreshSearch() throws InterruptedException {
+        final DefaultSearcher<String> searcher = new DefaultSearcher<String>(CHOICES, String.class);
+        for (String input : new String[] {"t", "ty", "typ", "type", "type ", "ty", "h"}) {
+            final List<String> refined = matchTexts(searcher.search(input, 10));
+            final List<String> fresh = matchTexts(new DefaultSearcher<String>(CHOICES, String.class).search(input, 10));
+            Assert.assertEquals("Hits for " + input, fresh, refined);
+        }
+    }
+
+    @Test
+    public void modifiedChoicesAreSearchedAgain() throws InterruptedException {
+        final EventList<String> choices = new BasicEventList<String>();
+        choices.addAll(CHOICES);
+        final DefaultSearcher<String> searcher = new DefaultSearcher<String>(choices, String.class);
+        Assert.assertEquals("[holotype]", matchTexts(searcher.search("hol", 10)).toString());
+        choices.set(choices.indexOf("holotype"), "holly");
+        choices.set(choices.indexOf("specimen 1"), "holdfast");
+        Assert.assertEquals("Replacing choices without changing their number should not give stale hits", "[holdfast]", matchTexts(searcher.search("hold", 10)).toString());
+    }
+
+    @Test
+    public void choicesDoNotKeepSearchersAlive() throws InterruptedException {
+        final EventList<String> choices = new BasicEventList<String>();
+        choices.addAll(CHOICES);
+        DefaultSearcher<String> searcher = new DefaultSearcher<String>(choices, String.class);
+        searcher.search("spec", 10);
+        final WeakReference<DefaultSearcher<String>> reference = new WeakReference<DefaultSearcher<String>>(searcher);
+        searcher = null;
+        for (int i = 0; (i < 50) && (reference.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull("The choices should not keep their searcher alive", reference.get());
+        choices.add("specimen 3");
+    }
+
+    private static List<String> matchTexts(List<SearchHit<String>> hits) {
+        final List<String> texts = new ArrayList<String>();
+        for (SearchHit<String> hit : hits) {
+            texts.add(hit.getMatchText());
+        }
+        return texts;
+    }
+
+}
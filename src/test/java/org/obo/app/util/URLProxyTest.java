@@ -0,0 +1,142 @@
+package org.obo.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class URLProxyTest {
+
+    private HttpServer server;
+    private File cacheFolder;
+    private volatile String content = "format-version: 1.2\n";
+    private volatile String eTag = "\"v1\"";
+    private final List<Integer> responses = new ArrayList<Integer>();
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/ontology.obo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    respond(exchange, 304, null);
+                } else {
+                    exchange.getResponseHeaders().set("ETag", eTag);
+                    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                    if ("gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+                        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                        final GZIPOutputStream gzip = new GZIPOutputStream(body);
+                        gzip.write(content.getBytes("UTF-8"));
+                        gzip.close();
+                    } else {
+                        body.write(content.getBytes("UTF-8"));
+                    }
+                    respond(exchange, 200, body.toByteArray());
+                }
+            }
+        });
+        this.server.start();
+        this.cacheFolder = File.createTempFile("proxy", "");
+        this.cacheFolder.delete();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        this.server.stop(0);
+        FileUtils.deleteDirectory(this.cacheFolder);
+    }
+
+    @Test
+    public void unchangedResourceIsNotDownloadedAgain() throws IOException {
+        final URL url = this.getURL();
+        final URLProxy proxy = new URLProxy(this.cacheFolder);
+        Assert.assertEquals("Compressed response is stored decompressed", this.content, FileUtils.readFileToString(proxy.get(url), "UTF-8"));
+        Assert.assertEquals("Cached copy is still used", this.content, FileUtils.readFileToString(proxy.get(url), "UTF-8"));
+        this.content = "format-version: 1.4\n";
+        this.eTag = "\"v2\"";
+        Assert.assertEquals("Changed resource is downloaded", this.content, FileUtils.readFileToString(proxy.get(url), "UTF-8"));
+        synchronized (this.responses) {
+            Assert.assertEquals("Each check is a single request", "[200, 304, 200]", this.responses.toString());
+        }
+    }
+
+    @Test
+    public void cachedCopyIsUsedWhenServerIsUnreachable() throws IOException {
+        final URL url = this.getURL();
+        final URLProxy proxy = new URLProxy(this.cacheFolder);
+        proxy.setTimeout(1000);
+        proxy.get(url);
+        this.server.stop(0);
+        Assert.assertEquals(this.content, FileUtils.readFileToString(proxy.get(url), "UTF-8"));
+    }
+
+    @Test
+    public void legacyMetadataIsMigrated() throws IOException {
+        final URL url = this.getURL();
+        this.cacheFolder.mkdirs();
+        final Map<String, Object> urlMetadata = new HashMap<String, Object>();
+        urlMetadata.put("uuid", "legacy-file");
+        urlMetadata.put("etag", this.eTag);
+        final Map<String, Object> metadata = new HashMap<String, Object>();
+        metadata.put(url.toString(), urlMetadata);
+        final ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(new File(this.cacheFolder, ".proxy_metadata")));
+        output.writeObject(metadata);
+        output.close();
+        FileUtils.writeStringToFile(new File(this.cacheFolder, "legacy-file"), this.content, "UTF-8");
+        Assert.assertEquals("Previously cached file is still used", new File(this.cacheFolder, "legacy-file"), new URLProxy(this.cacheFolder).get(url));
+        Assert.assertFalse(new File(this.cacheFolder, ".proxy_metadata").exists());
+        Assert.assertEquals("Migrated metadata is persisted", new File(this.cacheFolder, "legacy-file"), new URLProxy(this.cacheFolder).get(url));
+        synchronized (this.responses) {
+            Assert.assertEquals("Migrated ETag is used", "[304, 304]", this.responses.toString());
+        }
+    }
+
+    @Test
+    public void malformedIndexLineIsSkipped() throws IOException {
+        final URL url = this.getURL();
+        this.cacheFolder.mkdirs();
+        FileUtils.writeStringToFile(new File(this.cacheFolder, "cache_index.tab"), "http://example.org/other.obo\tother-file\tnot-a-date\t\n" + url + "\tcached-file\t\t" + this.eTag + "\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(this.cacheFolder, "cached-file"), this.content, "UTF-8");
+        Assert.assertEquals("Entries after a bad line are still used", new File(this.cacheFolder, "cached-file"), new URLProxy(this.cacheFolder).get(url));
+        synchronized (this.responses) {
+            Assert.assertEquals("[304]", this.responses.toString());
+        }
+    }
+
+    private URL getURL() throws IOException {
+        return new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + "/ontology.obo");
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        synchronized (this.responses) {
+            this.responses.add(status);
+        }
+        exchange.sendResponseHeaders(status, body != null ? body.length : -1);
+        final OutputStream output = exchange.getResponseBody();
+        if (body != null) {
+            output.write(body);
+        }
+        output.close();
+    }
+
+}
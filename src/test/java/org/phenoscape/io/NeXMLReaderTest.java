@@ -2,15 +2,24 @@ package org.phenoscape.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.xmlbeans.XmlException;
 import org.junit.Assert;
 import org.junit.Test;
+import org.obo.datamodel.OBOClass;
 import org.obo.datamodel.OBOSession;
 import org.obo.datamodel.impl.OBOClassImpl;
 import org.obo.datamodel.impl.OBOSessionImpl;
+import org.phenoscape.model.Character;
+import org.phenoscape.model.DataSet;
 import org.phenoscape.model.Phenotype;
+import org.phenoscape.model.State;
 import org.phenoscape.model.Taxon;
 
 public class NeXMLReaderTest {
@@ -37,4 +46,48 @@ public class NeXMLReaderTest {
         Assert.assertTrue("Quick check that IDs of danglers can be successfully written", xml.contains("PATO:0000318"));
     }
 
+    @Test
+    public void decodesPhenotypesInDocumentOrder() throws XmlException, IOException {
+        final DataSet data = new DataSet();
+        for (int i = 0; i < 100; i++) {
+            final Character character = data.newCharacter();
+            for (int j = 0; j < 3; j++) {
+                final State state = character.newState();
+                for (int k = 0; k < 2; k++) {
+                    final Phenotype phenotype = state.newPhenotype();
+                    phenotype.setEntity(new OBOClassImpl("TAO:" + ((i + j + k) % 10)));
+                    phenotype.setQuality(new OBOClassImpl("PATO:" + (i * 6 + j * 2 + k)));
+                }
+            }
+        }
+        final NeXMLWriter writer = new NeXMLWriter("dummy");
+        writer.setDataSet(data);
+        final StringWriter stringWriter = new StringWriter();
+        writer.write(stringWriter);
+        final NeXMLReader reader = new NeXMLReader(new StringReader(stringWriter.toString()), new OBOSessionImpl());
+        final Map<String, OBOClass> entities = new HashMap<String, OBOClass>();
+        for (int i = 0; i < 100; i++) {
+            final Character character = reader.getDataSet().getCharacters().get(i);
+            for (int j = 0; j < 3; j++) {
+                final List<Phenotype> phenotypes = character.getStates().get(j).getPhenotypes();
+                Assert.assertEquals(2, phenotypes.size());
+                for (int k = 0; k < 2; k++) {
+                    final Phenotype phenotype = phenotypes.get(k);
+                    Assert.assertEquals("Phenotypes should keep their state and order", "PATO:" + (i * 6 + j * 2 + k), phenotype.getQuality().getID());
+                    final String entityID = phenotype.getEntity().getID();
+                    if (entities.containsKey(entityID)) {
+                        Assert.assertSame("Each ID should resolve to one dangler", entities.get(entityID), phenotype.getEntity());
+                    } else {
+                        entities.put(entityID, phenotype.getEntity());
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(10, entities.size());
+        Assert.assertEquals(610, reader.getDanglersList().size());
+        final List<String> danglers = new ArrayList<String>(reader.getDanglersList());
+        final NeXMLReader secondReader = new NeXMLReader(new StringReader(stringWriter.toString()), new OBOSessionImpl());
+        Assert.assertEquals("Danglers should be reported in the same order on every load", danglers, new ArrayList<String>(secondReader.getDanglersList()));
+    }
+
 }
@@ -0,0 +1,236 @@
+package org.phenoscape.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.annotation.base.OBOUtil;
+import org.obo.annotation.base.OBOUtil.Differentium;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.impl.OBOClassImpl;
+import org.obo.datamodel.impl.OBOPropertyImpl;
+import org.obo.datamodel.impl.OBOSessionImpl;
+import org.phenoscape.io.nexml_1_0.NeXMLReader_1_0;
+import org.phenoscape.model.Association;
+import org.phenoscape.model.AssociationSupport;
+import org.phenoscape.model.Character;
+import org.phenoscape.model.DataSet;
+import org.phenoscape.model.MultipleState;
+import org.phenoscape.model.MultipleState.MODE;
+import org.phenoscape.model.Phenotype;
+import org.phenoscape.model.Specimen;
+import org.phenoscape.model.State;
+import org.phenoscape.model.Taxon;
+
+public class NeXMLStreamReaderTest {
+
+    @Test
+    public void readsTestFileLikeNeXMLReader() throws XmlException, XMLStreamException, IOException {
+        final File file = new File("testfiles/NeXMLReaderTestFile2.xml");
+        final NeXMLReader reader = new NeXMLReader(file, new OBOSessionImpl());
+        final NeXMLStreamReader streamReader = new NeXMLStreamReader(file, new OBOSessionImpl());
+        assertSameResults(reader, streamReader);
+        Assert.assertEquals(4, streamReader.getDanglersList().size());
+    }
+
+    @Test
+    public void readsConvertedCorpusLikeNeXMLReader() throws XmlException, XMLStreamException, IOException {
+        for (String name : Arrays.asList("Fang2003-nexml.xml", "NeXMLReaderTestFile1.xml", "DataMergerTestFile1.xml", "DataMergerTestFile2.xml", "DataMergerTestFile4.xml", "DataMergerTestFile5.xml")) {
+            final NeXMLReader_1_0 oldReader = new NeXMLReader_1_0(new File("testfiles", name), new OBOSessionImpl());
+            final String xml = write(oldReader.getDataSet());
+            final NeXMLReader reader = new NeXMLReader(new StringReader(xml), new OBOSessionImpl());
+            final NeXMLStreamReader streamReader = new NeXMLStreamReader(new StringReader(xml), new OBOSessionImpl());
+            assertSameResults(reader, streamReader);
+            Assert.assertTrue(name, streamReader.isComplete());
+        }
+    }
+
+    @Test
+    public void readsFullDataSetLikeNeXMLReader() throws XmlException, XMLStreamException, IOException {
+        final OBOSession session = new OBOSessionImpl();
+        final OBOClass fin = new OBOClassImpl("fin", "TAO:0001173");
+        session.addObject(fin);
+        final String xml = write(createDataSet(fin));
+        final NeXMLReader reader = new NeXMLReader(new StringReader(xml), session);
+        final NeXMLStreamReader streamReader = new NeXMLStreamReader(new StringReader(xml), session);
+        assertSameResults(reader, streamReader);
+        Assert.assertTrue(streamReader.isComplete());
+        final DataSet data = streamReader.getDataSet();
+        Assert.assertEquals("Jane Doe", data.getCurators());
+        Assert.assertEquals(1, data.getAssociationSupport().size());
+        final Phenotype phenotype = data.getCharacters().get(0).getStates().get(0).getPhenotypes().get(0);
+        Assert.assertSame(fin, phenotype.getEntity());
+        Assert.assertTrue(OBOUtil.isPostCompTerm(phenotype.getQuality()));
+        Assert.assertEquals(Float.valueOf(2.5f), phenotype.getMeasurement());
+        final State polymorphic = data.getStateForTaxon(data.getTaxa().get(0), data.getCharacters().get(1));
+        Assert.assertTrue(polymorphic instanceof MultipleState);
+        Assert.assertEquals(2, ((MultipleState)polymorphic).getStates().size());
+    }
+
+    @Test
+    public void savesCompleteFileFromNewDocument() throws XmlException, XMLStreamException, IOException {
+        final OBOSession session = new OBOSessionImpl();
+        final OBOClass fin = new OBOClassImpl("fin", "TAO:0001173");
+        session.addObject(fin);
+        final NeXMLStreamReader streamReader = new NeXMLStreamReader(new StringReader(write(createDataSet(fin))), session);
+        final NeXMLReader reader = new NeXMLReader(new StringReader(write(streamReader.getDataSet())), session);
+        // the writer generates new IDs for state sets
+        final String stateSetID = "\\[s[-0-9a-f]+, (POLYMORPHIC|UNCERTAIN)";
+        Assert.assertEquals(describe(streamReader.getDataSet()).replaceAll(stateSetID, "[$1"), describe(reader.getDataSet()).replaceAll(stateSetID, "[$1"));
+    }
+
+    @Test
+    public void notesContentNotInDataSet() throws XMLStreamException, IOException {
+        final String xml = write(createDataSet(new OBOClassImpl("fin", "TAO:0001173")));
+        final String foreignMeta = "<meta xsi:type=\"LiteralMeta\" property=\"dc:rights\">CC0</meta>";
+        Assert.assertFalse(isComplete(xml.replaceFirst("<otus ", "<otus label=\"taxa\" ")));
+        Assert.assertFalse(isComplete(xml.replaceFirst("</otu>", foreignMeta + "</otu>")));
+        Assert.assertFalse(isComplete(xml.replaceFirst("(<nexml[^>]*>)", "$1" + foreignMeta)));
+        Assert.assertFalse(isComplete(xml.replaceFirst("</nexml>", "<trees id=\"trees2\" otus=\"otus2\"><tree/></trees></nexml>")));
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void rejectsOtherDocuments() throws XMLStreamException, IOException {
+        new NeXMLStreamReader(new File("testfiles/Fang2003-nexml.xml"), new OBOSessionImpl());
+    }
+
+    private static DataSet createDataSet(OBOClass fin) {
+        final DataSet data = new DataSet();
+        data.setCurators("Jane Doe");
+        data.setPublicationLabel("Doe 2010");
+        data.setPublicationCitation("Doe, J. 2010. Fins.");
+        data.setPublicationURI("http://example.org/doe2010");
+        data.setPublicationNotes("Notes");
+        final Character character = data.newCharacter();
+        character.setLabel("fin shape");
+        character.setComment("comment");
+        character.setFigure("fig. 1");
+        character.setDiscussion("discussion");
+        character.setDenotes(URI.create("http://example.org/character"));
+        final State absent = character.newState();
+        absent.setSymbol("0");
+        absent.setLabel("absent");
+        absent.setComment("state comment");
+        final Phenotype phenotype = absent.newPhenotype();
+        phenotype.setEntity(fin);
+        final Differentium differentium = new Differentium();
+        differentium.setRelation(new OBOPropertyImpl("OBO_REL:towards", "towards"));
+        differentium.setTerm(new OBOClassImpl("TAO:0000108"));
+        phenotype.setQuality(OBOUtil.createPostComposition(new OBOClassImpl("PATO:0000052"), Arrays.asList(differentium)));
+        phenotype.setRelatedEntity(new OBOClassImpl("TAO:0000040"));
+        phenotype.setCount(3);
+        phenotype.setMeasurement(2.5f);
+        phenotype.setUnit(new OBOClassImpl("UO:0000016"));
+        phenotype.setComment("phenotype comment");
+        final State present = character.newState();
+        present.setSymbol("1");
+        final Character second = data.newCharacter();
+        final State round = second.newState();
+        round.setSymbol("0");
+        final State square = second.newState();
+        square.setSymbol("1");
+        final Taxon taxon = data.newTaxon();
+        taxon.setPublicationName("Danio rerio");
+        taxon.setValidName(new OBOClassImpl("TTO:1001979"));
+        taxon.setComment("taxon comment");
+        taxon.setFigure("fig. 2");
+        taxon.setMatrixTaxonName("Danio");
+        final Specimen specimen = taxon.newSpecimen();
+        specimen.setCollectionCode(new OBOClassImpl("COLLECTION:0000001"));
+        specimen.setCatalogID("1234");
+        specimen.setComment("specimen comment");
+        final Taxon other = data.newTaxon();
+        other.setPublicationName("Other");
+        data.setStateForTaxon(taxon, character, absent);
+        data.setStateForTaxon(taxon, second, new MultipleState(new HashSet<State>(Arrays.asList(round, square)), MODE.POLYMORPHIC));
+        data.setStateForTaxon(other, second, new MultipleState(new HashSet<State>(Arrays.asList(round, square)), MODE.UNCERTAIN));
+        data.getAssociationSupport().put(new Association(taxon.getNexmlID(), character.getNexmlID(), absent.getNexmlID()), new HashSet<AssociationSupport>(Arrays.asList(new AssociationSupport("fins absent", "p. 3", true))));
+        return data;
+    }
+
+    private static boolean isComplete(String xml) throws XMLStreamException {
+        return new NeXMLStreamReader(new StringReader(xml), new OBOSessionImpl()).isComplete();
+    }
+
+    private static String write(DataSet data) throws IOException {
+        final NeXMLWriter writer = new NeXMLWriter("characters");
+        writer.setDataSet(data);
+        final StringWriter output = new StringWriter();
+        writer.write(output);
+        return output.toString();
+    }
+
+    private static void assertSameResults(NeXMLReader reader, NeXMLStreamReader streamReader) {
+        Assert.assertEquals(reader.getCharactersBlockID(), streamReader.getCharactersBlockID());
+        Assert.assertEquals(describe(reader.getDataSet()), describe(streamReader.getDataSet()));
+        Assert.assertEquals(new TreeSet<String>(reader.getDanglersList()), new TreeSet<String>(streamReader.getDanglersList()));
+        Assert.assertEquals(new TreeSet<String>(reader.getMigratedSecondaryIDsList()), new TreeSet<String>(streamReader.getMigratedSecondaryIDsList()));
+        Assert.assertEquals(new TreeSet<String>(reader.getReplacedIDsList()), new TreeSet<String>(streamReader.getReplacedIDsList()));
+    }
+
+    private static String describe(DataSet data) {
+        final StringBuffer text = new StringBuffer();
+        text.append(Arrays.asList(data.getCurators(), data.getPublicationLabel(), data.getPublicationCitation(), data.getPublicationURI(), data.getPublicationNotes())).append('\n');
+        for (Character character : data.getCharacters()) {
+            text.append(Arrays.asList(character.getNexmlID(), character.getStatesNexmlID(), character.getLabel(), character.getComment(), character.getFigure(), character.getDiscussion(), character.getDenotes())).append('\n');
+            for (State state : character.getStates()) {
+                text.append("  ").append(describe(state)).append('\n');
+                for (Phenotype phenotype : state.getPhenotypes()) {
+                    text.append("    ").append(Arrays.asList(id(phenotype.getEntity()), id(phenotype.getQuality()), id(phenotype.getRelatedEntity()), phenotype.getCount(), phenotype.getMeasurement(), id(phenotype.getUnit()), phenotype.getComment())).append('\n');
+                }
+            }
+        }
+        for (Taxon taxon : data.getTaxa()) {
+            text.append(Arrays.asList(taxon.getNexmlID(), taxon.getPublicationName(), id(taxon.getValidName()), taxon.getComment(), taxon.getFigure(), taxon.getMatrixTaxonName())).append('\n');
+            for (Specimen specimen : taxon.getSpecimens()) {
+                text.append("  ").append(Arrays.asList(id(specimen.getCollectionCode()), specimen.getCatalogID(), specimen.getComment())).append('\n');
+            }
+        }
+        for (Map.Entry<String, Map<String, State>> row : data.getMatrixData().entrySet()) {
+            for (Map.Entry<String, State> cell : row.getValue().entrySet()) {
+                text.append(row.getKey()).append(' ').append(cell.getKey()).append(' ').append(describe(cell.getValue())).append('\n');
+            }
+        }
+        final Set<String> supports = new TreeSet<String>();
+        for (Map.Entry<Association, Set<AssociationSupport>> entry : data.getAssociationSupport().entrySet()) {
+            for (AssociationSupport support : entry.getValue()) {
+                supports.add(Arrays.asList(entry.getKey(), support.getDescriptionText(), support.getDescriptionSource(), support.isDirect()).toString());
+            }
+        }
+        text.append(supports);
+        return text.toString();
+    }
+
+    private static String describe(State state) {
+        if (state instanceof MultipleState) {
+            final Collection<String> members = new TreeSet<String>();
+            for (State member : ((MultipleState)state).getStates()) {
+                members.add(member.getNexmlID());
+            }
+            return Arrays.asList(state.getNexmlID(), ((MultipleState)state).getMode(), members).toString();
+        }
+        final List<Object> fields = new ArrayList<Object>(Arrays.asList(state.getNexmlID(), state.getSymbol(), state.getLabel(), state.getComment(), state.getFigure()));
+        return fields.toString();
+    }
+
+    private static String id(OBOClass term) {
+        return (term != null) ? term.getID() : null;
+    }
+
+}
@@ -5,6 +5,8 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
@@ -69,4 +71,37 @@ public class NeXMLUtilTest {
         Assert.assertEquals("Retrieved XML should be same as given", value2.getChildNodes().item(0).getNodeName(), retrievedNode2.getElement().getChildNodes().item(0).getChildNodes().item(0).getNodeName());
     }
 
+    @Test
+    public void indexFollowsMetadataChanges() throws URISyntaxException {
+        final Annotated annotated = Taxon.Factory.newInstance();
+        final Annotatable annotatable = new Annotatable(annotated);
+        final QName comment = NeXMLUtil.COMMENT_PREDICATE;
+        final QName figure = NeXMLUtil.FIGURE_PREDICATE;
+        NeXMLUtil.setMetadata(annotatable, comment, "first");
+        NeXMLUtil.setMetadata(annotatable, figure, "Fig. 1");
+        NeXMLUtil.setMetadata(annotatable, comment, "second");
+        Assert.assertEquals("Setting a value again should replace it", 1, NeXMLUtil.findMetadata(annotatable, comment).size());
+        NeXMLUtil.setMetadata(annotatable, comment, new URI("http://phenex.org/comment"));
+        Assert.assertEquals("Changing the kind of value should replace it", 1, NeXMLUtil.findMetadata(annotatable, comment).size());
+        NeXMLUtil.unsetMetadata(annotatable, figure);
+        Assert.assertTrue(NeXMLUtil.findMetadata(annotatable, figure).isEmpty());
+        Assert.assertEquals("The index should match the node", 1, annotated.getMetaArray().length);
+        Assert.assertEquals("http://phenex.org/comment", NeXMLUtil.getFirstMetadataValue(annotated, comment));
+    }
+
+    @Test
+    public void translateNodeMetadataOnce() {
+        final Annotated annotated = Taxon.Factory.newInstance();
+        final Annotatable annotatable = new Annotatable(annotated);
+        NeXMLUtil.setMetadata(annotatable, NeXMLUtil.COMMENT_PREDICATE, "a comment");
+        NeXMLUtil.addMetadata(annotatable, NeXMLUtil.FIGURE_PREDICATE, "Fig. 1");
+        NeXMLUtil.addMetadata(annotatable, NeXMLUtil.FIGURE_PREDICATE, "Fig. 2");
+        final Map<QName, List<Object>> metadata = NeXMLUtil.getMetadata(annotated);
+        Assert.assertEquals("a comment", NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.COMMENT_PREDICATE).toString());
+        Assert.assertEquals(NeXMLUtil.getMetadataValues(annotated, NeXMLUtil.FIGURE_PREDICATE).size(), NeXMLUtil.getMetadataValues(metadata, NeXMLUtil.FIGURE_PREDICATE).size());
+        Assert.assertEquals("Fig. 2", NeXMLUtil.getMetadataValues(metadata, NeXMLUtil.FIGURE_PREDICATE).get(1).toString());
+        Assert.assertNull(NeXMLUtil.getFirstMetadataValue(metadata, NeXMLUtil.DISCUSSION_PREDICATE));
+        Assert.assertTrue(NeXMLUtil.getMetadataValues(metadata, NeXMLUtil.DISCUSSION_PREDICATE).isEmpty());
+    }
+
 }
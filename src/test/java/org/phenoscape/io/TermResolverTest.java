@@ -0,0 +1,78 @@
+package org.phenoscape.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.obo.datamodel.DanglingObject;
+import org.obo.datamodel.OBOClass;
+import org.obo.datamodel.OBOSession;
+import org.obo.datamodel.impl.OBOClassImpl;
+import org.obo.datamodel.impl.OBOSessionImpl;
+import org.phenoscape.io.nexml_1_0.NeXMLReader_1_0;
+import org.phenoscape.model.Character;
+import org.phenoscape.model.Phenotype;
+import org.phenoscape.model.State;
+
+public class TermResolverTest {
+
+    @Test
+    public void resolvesEachOutcome() {
+        final OBOSession session = new OBOSessionImpl();
+        final OBOClass fin = addClass(session, "TAO:0000108");
+        fin.addSecondaryID("TAO:0001111");
+        final OBOClass obsolete = addClass(session, "TAO:0000040");
+        obsolete.setObsolete(true);
+        obsolete.addReplacedBy(fin);
+        final TermResolver resolver = new TermResolver(session);
+        Assert.assertSame(fin, resolver.getTerm("TAO:0000108"));
+        Assert.assertSame("Obsolete terms are replaced", fin, resolver.getTerm("TAO:0000040"));
+        Assert.assertSame("Secondary IDs are migrated", fin, resolver.getTerm("TAO:0001111"));
+        Assert.assertSame("Obsolete terms can be kept", obsolete, resolver.getUnreplacedTerm("TAO:0000040"));
+        Assert.assertSame(fin, resolver.getUnreplacedTerm("TAO:0001111"));
+        final OBOClass dangler = resolver.getTerm("TAO:9999999");
+        Assert.assertTrue(dangler instanceof DanglingObject);
+        Assert.assertSame("Each ID has one dangler per load", dangler, resolver.getTerm("TAO:9999999"));
+        Assert.assertNotSame("Loads do not share danglers", dangler, new TermResolver(session).getTerm("TAO:9999999"));
+        Assert.assertSame(resolver.getRelation("OBO_REL:part_of"), resolver.getRelation("OBO_REL:part_of"));
+        Assert.assertEquals(Arrays.asList("TAO:0000040"), Arrays.asList(resolver.getReplacedIDsList().toArray()));
+        Assert.assertEquals(Arrays.asList("TAO:0001111"), Arrays.asList(resolver.getMigratedSecondaryIDsList().toArray()));
+        Assert.assertEquals(Arrays.asList("OBO_REL:part_of", "TAO:9999999"), Arrays.asList(resolver.getDanglersList().toArray()));
+    }
+
+    @Test
+    public void readerSharesDanglersAcrossPhenotypes() throws XmlException, IOException {
+        final NeXMLReader_1_0 reader = new NeXMLReader_1_0(new File("testfiles/Fang2003-nexml.xml"), new OBOSessionImpl());
+        final Map<String, OBOClass> seen = new HashMap<String, OBOClass>();
+        int references = 0;
+        for (Character character : reader.getDataSet().getCharacters()) {
+            for (State state : character.getStates()) {
+                for (Phenotype phenotype : state.getPhenotypes()) {
+                    for (OBOClass term : Arrays.asList(phenotype.getEntity(), phenotype.getQuality(), phenotype.getRelatedEntity())) {
+                        if (term != null) {
+                            references++;
+                            if (seen.containsKey(term.getID())) {
+                                Assert.assertSame("The same ID should resolve to the same term", seen.get(term.getID()), term);
+                            } else {
+                                seen.put(term.getID(), term);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Assert.assertTrue("The file should refer to some IDs more than once", references > seen.size());
+    }
+
+    private static OBOClass addClass(OBOSession session, String id) {
+        final OBOClass term = new OBOClassImpl(id);
+        session.addObject(term);
+        return term;
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.phenoscape.util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PhaseTimerTest {
+
+    @Test
+    public void phasesAreRecordedInOrder() {
+        final PhaseTimer timer = new PhaseTimer("Test");
+        timer.record("first", 5000000);
+        final PhaseTimer.Phase phase = timer.start("second");
+        phase.end();
+        phase.end();
+        Assert.assertArrayEquals(new String[] {"first", "second"}, timer.getPhaseNames());
+        Assert.assertEquals(2, timer.getPhaseMillis().length);
+        Assert.assertEquals(5, timer.getPhaseMillis()[0]);
+        Assert.assertEquals(timer.getPhaseMillis()[0] + timer.getPhaseMillis()[1], timer.getTotalMillis());
+        Assert.assertTrue(timer.getSummary().contains("first"));
+    }
+
+    @Test
+    public void attributesAreAvailableThroughJMX() throws JMException {
+        final PhaseTimer timer = new PhaseTimer("JMX test");
+        timer.record("load", 3000000);
+        timer.register();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.phenoscape", "type", ObjectName.quote("JMX test"));
+        try {
+            Assert.assertEquals(Long.valueOf(3), server.getAttribute(name, "TotalMillis"));
+            Assert.assertArrayEquals(new String[] {"load"}, (String[])server.getAttribute(name, "PhaseNames"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+}